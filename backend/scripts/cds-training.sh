@@ -0,0 +1,40 @@
+#!/bin/sh
+#
+# Training run for the AppCDS archive of the fast-startup image (see backend/Dockerfile).
+#
+# Starts the application from the unpacked jar in the current directory, sends the
+# requests a freshly started instance sees first, and stops it; on exit the JVM writes
+# every class it loaded, including those of the first requests, to app.jsa.
+#
+# Usage: cds-training.sh <main class>
+# Expects classpath.args (the -cp option) next to the unpacked jar, and the Spring
+# profiles and SPOTIFY_* variables the image is built for in the environment.
+
+set -e
+
+PORT=18089
+MAIN_CLASS=$1
+
+java -XX:ArchiveClassesAtExit=app.jsa -Xlog:cds=off -Xlog:cds+dynamic=off \
+    -Dspring.aot.enabled=true @classpath.args "$MAIN_CLASS" --server.port=$PORT > training.log 2>&1 &
+PID=$!
+
+i=0
+until curl -s -o /dev/null "http://localhost:$PORT/actuator/health"; do
+    i=$((i + 1))
+    if [ $i -gt 180 ] || ! kill -0 $PID 2>/dev/null; then
+        cat training.log
+        exit 1
+    fi
+    sleep 1
+done
+
+# Anonymous requests only: nothing reaches Spotify or a real database
+for path in /api/spotify/auth-url /api/spotify/current-playback /api/spotify/snapshot /api/spotify/queue /actuator/health; do
+    curl -s -o /dev/null "http://localhost:$PORT$path"
+done
+
+kill $PID
+wait $PID || true
+rm training.log
+test -s app.jsa
@@ -0,0 +1,164 @@
+/**
+ * Concurrency probe for the Spring Boot backend.
+ *
+ * Starts a stand-in Spotify server whose /search responds after a fixed delay, logs in
+ * a number of sessions against the backend, then keeps N requests in flight against
+ * GET /api/spotify/search and reports throughput and latency percentiles.
+ * Used to compare platform-thread and virtual-thread execution (see PERFORMANCE.md).
+ *
+ * Start the backend pointed at the stub first, e.g.:
+ *   java -jar target/spotify-media-player-0.0.1-SNAPSHOT.jar \
+ *     --spotify.client.secret=probe \
+ *     --spotify.token.url=http://localhost:9099/api/token \
+ *     --spotify.api.url=http://localhost:9099/v1
+ *
+ * Usage:
+ *   node scripts/concurrency-probe.js --target http://localhost:8080 \
+ *     --concurrency 1000 --duration 20 --delay 500 --sessions 50 --warmup 40
+ *
+ * The warm-up phase runs the same load with a short upstream delay so the JIT has
+ * compiled the hot paths before measurements start.
+ */
+const http = require('http');
+
+function arg(name, fallback) {
+    const index = process.argv.indexOf(`--${name}`);
+    return index > 0 ? process.argv[index + 1] : fallback;
+}
+
+const target = new URL(arg('target', 'http://localhost:8080'));
+const concurrency = parseInt(arg('concurrency', '1000'), 10);
+const durationSec = parseInt(arg('duration', '20'), 10);
+const measuredDelayMs = parseInt(arg('delay', '500'), 10);
+const warmupSec = parseInt(arg('warmup', '0'), 10);
+const sessionCount = parseInt(arg('sessions', '50'), 10);
+const stubPort = parseInt(arg('stub-port', '9099'), 10);
+
+// --- Stand-in Spotify server ---
+let upstreamCalls = 0;
+let upstreamInFlight = 0;
+let maxUpstreamInFlight = 0;
+let tokenCounter = 0;
+let upstreamDelayMs = measuredDelayMs;
+
+const stub = http.createServer((req, res) => {
+    upstreamCalls++;
+    const send = (body) => {
+        res.writeHead(200, { 'Content-Type': 'application/json' });
+        res.end(JSON.stringify(body));
+    };
+    if (req.url.startsWith('/api/token')) {
+        req.resume();
+        req.on('end', () => send({
+            access_token: `probe-token-${++tokenCounter}`,
+            token_type: 'Bearer',
+            expires_in: 3600,
+            refresh_token: 'probe-refresh'
+        }));
+    } else if (req.url.startsWith('/v1/me')) {
+        send({ id: 'probe-user' });
+    } else {
+        // Requests held open here show how many calls the backend keeps in flight at once
+        maxUpstreamInFlight = Math.max(maxUpstreamInFlight, ++upstreamInFlight);
+        setTimeout(() => {
+            upstreamInFlight--;
+            send({ tracks: { items: [], total: 0 } });
+        }, upstreamDelayMs);
+    }
+});
+
+// --- Load driver ---
+const agent = new http.Agent({ keepAlive: true, maxSockets: concurrency });
+
+function request(method, path, cookie, body) {
+    return new Promise((resolve, reject) => {
+        const headers = {};
+        if (cookie) headers.Cookie = cookie;
+        if (body) headers['Content-Type'] = 'application/json';
+        const req = http.request({
+            host: target.hostname, port: target.port, path, method, headers, agent
+        }, (res) => {
+            res.resume();
+            res.on('end', () => resolve(res));
+        });
+        req.on('error', reject);
+        if (body) req.write(JSON.stringify(body));
+        req.end();
+    });
+}
+
+async function login() {
+    const res = await request('GET', '/api/spotify/auth-url');
+    const cookie = (res.headers['set-cookie'] || [])[0].split(';')[0];
+    await request('POST', '/api/spotify/exchange-token', cookie, { code: 'probe' });
+    return cookie;
+}
+
+function percentile(sorted, p) {
+    return sorted.length ? sorted[Math.min(sorted.length - 1, Math.floor(sorted.length * p))] : 0;
+}
+
+async function run(cookies, seconds) {
+    const latencies = [];
+    let errors = 0;
+    let next = 0;
+    const deadline = Date.now() + seconds * 1000;
+
+    async function worker() {
+        while (Date.now() < deadline) {
+            const cookie = cookies[next++ % cookies.length];
+            const start = process.hrtime.bigint();
+            try {
+                const res = await request('GET', '/api/spotify/search?q=probe', cookie);
+                if (res.statusCode !== 200) errors++;
+            } catch (e) {
+                errors++;
+            }
+            latencies.push(Number(process.hrtime.bigint() - start) / 1e6);
+        }
+    }
+
+    const started = Date.now();
+    await Promise.all(Array.from({ length: concurrency }, worker));
+    return { latencies, errors, elapsedSec: (Date.now() - started) / 1000 };
+}
+
+async function main() {
+    await new Promise((resolve) => stub.listen(stubPort, resolve));
+
+    const cookies = [];
+    for (let i = 0; i < sessionCount; i++) {
+        cookies.push(await login());
+    }
+
+    if (warmupSec > 0) {
+        upstreamDelayMs = 50;
+        await run(cookies, warmupSec);
+        upstreamDelayMs = measuredDelayMs;
+    }
+
+    upstreamCalls = 0;
+    maxUpstreamInFlight = 0;
+    const { latencies, errors, elapsedSec } = await run(cookies, durationSec);
+
+    latencies.sort((a, b) => a - b);
+    console.log(JSON.stringify({
+        concurrency,
+        upstreamDelayMs: measuredDelayMs,
+        requests: latencies.length,
+        errors,
+        throughputPerSec: Math.round(latencies.length / elapsedSec),
+        p50Ms: Math.round(percentile(latencies, 0.5)),
+        p99Ms: Math.round(percentile(latencies, 0.99)),
+        upstreamCalls,
+        maxUpstreamInFlight
+    }, null, 2));
+
+    agent.destroy();
+    stub.close();
+}
+
+main().catch((e) => {
+    console.error(e);
+    process.exit(1);
+});
@@ -0,0 +1,80 @@
+package com.example.spotifymediaplayer.benchmark;
+
+import com.example.spotifymediaplayer.service.SpotifyService;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpMethod;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of {@link SpotifyService#makeSpotifyApiCall}: token lookup, rate
+ * governor, HTTP round-trip to the local simulator and JSON parsing, per HTTP client mode.
+ *
+ * The simulator answers in-process, so the numbers are the proxy's own overhead plus
+ * loopback I/O; real Spotify latency comes on top.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApiCallBenchmark {
+    
+    private static final String SEARCH_ENDPOINT = "/search?q=carly&type=track&limit=20";
+    
+    @Param({"blocking", "pooled", "async"})
+    public String httpMode;
+    
+    @Param({"true", "false"})
+    public String playbackFingerprint;
+    
+    private BenchmarkEnvironment environment;
+    private SpotifyService spotifyService;
+    private String sessionId;
+    
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        environment = new BenchmarkEnvironment(
+                "spotify.http.mode=" + httpMode,
+                "spotify.playback.fingerprint.enabled=" + playbackFingerprint);
+        spotifyService = environment.bean(SpotifyService.class);
+        sessionId = "benchmark-session";
+        if (spotifyService.exchangeCodeForToken("benchmark-code", sessionId) == null) {
+            throw new IllegalStateException("Token exchange against the simulator failed");
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void stop() {
+        environment.close();
+    }
+    
+    @Benchmark
+    public JsonNode currentPlayback() {
+        return spotifyService.makeSpotifyApiCall(sessionId, SpotifyService.PLAYBACK_ENDPOINT, HttpMethod.GET, null);
+    }
+    
+    @Benchmark
+    public JsonNode search() {
+        return spotifyService.makeSpotifyApiCall(sessionId, SEARCH_ENDPOINT, HttpMethod.GET, null);
+    }
+    
+    @Benchmark
+    public JsonNode currentPlaybackAsync() {
+        return spotifyService.makeSpotifyApiCallAsync(sessionId, SpotifyService.PLAYBACK_ENDPOINT, HttpMethod.GET, null).join();
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.spotifymediaplayer.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * --key=value command line options of the simulator and the load driver.
+ * Each option is consumed when read, so leftovers can be reported as unknown.
+ */
+public class Arguments {
+    
+    private final Map<String, String> values = new LinkedHashMap<>();
+    
+    public Arguments(String[] args) {
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Expected --key=value but got " + arg);
+            }
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                values.put(arg.substring(2), "true");
+            } else {
+                values.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+    }
+    
+    public String getString(String key, String fallback) {
+        String value = values.remove(key);
+        return value != null ? value : fallback;
+    }
+    
+    public int getInt(String key, int fallback) {
+        String value = values.remove(key);
+        return value != null ? Integer.parseInt(value) : fallback;
+    }
+    
+    public long getLong(String key, long fallback) {
+        String value = values.remove(key);
+        return value != null ? Long.parseLong(value) : fallback;
+    }
+    
+    public double getDouble(String key, double fallback) {
+        String value = values.remove(key);
+        return value != null ? Double.parseDouble(value) : fallback;
+    }
+    
+    public boolean getBoolean(String key, boolean fallback) {
+        String value = values.remove(key);
+        return value != null ? Boolean.parseBoolean(value) : fallback;
+    }
+    
+    /**
+     * Consumes all options whose key starts with the prefix.
+     *
+     * @return the options as "key=value", prefix included
+     */
+    public List<String> getAllWithPrefix(String prefix) {
+        List<String> matching = new ArrayList<>();
+        values.entrySet().removeIf(entry -> {
+            if (!entry.getKey().startsWith(prefix)) {
+                return false;
+            }
+            matching.add(entry.getKey() + "=" + entry.getValue());
+            return true;
+        });
+        return matching;
+    }
+    
+    public void requireAllUsed() {
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options " + values.keySet());
+        }
+    }
+}
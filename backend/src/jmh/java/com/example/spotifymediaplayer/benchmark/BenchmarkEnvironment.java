@@ -0,0 +1,76 @@
+package com.example.spotifymediaplayer.benchmark;
+
+import com.example.spotifymediaplayer.SpotifyMediaPlayerApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Boots the real application context against a {@link SpotifySimulator}, so benchmarks
+ * and load tests exercise the same beans, HTTP client and token store as production.
+ */
+public class BenchmarkEnvironment implements AutoCloseable {
+    
+    private final SpotifySimulator simulator;
+    private final ConfigurableApplicationContext context;
+    
+    /**
+     * Starts a default simulator; the rate governor is off since the benchmark is the only client.
+     *
+     * @param extraProperties additional "key=value" properties, e.g. "spotify.http.mode=async"
+     */
+    public BenchmarkEnvironment(String... extraProperties) throws IOException {
+        this(new SpotifySimulator(), withRateGovernorOff(extraProperties));
+    }
+    
+    /**
+     * @param simulator  upstream the application talks to; closed with the environment
+     * @param properties additional "key=value" properties
+     */
+    public BenchmarkEnvironment(SpotifySimulator simulator, List<String> properties) {
+        this.simulator = simulator;
+        
+        // Passed as command line arguments, which take precedence over application.properties
+        List<String> args = new ArrayList<>(List.of(
+                "server.port=0",
+                "spring.datasource.url=jdbc:h2:mem:benchmark-" + System.nanoTime(),
+                "spotify.client.secret=benchmark",
+                "spotify.token.url=" + simulator.getTokenUrl(),
+                "spotify.api.url=" + simulator.getApiUrl(),
+                "logging.level.root=WARN",
+                "logging.level.com.example.spotifymediaplayer=WARN"));
+        args.addAll(properties);
+        args.replaceAll(property -> "--" + property);
+        
+        context = new SpringApplicationBuilder(SpotifyMediaPlayerApplication.class)
+                .run(args.toArray(new String[0]));
+    }
+    
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+    
+    /**
+     * @return port the embedded web server listens on
+     */
+    public int getPort() {
+        return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+    }
+    
+    private static List<String> withRateGovernorOff(String[] extraProperties) {
+        List<String> properties = new ArrayList<>();
+        properties.add("spotify.rate.enabled=false");
+        Collections.addAll(properties, extraProperties);
+        return properties;
+    }
+    
+    @Override
+    public void close() {
+        context.close();
+        simulator.close();
+    }
+}
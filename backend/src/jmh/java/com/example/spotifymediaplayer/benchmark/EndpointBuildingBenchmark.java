@@ -0,0 +1,63 @@
+package com.example.spotifymediaplayer.benchmark;
+
+import com.example.spotifymediaplayer.service.SearchResultCache;
+import com.example.spotifymediaplayer.service.SpotifyService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * String building on the request path: the authorization URL, search endpoints
+ * (normalization and URL encoding) and search cache keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndpointBuildingBenchmark {
+    
+    private BenchmarkEnvironment environment;
+    private SpotifyService spotifyService;
+    
+    public String sessionId = "6F9619FF8B86D011B42D00C04FC964FF";
+    public String query = "  Carly Rae   Jepsen run away ";
+    
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        environment = new BenchmarkEnvironment();
+        spotifyService = environment.bean(SpotifyService.class);
+    }
+    
+    @TearDown(Level.Trial)
+    public void stop() {
+        environment.close();
+    }
+    
+    @Benchmark
+    public String authUrl() {
+        return spotifyService.generateAuthUrl(sessionId);
+    }
+    
+    @Benchmark
+    public String searchEndpoint() {
+        return spotifyService.searchEndpoint(query, "track", 20, "SE");
+    }
+    
+    @Benchmark
+    public String searchCacheKey() {
+        return SearchResultCache.key(query, "track", 20, "SE");
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.spotifymediaplayer.benchmark;
+
+import com.example.spotifymediaplayer.service.FieldProjection;
+import com.example.spotifymediaplayer.service.JsonStreamFilter;
+import com.example.spotifymediaplayer.service.PlaybackFingerprint;
+import com.example.spotifymediaplayer.service.ResponseProjection;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON handling of recorded /me/player (8 KB) and /search (20 tracks, 175 KB) bodies:
+ * tree parsing and writing as done by the proxy, parsing through the route's default
+ * field projection, the streaming strip filter used in passthrough mode, and the
+ * playback fingerprints.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+    
+    private static final Set<String> STRIP_FIELDS = Set.of("available_markets");
+    
+    @Param({"me-player.json", "search.json"})
+    public String payload;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonFactory jsonFactory = objectMapper.getFactory();
+    private byte[] body;
+    private JsonNode tree;
+    private FieldProjection projection;
+    private JsonNode projectedTree;
+    
+    @Setup
+    public void load() throws IOException {
+        body = SpotifySimulator.fixture(payload);
+        tree = objectMapper.readTree(body);
+        projection = FieldProjection.parse(payload.startsWith("search")
+                ? ResponseProjection.DEFAULT_SEARCH_FIELDS : ResponseProjection.DEFAULT_PLAYBACK_FIELDS);
+        projectedTree = parseProjected();
+    }
+    
+    @Benchmark
+    public JsonNode parseTree() throws IOException {
+        return objectMapper.readTree(body);
+    }
+    
+    @Benchmark
+    public JsonNode parseProjected() throws IOException {
+        try (JsonParser parser = projection.filter(jsonFactory.createParser(body))) {
+            return objectMapper.readTree(parser);
+        }
+    }
+    
+    @Benchmark
+    public byte[] writeTree() throws IOException {
+        return objectMapper.writeValueAsBytes(tree);
+    }
+    
+    @Benchmark
+    public byte[] writeProjected() throws IOException {
+        return objectMapper.writeValueAsBytes(projectedTree);
+    }
+    
+    @Benchmark
+    public int streamWithoutMarkets() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length);
+        try (JsonParser parser = jsonFactory.createParser(body);
+             JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            JsonStreamFilter.copyWithout(parser, generator, STRIP_FIELDS);
+        }
+        return out.size();
+    }
+    
+    @Benchmark
+    public PlaybackFingerprint.BodyFingerprint bodyFingerprint() {
+        return PlaybackFingerprint.ofBody(body);
+    }
+    
+    @Benchmark
+    public String treeEtag() {
+        return PlaybackFingerprint.etag(tree);
+    }
+}
@@ -0,0 +1,370 @@
+package com.example.spotifymediaplayer.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Capacity-planning load test: N browser sessions against the backend, which talks to a
+ * {@link SpotifySimulator}. Each session logs in (auth URL, code exchange) and then behaves
+ * like the bundled player page: it polls /current-playback every second with If-None-Match,
+ * and now and then searches or sends a player command. With --adaptive-polling each session
+ * instead waits for the X-Next-Poll-Ms advice of its last poll, as the page does now.
+ *
+ * By default the simulator and the backend run in this JVM. With --target the sessions go
+ * to a running backend instead; pass --simulator with the URL of a standalone simulator the
+ * backend points at, so upstream calls can still be counted.
+ *
+ * After the ramp-up it reports throughput, p50/p90/p99 latency per request type and the
+ * upstream call amplification (Web API calls per backend request).
+ *
+ * Options (--key=value):
+ * - sessions, ramp-up-seconds, duration-seconds, poll-interval-ms, adaptive-polling
+ * - searches-per-minute, commands-per-minute (per session)
+ * - target, simulator
+ * - simulator options, see {@link SpotifySimulator.Options#from}
+ * - spotify.* and spring.* properties for the embedded backend, e.g. --spotify.http.mode=async
+ */
+public class LoadDriver {
+    
+    private static final String[] QUERIES = {
+            "daft punk", "carly rae jepsen", "run away", "nina simone", "radiohead",
+            "lofi beats", "taylor swift", "kraftwerk", "miles davis", "robyn"
+    };
+    
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "load-driver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder failedLogins = new LongAdder();
+    
+    private final String baseUrl;
+    private final long pollIntervalMs;
+    private final boolean adaptivePolling;
+    private final double searchChance;
+    private final double commandChance;
+    private volatile long measureStartNanos = Long.MAX_VALUE;
+    
+    LoadDriver(String target, long pollIntervalMs, boolean adaptivePolling, double searchesPerMinute, double commandsPerMinute) {
+        this.baseUrl = target + "/api/spotify";
+        this.pollIntervalMs = pollIntervalMs;
+        this.adaptivePolling = adaptivePolling;
+        this.searchChance = searchesPerMinute * pollIntervalMs / 60_000.0;
+        this.commandChance = commandsPerMinute * pollIntervalMs / 60_000.0;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Arguments arguments = new Arguments(args);
+        int sessions = arguments.getInt("sessions", 50);
+        int rampUpSeconds = arguments.getInt("ramp-up-seconds", 10);
+        int durationSeconds = arguments.getInt("duration-seconds", 60);
+        long pollIntervalMs = arguments.getLong("poll-interval-ms", 1000);
+        boolean adaptivePolling = arguments.getBoolean("adaptive-polling", false);
+        double searchesPerMinute = arguments.getDouble("searches-per-minute", 1);
+        double commandsPerMinute = arguments.getDouble("commands-per-minute", 0.5);
+        String target = arguments.getString("target", null);
+        String simulatorUrl = arguments.getString("simulator", null);
+        SpotifySimulator.Options simulatorOptions = SpotifySimulator.Options.from(arguments);
+        List<String> backendProperties = arguments.getAllWithPrefix("spotify.");
+        backendProperties.addAll(arguments.getAllWithPrefix("spring."));
+        arguments.requireAllUsed();
+        
+        SpotifySimulator simulator = null;
+        BenchmarkEnvironment environment = null;
+        if (target == null) {
+            simulator = new SpotifySimulator(simulatorOptions);
+            environment = new BenchmarkEnvironment(simulator, backendProperties);
+            target = "http://127.0.0.1:" + environment.getPort();
+        } else if (!backendProperties.isEmpty()) {
+            throw new IllegalArgumentException("Backend properties only apply to the embedded backend, not to --target");
+        }
+        
+        LoadDriver driver = new LoadDriver(target, pollIntervalMs, adaptivePolling, searchesPerMinute, commandsPerMinute);
+        SpotifySimulator embeddedSimulator = simulator;
+        StatsSource upstream = embeddedSimulator != null
+                ? () -> driver.objectMapper.valueToTree(embeddedSimulator.getStats())
+                : simulatorUrl != null ? () -> driver.fetchStats(simulatorUrl) : null;
+        try {
+            driver.run(sessions, rampUpSeconds, durationSeconds, upstream);
+        } finally {
+            if (environment != null) {
+                environment.close();
+            }
+        }
+    }
+    
+    private void run(int sessions, int rampUpSeconds, int durationSeconds, StatsSource upstream) throws Exception {
+        System.out.printf("Starting %d sessions over %d s against %s%n", sessions, rampUpSeconds, baseUrl);
+        for (int i = 0; i < sessions; i++) {
+            long startDelayMs = sessions > 1 ? (long) rampUpSeconds * 1000 * i / sessions : 0;
+            scheduler.schedule(() -> login(new Session()), startDelayMs, TimeUnit.MILLISECONDS);
+        }
+        
+        Thread.sleep(TimeUnit.SECONDS.toMillis(rampUpSeconds));
+        JsonNode upstreamBefore = upstream != null ? upstream.fetch() : null;
+        long startNanos = System.nanoTime();
+        measureStartNanos = startNanos;
+        System.out.printf("Measuring for %d s%n", durationSeconds);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        long windowNanos = System.nanoTime() - startNanos;
+        measureStartNanos = Long.MAX_VALUE;
+        JsonNode upstreamAfter = upstream != null ? upstream.fetch() : null;
+        
+        scheduler.shutdownNow();
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(50);
+        }
+        report(sessions, windowNanos, upstreamBefore, upstreamAfter);
+    }
+    
+    private void login(Session session) {
+        HttpRequest authUrl = HttpRequest.newBuilder(URI.create(baseUrl + "/auth-url")).GET().build();
+        send("login", authUrl)
+                .thenCompose(response -> {
+                    session.cookie = response.headers().firstValue("Set-Cookie")
+                            .map(cookie -> cookie.substring(0, cookie.indexOf(';') > 0 ? cookie.indexOf(';') : cookie.length()))
+                            .orElse(null);
+                    HttpRequest exchange = session.request("/exchange-token")
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString("{\"code\":\"load-test\"}"))
+                            .build();
+                    return send("login", exchange);
+                })
+                .whenComplete((response, error) -> {
+                    if (error != null || response.statusCode() != 200 || session.cookie == null) {
+                        failedLogins.increment();
+                        return;
+                    }
+                    long offset = ThreadLocalRandom.current().nextLong(pollIntervalMs);
+                    try {
+                        scheduler.scheduleAtFixedRate(() -> tick(session), offset, pollIntervalMs, TimeUnit.MILLISECONDS);
+                        if (adaptivePolling) {
+                            scheduler.schedule(() -> adaptivePoll(session), offset, TimeUnit.MILLISECONDS);
+                        }
+                    } catch (RuntimeException e) {
+                        // Scheduler already shut down at the end of the run
+                    }
+                });
+    }
+    
+    /**
+     * One polling interval of a session, like the page's setInterval: the poll is sent
+     * whether or not the previous one has answered. With adaptive polling the poll runs
+     * on its own schedule and the tick only drives searches and commands.
+     */
+    private void tick(Session session) {
+        if (!adaptivePolling) {
+            poll(session);
+        }
+        
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < searchChance) {
+            String query = QUERIES[random.nextInt(QUERIES.length)].replace(" ", "%20");
+            send("search", session.request("/search?q=" + query + "&type=track&limit=10").GET().build());
+        }
+        if (random.nextDouble() < commandChance) {
+            String command = "/next";
+            if (random.nextInt(4) == 0) {
+                command = session.paused ? "/play" : "/pause";
+                session.paused = !session.paused;
+            }
+            send("command", session.request(command).POST(HttpRequest.BodyPublishers.noBody()).build());
+        }
+    }
+    
+    private CompletableFuture<HttpResponse<Void>> poll(Session session) {
+        HttpRequest.Builder poll = session.request("/current-playback").GET();
+        if (session.etag != null) {
+            poll.header("If-None-Match", session.etag);
+        }
+        return send("playback", poll.build()).thenApply(response -> {
+            response.headers().firstValue("ETag").ifPresent(etag -> session.etag = etag);
+            return response;
+        });
+    }
+    
+    /**
+     * Polls, then schedules the next poll after the delay the backend advised (or the
+     * poll interval if it sent none), like the page's setTimeout loop.
+     */
+    private void adaptivePoll(Session session) {
+        poll(session).whenComplete((response, error) -> {
+            long delayMs = response != null
+                    ? response.headers().firstValue("X-Next-Poll-Ms").map(Long::parseLong).orElse(pollIntervalMs)
+                    : pollIntervalMs;
+            try {
+                scheduler.schedule(() -> adaptivePoll(session), delayMs, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                // Scheduler already shut down at the end of the run
+            }
+        });
+    }
+    
+    private CompletableFuture<HttpResponse<Void>> send(String type, HttpRequest request) {
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    inFlight.decrementAndGet();
+                    if (start >= measureStartNanos) {
+                        recorders.computeIfAbsent(type, key -> new Recorder())
+                                .record(System.nanoTime() - start, error != null ? -1 : response.statusCode());
+                    }
+                });
+    }
+    
+    private JsonNode fetchStats(String simulatorUrl) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(simulatorUrl + "/sim/stats")).GET().build();
+        return objectMapper.readTree(httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray()).body());
+    }
+    
+    private void report(int sessions, long windowNanos, JsonNode upstreamBefore, JsonNode upstreamAfter) {
+        double seconds = windowNanos / 1e9;
+        System.out.println();
+        System.out.printf("Sessions: %d, measured %.1f s, failed logins: %d%n", sessions, seconds, failedLogins.sum());
+        System.out.printf("%-10s %9s %9s %9s %9s %9s %9s  %s%n", "Request", "Count", "Req/s", "p50 ms", "p90 ms", "p99 ms", "Max ms", "Statuses");
+        
+        Recorder total = new Recorder();
+        for (String type : List.of("playback", "search", "command", "login")) {
+            Recorder recorder = recorders.get(type);
+            if (recorder == null) {
+                continue;
+            }
+            printRow(type, recorder, seconds);
+            if (!"login".equals(type)) {
+                total.addAll(recorder);
+            }
+        }
+        printRow("total", total, seconds);
+        long totalRequests = total.count();
+        
+        if (upstreamBefore == null || upstreamAfter == null) {
+            System.out.println("Upstream: not measured (pass --simulator with --target)");
+            return;
+        }
+        long upstreamCalls = upstreamAfter.path("apiCalls").asLong() - upstreamBefore.path("apiCalls").asLong();
+        System.out.printf("Upstream Web API calls: %d (%.1f/s), amplification %.3f per backend request%n",
+                upstreamCalls, upstreamCalls / seconds, totalRequests > 0 ? (double) upstreamCalls / totalRequests : 0.0);
+        System.out.println("Upstream by route: " + delta(upstreamBefore.path("requests"), upstreamAfter.path("requests")));
+        System.out.println("Upstream statuses: " + delta(upstreamBefore.path("statuses"), upstreamAfter.path("statuses")));
+    }
+    
+    private static void printRow(String type, Recorder recorder, double seconds) {
+        long[] latencies = recorder.sortedLatencies();
+        System.out.printf("%-10s %9d %9.1f %9.2f %9.2f %9.2f %9.2f  %s%n", type, latencies.length, latencies.length / seconds,
+                percentileMs(latencies, 0.50), percentileMs(latencies, 0.90), percentileMs(latencies, 0.99),
+                percentileMs(latencies, 1.0), recorder.statuses());
+    }
+    
+    private static double percentileMs(long[] sortedNanos, double quantile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+    
+    private static Map<String, Long> delta(JsonNode before, JsonNode after) {
+        Map<String, Long> changes = new LinkedHashMap<>();
+        after.fields().forEachRemaining(entry -> {
+            long change = entry.getValue().asLong() - before.path(entry.getKey()).asLong();
+            if (change > 0) {
+                changes.put(entry.getKey(), change);
+            }
+        });
+        return changes;
+    }
+    
+    private interface StatsSource {
+        JsonNode fetch() throws Exception;
+    }
+    
+    /**
+     * One simulated browser tab: its session cookie and the ETag of its last playback copy.
+     */
+    private final class Session {
+        
+        private volatile String cookie;
+        private volatile String etag;
+        private volatile boolean paused;
+        
+        HttpRequest.Builder request(String path) {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30));
+            if (cookie != null) {
+                builder.header("Cookie", cookie);
+            }
+            return builder;
+        }
+    }
+    
+    /**
+     * Latencies and statuses of one request type; status -1 stands for an I/O failure.
+     */
+    private static final class Recorder {
+        
+        private long[] latencies = new long[1024];
+        private int size;
+        private final Map<Integer, Long> statuses = new TreeMap<>();
+        
+        synchronized void record(long nanos, int status) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = nanos;
+            statuses.merge(status, 1L, Long::sum);
+        }
+        
+        synchronized void addAll(Recorder other) {
+            long[] values = other.sortedLatencies();
+            for (long value : values) {
+                if (size == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, size * 2);
+                }
+                latencies[size++] = value;
+            }
+            synchronized (other) {
+                other.statuses.forEach((status, count) -> statuses.merge(status, count, Long::sum));
+            }
+        }
+        
+        synchronized long count() {
+            return size;
+        }
+        
+        synchronized long[] sortedLatencies() {
+            long[] sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+        
+        synchronized Map<Integer, Long> statuses() {
+            return new TreeMap<>(statuses);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.spotifymediaplayer.benchmark;
+
+import com.example.spotifymediaplayer.service.PlaybackClock;
+import com.example.spotifymediaplayer.service.SpotifyService;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a /current-playback read through the {@link PlaybackClock}.
+ *
+ * read includes the fetches the clock makes when a state expires (track end, drift
+ * bound), averaged over all reads; hit is the extrapolation alone, while the clock is
+ * trusted. Compare with ApiCallBenchmark.currentPlaybackAsync for an upstream read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlaybackClockBenchmark {
+    
+    private BenchmarkEnvironment environment;
+    private PlaybackClock playbackClock;
+    private String sessionId;
+    
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        environment = new BenchmarkEnvironment();
+        SpotifyService spotifyService = environment.bean(SpotifyService.class);
+        playbackClock = environment.bean(PlaybackClock.class);
+        sessionId = "benchmark-session";
+        if (spotifyService.exchangeCodeForToken("benchmark-code", sessionId) == null) {
+            throw new IllegalStateException("Token exchange against the simulator failed");
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void stop() {
+        environment.close();
+    }
+    
+    @Benchmark
+    public JsonNode read() {
+        return playbackClock.getCurrentPlaybackAsync(sessionId).join();
+    }
+    
+    @Benchmark
+    public JsonNode hit() {
+        JsonNode state = playbackClock.peek(sessionId);
+        return state != null ? state : read();
+    }
+}
@@ -0,0 +1,579 @@
+package com.example.spotifymediaplayer.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Self-contained stand-in for the Spotify accounts service and Web API, built from the
+ * recorded payloads under src/jmh/resources/benchmark. Used in-process by the benchmarks
+ * and the {@link LoadDriver}, or standalone with {@link #main}.
+ *
+ * Every code exchange creates a new simulated account with its own player: the track
+ * plays in real time, advances at its end and follows play/pause/next/previous commands.
+ *
+ * Endpoints:
+ * - POST /api/token                  code exchange and refresh
+ * - GET  /v1/me                      the account of the bearer token
+ * - GET  /v1/me/player               playback state
+ * - GET  /v1/me/player/devices       one active device
+ * - GET  /v1/me/player/queue         current track and the next 20
+ * - GET  /v1/search                  tracks page honoring limit and offset
+ * - PUT/POST /v1/me/player/...       player commands, 204
+ * - GET  /sim/stats                  request and status counters
+ *
+ * Latency, payload size, error and 429 injection are set through {@link Options}.
+ */
+public class SpotifySimulator implements AutoCloseable {
+    
+    private static final int QUEUE_LENGTH = 20;
+    private static final int MAX_SEARCH_LIMIT = 50;
+    
+    private final Options options;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    
+    private final ObjectNode playerTemplate;
+    private final ObjectNode device;
+    private final ObjectNode[] tracks;
+    
+    private final Map<String, String> accessTokens = new ConcurrentHashMap<>();
+    private final Map<String, String> refreshTokens = new ConcurrentHashMap<>();
+    private final Map<String, SimulatedPlayer> players = new ConcurrentHashMap<>();
+    private final AtomicInteger accountSequence = new AtomicInteger();
+    private final AtomicInteger tokenSequence = new AtomicInteger();
+    
+    private final Map<String, LongAdder> requestsByRoute = new ConcurrentHashMap<>();
+    private final Map<Integer, LongAdder> responsesByStatus = new ConcurrentHashMap<>();
+    private final LongAdder apiCalls = new LongAdder();
+    
+    private long rateWindowSecond;
+    private int rateWindowCount;
+    
+    public SpotifySimulator() throws IOException {
+        this(new Options());
+    }
+    
+    public SpotifySimulator(Options options) throws IOException {
+        this.options = options;
+        
+        playerTemplate = (ObjectNode) objectMapper.readTree(fixture("me-player.json"));
+        device = (ObjectNode) playerTemplate.get("device");
+        JsonNode items = objectMapper.readTree(fixture("search.json")).path("tracks").path("items");
+        tracks = new ObjectNode[items.size()];
+        for (int i = 0; i < tracks.length; i++) {
+            tracks[i] = (ObjectNode) items.get(i);
+            if (options.getMarkets() >= 0) {
+                trimMarkets(tracks[i], options.getMarkets());
+                trimMarkets((ObjectNode) tracks[i].get("album"), options.getMarkets());
+            }
+        }
+        
+        // Headers and body are written separately; without TCP_NODELAY every response stalls on delayed ACKs
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", options.getPort()), 1024);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "spotify-simulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/api/token", this::token);
+        server.createContext("/v1/", this::api);
+        server.createContext("/sim/stats", exchange -> send(exchange, 200, objectMapper.writeValueAsBytes(getStats())));
+        server.start();
+    }
+    
+    /**
+     * Runs the simulator standalone until the process is stopped.
+     * Options are given as --key=value, e.g. --port=9099 --latency-ms=80 --throttle-rate=0.01
+     */
+    public static void main(String[] args) throws IOException {
+        Arguments arguments = new Arguments(args);
+        Options options = Options.from(arguments);
+        if (options.getPort() == 0) {
+            options.setPort(9099);
+        }
+        arguments.requireAllUsed();
+        
+        SpotifySimulator simulator = new SpotifySimulator(options);
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::close));
+        System.out.println("Spotify simulator listening; start the backend with");
+        System.out.println("  --spotify.token.url=" + simulator.getTokenUrl() + " --spotify.api.url=" + simulator.getApiUrl());
+        System.out.println("Counters: http://127.0.0.1:" + simulator.getPort() + "/sim/stats");
+    }
+    
+    /**
+     * Loads a recorded payload from the benchmark resources.
+     *
+     * @param name file name under /benchmark on the classpath
+     * @return raw bytes
+     */
+    public static byte[] fixture(String name) {
+        try (InputStream in = SpotifySimulator.class.getResourceAsStream("/benchmark/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing benchmark fixture " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    public String getTokenUrl() {
+        return "http://127.0.0.1:" + getPort() + "/api/token";
+    }
+    
+    public String getApiUrl() {
+        return "http://127.0.0.1:" + getPort() + "/v1";
+    }
+    
+    /**
+     * Counters since start: requests per route, responses per status, and the number of
+     * Web API calls (everything under /v1, i.e. excluding the token endpoint).
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("apiCalls", apiCalls.sum());
+        Map<String, Long> routes = new TreeMap<>();
+        requestsByRoute.forEach((route, count) -> routes.put(route, count.sum()));
+        stats.put("requests", routes);
+        Map<String, Long> statuses = new TreeMap<>();
+        responsesByStatus.forEach((status, count) -> statuses.put(String.valueOf(status), count.sum()));
+        stats.put("statuses", statuses);
+        stats.put("accounts", accountSequence.get());
+        return stats;
+    }
+    
+    private void token(HttpExchange exchange) throws IOException {
+        Map<String, String> form = parseQuery(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        count("token");
+        delay();
+        
+        String account;
+        if ("refresh_token".equals(form.get("grant_type"))) {
+            account = refreshTokens.get(String.valueOf(form.get("refresh_token")));
+            if (account == null) {
+                send(exchange, 400, "{\"error\":\"invalid_grant\",\"error_description\":\"Invalid refresh token\"}".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        } else {
+            account = "sim-user-" + accountSequence.incrementAndGet();
+            refreshTokens.put("sim-refresh-" + account, account);
+        }
+        String accessToken = "sim-access-" + tokenSequence.incrementAndGet();
+        accessTokens.put(accessToken, account);
+        
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("access_token", accessToken);
+        body.put("token_type", "Bearer");
+        body.put("expires_in", options.getTokenLifetimeSeconds());
+        body.put("refresh_token", "sim-refresh-" + account);
+        body.put("scope", "user-read-playback-state user-modify-playback-state user-read-currently-playing");
+        send(exchange, 200, objectMapper.writeValueAsBytes(body));
+    }
+    
+    private void api(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath().substring("/v1".length());
+        String route = "GET".equals(method) ? path : method + " " + path;
+        count(route);
+        apiCalls.increment();
+        delay();
+        
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        String account = authorization != null && authorization.startsWith("Bearer ")
+                ? accessTokens.get(authorization.substring("Bearer ".length()))
+                : null;
+        if (account == null) {
+            sendError(exchange, 401, "Invalid access token");
+            return;
+        }
+        if (throttled()) {
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(options.getRetryAfterSeconds()));
+            sendError(exchange, 429, "API rate limit exceeded");
+            return;
+        }
+        if (options.getErrorRate() > 0 && ThreadLocalRandom.current().nextDouble() < options.getErrorRate()) {
+            sendError(exchange, 503, "Service unavailable");
+            return;
+        }
+        
+        SimulatedPlayer player = players.computeIfAbsent(account, key -> new SimulatedPlayer());
+        if (!"GET".equals(method)) {
+            command(exchange, player, path);
+            return;
+        }
+        switch (path) {
+            case "/me" -> send(exchange, 200, objectMapper.writeValueAsBytes(user(account)));
+            case "/me/player" -> send(exchange, 200, objectMapper.writeValueAsBytes(playback(player)));
+            case "/me/player/devices" -> send(exchange, 200, objectMapper.writeValueAsBytes(devices()));
+            case "/me/player/queue" -> send(exchange, 200, objectMapper.writeValueAsBytes(queue(player)));
+            case "/search" -> send(exchange, 200, objectMapper.writeValueAsBytes(search(parseQuery(exchange.getRequestURI().getRawQuery()))));
+            default -> sendError(exchange, 404, "Service not found");
+        }
+    }
+    
+    private void command(HttpExchange exchange, SimulatedPlayer player, String path) throws IOException {
+        long now = System.currentTimeMillis();
+        switch (path) {
+            case "/me/player/play" -> player.setPlaying(now, true, tracks);
+            case "/me/player/pause" -> player.setPlaying(now, false, tracks);
+            case "/me/player/next" -> player.skip(now, 1, tracks);
+            case "/me/player/previous" -> player.skip(now, -1, tracks);
+            case "/me/player/queue", "/me/player" -> { }
+            default -> {
+                sendError(exchange, 404, "Service not found");
+                return;
+            }
+        }
+        send(exchange, 204, null);
+    }
+    
+    private ObjectNode user(String account) {
+        ObjectNode user = objectMapper.createObjectNode();
+        user.put("id", account);
+        user.put("display_name", "Simulated " + account);
+        user.put("product", "premium");
+        user.put("type", "user");
+        user.put("uri", "spotify:user:" + account);
+        return user;
+    }
+    
+    private ObjectNode playback(SimulatedPlayer player) {
+        long now = System.currentTimeMillis();
+        long[] position = player.position(now, tracks);
+        // Shallow copy keeps the recorded field order, like consecutive real responses
+        ObjectNode body = objectMapper.createObjectNode();
+        body.setAll(playerTemplate);
+        body.put("timestamp", now);
+        body.put("progress_ms", position[1]);
+        body.put("is_playing", player.isPlaying());
+        body.set("item", tracks[(int) position[0]]);
+        return body;
+    }
+    
+    private ObjectNode devices() {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.putArray("devices").add(device);
+        return body;
+    }
+    
+    private ObjectNode queue(SimulatedPlayer player) {
+        int current = (int) player.position(System.currentTimeMillis(), tracks)[0];
+        ObjectNode body = objectMapper.createObjectNode();
+        body.set("currently_playing", tracks[current]);
+        ArrayNode queue = body.putArray("queue");
+        for (int i = 1; i <= QUEUE_LENGTH; i++) {
+            queue.add(tracks[(current + i) % tracks.length]);
+        }
+        return body;
+    }
+    
+    private ObjectNode search(Map<String, String> query) {
+        int limit = Math.min(MAX_SEARCH_LIMIT, Math.max(1, parseInt(query.get("limit"), 20)));
+        int offset = Math.max(0, parseInt(query.get("offset"), 0));
+        ObjectNode page = objectMapper.createObjectNode();
+        page.put("href", getApiUrl() + "/search?offset=" + offset + "&limit=" + limit);
+        ArrayNode items = page.putArray("items");
+        for (int i = 0; i < limit; i++) {
+            items.add(tracks[(offset + i) % tracks.length]);
+        }
+        page.put("limit", limit);
+        page.put("next", getApiUrl() + "/search?offset=" + (offset + limit) + "&limit=" + limit);
+        page.put("offset", offset);
+        page.putNull("previous");
+        page.put("total", 1000);
+        ObjectNode body = objectMapper.createObjectNode();
+        body.set("tracks", page);
+        return body;
+    }
+    
+    private boolean throttled() {
+        if (options.getThrottleRate() > 0 && ThreadLocalRandom.current().nextDouble() < options.getThrottleRate()) {
+            return true;
+        }
+        if (options.getRateLimitPerSecond() <= 0) {
+            return false;
+        }
+        long second = System.nanoTime() / 1_000_000_000L;
+        synchronized (this) {
+            if (second != rateWindowSecond) {
+                rateWindowSecond = second;
+                rateWindowCount = 0;
+            }
+            return ++rateWindowCount > options.getRateLimitPerSecond();
+        }
+    }
+    
+    private void delay() {
+        long millis = options.getLatencyMs();
+        if (options.getJitterMs() > 0) {
+            millis += ThreadLocalRandom.current().nextLong(options.getJitterMs() + 1);
+        }
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void count(String route) {
+        requestsByRoute.computeIfAbsent(route, key -> new LongAdder()).increment();
+    }
+    
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, ("{\"error\":{\"status\":" + status + ",\"message\":\"" + message + "\"}}").getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        responsesByStatus.computeIfAbsent(status, key -> new LongAdder()).increment();
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    private static void trimMarkets(ObjectNode node, int markets) {
+        JsonNode list = node.get("available_markets");
+        if (list instanceof ArrayNode array) {
+            while (array.size() > markets) {
+                array.remove(array.size() - 1);
+            }
+        }
+    }
+    
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> values = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return values;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                values.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return values;
+    }
+    
+    private static int parseInt(String value, int fallback) {
+        try {
+            return value != null ? Integer.parseInt(value) : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+    
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+    
+    /**
+     * Player of one simulated account. The position is kept as an anchor (track and
+     * progress at a point in time) and advanced lazily when read.
+     */
+    private static final class SimulatedPlayer {
+        
+        private int trackIndex;
+        private long progressMs;
+        private long anchorMillis;
+        private boolean playing = true;
+        
+        SimulatedPlayer() {
+            trackIndex = ThreadLocalRandom.current().nextInt(1024);
+            progressMs = ThreadLocalRandom.current().nextLong(60_000);
+            anchorMillis = System.currentTimeMillis();
+        }
+        
+        /**
+         * @return track index and progress in milliseconds at the given time
+         */
+        synchronized long[] position(long now, ObjectNode[] tracks) {
+            advance(now, tracks);
+            return new long[] {trackIndex % tracks.length, progressMs};
+        }
+        
+        synchronized boolean isPlaying() {
+            return playing;
+        }
+        
+        synchronized void setPlaying(long now, boolean playing, ObjectNode[] tracks) {
+            advance(now, tracks);
+            this.playing = playing;
+        }
+        
+        synchronized void skip(long now, int direction, ObjectNode[] tracks) {
+            advance(now, tracks);
+            trackIndex = Math.floorMod(trackIndex + direction, tracks.length);
+            progressMs = 0;
+        }
+        
+        private void advance(long now, ObjectNode[] tracks) {
+            if (playing) {
+                progressMs += now - anchorMillis;
+                long duration;
+                while (progressMs >= (duration = tracks[trackIndex % tracks.length].path("duration_ms").asLong(180_000))) {
+                    progressMs -= duration;
+                    trackIndex = (trackIndex + 1) % tracks.length;
+                }
+            }
+            anchorMillis = now;
+        }
+    }
+    
+    /**
+     * Simulator settings. All default to a fast, error-free server with the recorded payloads.
+     */
+    public static class Options {
+        
+        private int port;
+        private long latencyMs;
+        private long jitterMs;
+        private double errorRate;
+        private double throttleRate;
+        private int rateLimitPerSecond;
+        private int retryAfterSeconds = 1;
+        private int markets = -1;
+        private int tokenLifetimeSeconds = 3600;
+        
+        /**
+         * Reads the simulator options from --key=value arguments:
+         * --port, --latency-ms, --jitter-ms, --error-rate, --throttle-rate,
+         * --rate-limit-per-second, --retry-after-seconds, --markets, --token-lifetime-seconds
+         */
+        public static Options from(Arguments arguments) {
+            Options options = new Options();
+            options.setPort(arguments.getInt("port", options.getPort()));
+            options.setLatencyMs(arguments.getLong("latency-ms", options.getLatencyMs()));
+            options.setJitterMs(arguments.getLong("jitter-ms", options.getJitterMs()));
+            options.setErrorRate(arguments.getDouble("error-rate", options.getErrorRate()));
+            options.setThrottleRate(arguments.getDouble("throttle-rate", options.getThrottleRate()));
+            options.setRateLimitPerSecond(arguments.getInt("rate-limit-per-second", options.getRateLimitPerSecond()));
+            options.setRetryAfterSeconds(arguments.getInt("retry-after-seconds", options.getRetryAfterSeconds()));
+            options.setMarkets(arguments.getInt("markets", options.getMarkets()));
+            options.setTokenLifetimeSeconds(arguments.getInt("token-lifetime-seconds", options.getTokenLifetimeSeconds()));
+            return options;
+        }
+        
+        /** Listening port, 0 for an ephemeral one */
+        public int getPort() {
+            return port;
+        }
+        
+        public void setPort(int port) {
+            this.port = port;
+        }
+        
+        /** Fixed delay added to every response */
+        public long getLatencyMs() {
+            return latencyMs;
+        }
+        
+        public void setLatencyMs(long latencyMs) {
+            this.latencyMs = latencyMs;
+        }
+        
+        /** Uniform random delay on top of the fixed one */
+        public long getJitterMs() {
+            return jitterMs;
+        }
+        
+        public void setJitterMs(long jitterMs) {
+            this.jitterMs = jitterMs;
+        }
+        
+        /** Share of Web API calls answered with 503 */
+        public double getErrorRate() {
+            return errorRate;
+        }
+        
+        public void setErrorRate(double errorRate) {
+            this.errorRate = errorRate;
+        }
+        
+        /** Share of Web API calls answered with 429 regardless of the rate */
+        public double getThrottleRate() {
+            return throttleRate;
+        }
+        
+        public void setThrottleRate(double throttleRate) {
+            this.throttleRate = throttleRate;
+        }
+        
+        /** Web API calls per second (across all accounts) above which 429 is returned, 0 for no limit */
+        public int getRateLimitPerSecond() {
+            return rateLimitPerSecond;
+        }
+        
+        public void setRateLimitPerSecond(int rateLimitPerSecond) {
+            this.rateLimitPerSecond = rateLimitPerSecond;
+        }
+        
+        /** Retry-After value sent with 429 */
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+        
+        public void setRetryAfterSeconds(int retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+        
+        /** available_markets entries kept per track and album (payload size), -1 for all as recorded */
+        public int getMarkets() {
+            return markets;
+        }
+        
+        public void setMarkets(int markets) {
+            this.markets = markets;
+        }
+        
+        /** expires_in of issued access tokens */
+        public int getTokenLifetimeSeconds() {
+            return tokenLifetimeSeconds;
+        }
+        
+        public void setTokenLifetimeSeconds(int tokenLifetimeSeconds) {
+            this.tokenLifetimeSeconds = tokenLifetimeSeconds;
+        }
+    }
+}
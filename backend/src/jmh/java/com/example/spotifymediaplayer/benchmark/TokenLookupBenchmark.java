@@ -0,0 +1,76 @@
+package com.example.spotifymediaplayer.benchmark;
+
+import com.example.spotifymediaplayer.service.AccessTokenCache;
+import com.example.spotifymediaplayer.service.SpotifyService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SpotifyService#getValidAccessToken} with a warm token (in-memory cache hit) and
+ * a cold one (evicted, so it is loaded from the token store and H2).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenLookupBenchmark {
+    
+    private static final int SESSIONS = 256;
+    
+    private BenchmarkEnvironment environment;
+    private SpotifyService spotifyService;
+    private AccessTokenCache tokenCache;
+    private final String[] sessionIds = new String[SESSIONS];
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        environment = new BenchmarkEnvironment();
+        spotifyService = environment.bean(SpotifyService.class);
+        tokenCache = environment.bean(AccessTokenCache.class);
+        for (int i = 0; i < SESSIONS; i++) {
+            sessionIds[i] = "benchmark-session-" + i;
+            if (spotifyService.exchangeCodeForToken("benchmark-code", sessionIds[i]) == null) {
+                throw new IllegalStateException("Token exchange against the simulator failed");
+            }
+        }
+        // Let the write-behind stage flush, so cold lookups hit the database
+        Thread.sleep(1000);
+    }
+    
+    @TearDown(Level.Trial)
+    public void stop() {
+        environment.close();
+    }
+    
+    @Benchmark
+    public String warm() {
+        return spotifyService.getValidAccessToken(nextSession());
+    }
+    
+    @Benchmark
+    public String cold() {
+        String sessionId = nextSession();
+        tokenCache.evict(sessionId);
+        return spotifyService.getValidAccessToken(sessionId);
+    }
+    
+    private String nextSession() {
+        next = (next + 1) % SESSIONS;
+        return sessionIds[next];
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.spotifymediaplayer.benchmark;
+
+import com.example.spotifymediaplayer.entity.UserToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Token table layouts on an H2 file database with {@code rows} sessions:
+ *
+ * - legacy: user_tokens as the entity used to map it (identity id, unique session_id,
+ *   three timestamps, no expiry index)
+ * - hashed: session_tokens keyed by {@link UserToken#keyOf} with an index on expires_at
+ *
+ * Measures a lookup by session id through plain JDBC (hashing included) and a refresh
+ * scan for tokens expiring in a 10 second window. Setup prints the space each table and
+ * its indexes take, as bytes per row and rows per 8 KiB page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenSchemaBenchmark {
+    
+    private static final int ACCESS_TOKEN_LENGTH = 230;
+    private static final int REFRESH_TOKEN_LENGTH = 131;
+    /** Tokens expire uniformly between two hours ago and one hour from now */
+    private static final long EXPIRY_SPREAD_SECONDS = 3 * 3600;
+    private static final char[] TOKEN_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    
+    @Param({"legacy", "hashed"})
+    public String layout;
+    
+    @Param({"1000000"})
+    public int rows;
+    
+    private Path directory;
+    private Connection connection;
+    private PreparedStatement lookup;
+    private PreparedStatement expiring;
+    private LocalDateTime base;
+    private final SplittableRandom random = new SplittableRandom(42);
+    
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        directory = Files.createTempDirectory("token-schema");
+        connection = DriverManager.getConnection("jdbc:h2:file:" + directory.resolve("tokens") + ";CACHE_SIZE=65536", "sa", "");
+        base = LocalDateTime.now().minusHours(2);
+        
+        long started = System.nanoTime();
+        try (Statement statement = connection.createStatement()) {
+            if ("legacy".equals(layout)) {
+                statement.execute("CREATE TABLE user_tokens (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                        + "access_token VARCHAR(1000), created_at TIMESTAMP(6), expires_at TIMESTAMP(6), "
+                        + "refresh_token VARCHAR(1000), session_id VARCHAR(255) UNIQUE, updated_at TIMESTAMP(6))");
+            } else {
+                statement.execute("CREATE TABLE session_tokens (session_key VARBINARY(16) PRIMARY KEY, "
+                        + "access_token VARCHAR(1000) NOT NULL, expires_at TIMESTAMP(6) NOT NULL, refresh_token VARCHAR(1000))");
+                statement.execute("CREATE INDEX idx_session_tokens_expires_at ON session_tokens (expires_at)");
+            }
+        }
+        fill();
+        long fillMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        
+        if ("legacy".equals(layout)) {
+            lookup = connection.prepareStatement(
+                    "SELECT access_token, refresh_token, expires_at FROM user_tokens WHERE session_id = ?");
+            expiring = connection.prepareStatement(
+                    "SELECT session_id FROM user_tokens WHERE expires_at BETWEEN ? AND ?");
+        } else {
+            lookup = connection.prepareStatement(
+                    "SELECT access_token, refresh_token, expires_at FROM session_tokens WHERE session_key = ?");
+            expiring = connection.prepareStatement(
+                    "SELECT session_key FROM session_tokens WHERE expires_at BETWEEN ? AND ?");
+        }
+        
+        String table = "legacy".equals(layout) ? "USER_TOKENS" : "SESSION_TOKENS";
+        long bytes;
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT DISK_SPACE_USED('" + table + "')")) {
+            result.next();
+            bytes = result.getLong(1);
+        }
+        double bytesPerRow = (double) bytes / rows;
+        System.out.printf("%n%s: %,d rows loaded in %,d ms, %,d bytes with indexes, %.0f bytes/row, %.1f rows per 8 KiB page%n",
+                layout, rows, fillMillis, bytes, bytesPerRow, 8192 / bytesPerRow);
+    }
+    
+    @TearDown(Level.Trial)
+    public void stop() throws SQLException, IOException {
+        connection.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+    
+    @Benchmark
+    public String lookup() throws SQLException {
+        String sessionId = sessionId(random.nextInt(rows));
+        if ("legacy".equals(layout)) {
+            lookup.setString(1, sessionId);
+        } else {
+            lookup.setBytes(1, UserToken.keyOf(sessionId));
+        }
+        try (ResultSet result = lookup.executeQuery()) {
+            return result.next() ? result.getString(1) : null;
+        }
+    }
+    
+    @Benchmark
+    public int expiringScan() throws SQLException {
+        LocalDateTime from = base.plusSeconds(random.nextLong(EXPIRY_SPREAD_SECONDS - 10));
+        expiring.setTimestamp(1, Timestamp.valueOf(from));
+        expiring.setTimestamp(2, Timestamp.valueOf(from.plusSeconds(10)));
+        int found = 0;
+        try (ResultSet result = expiring.executeQuery()) {
+            while (result.next()) {
+                found++;
+            }
+        }
+        return found;
+    }
+    
+    private void fill() throws SQLException {
+        String sql = "legacy".equals(layout)
+                ? "INSERT INTO user_tokens (session_id, access_token, refresh_token, expires_at, created_at, updated_at) "
+                    + "VALUES (?, ?, ?, ?, ?, ?)"
+                : "INSERT INTO session_tokens (session_key, access_token, refresh_token, expires_at) VALUES (?, ?, ?, ?)";
+        SplittableRandom fillRandom = new SplittableRandom(7);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(sql)) {
+            for (int i = 0; i < rows; i++) {
+                String sessionId = sessionId(i);
+                Timestamp expiresAt = Timestamp.valueOf(base.plusSeconds(fillRandom.nextLong(EXPIRY_SPREAD_SECONDS)));
+                String accessToken = token(fillRandom, ACCESS_TOKEN_LENGTH);
+                String refreshToken = token(fillRandom, REFRESH_TOKEN_LENGTH);
+                if ("legacy".equals(layout)) {
+                    insert.setString(1, sessionId);
+                    insert.setString(2, accessToken);
+                    insert.setString(3, refreshToken);
+                    insert.setTimestamp(4, expiresAt);
+                    insert.setTimestamp(5, now);
+                    insert.setTimestamp(6, now);
+                } else {
+                    insert.setBytes(1, UserToken.keyOf(sessionId));
+                    insert.setString(2, accessToken);
+                    insert.setString(3, refreshToken);
+                    insert.setTimestamp(4, expiresAt);
+                }
+                insert.addBatch();
+                if (i % 1000 == 999) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        }
+        connection.setAutoCommit(true);
+    }
+    
+    /** 32 upper-case hex characters, like a Tomcat session id */
+    private static String sessionId(int index) {
+        return String.format("%032X", (long) index * 0x9E3779B97F4A7C15L & Long.MAX_VALUE);
+    }
+    
+    private static String token(SplittableRandom random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = TOKEN_ALPHABET[random.nextInt(TOKEN_ALPHABET.length)];
+        }
+        return new String(chars);
+    }
+}
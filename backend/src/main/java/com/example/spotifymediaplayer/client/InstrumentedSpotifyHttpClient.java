@@ -0,0 +1,68 @@
+package com.example.spotifymediaplayer.client;
+
+import com.example.spotifymediaplayer.metrics.SpotifyMetrics;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Decorator timing every upstream call of the wrapped {@link SpotifyHttpClient} and
+ * counting status codes and in-flight requests via {@link SpotifyMetrics}.
+ */
+public class InstrumentedSpotifyHttpClient implements SpotifyHttpClient {
+    
+    private final SpotifyHttpClient delegate;
+    private final SpotifyMetrics metrics;
+    
+    public InstrumentedSpotifyHttpClient(SpotifyHttpClient delegate, SpotifyMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+    
+    @Override
+    public SpotifyHttpResponse execute(HttpMethod method, String url, HttpHeaders headers, byte[] body) throws IOException {
+        SpotifyMetrics.UpstreamCall call = metrics.startUpstream(method.name(), url);
+        try {
+            SpotifyHttpResponse response = delegate.execute(method, url, headers, body);
+            call.finish(response.getStatusCode());
+            return response;
+        } catch (IOException | RuntimeException e) {
+            call.fail();
+            throw e;
+        }
+    }
+    
+    @Override
+    public CompletableFuture<SpotifyHttpResponse> executeAsync(HttpMethod method, String url, HttpHeaders headers, byte[] body) {
+        SpotifyMetrics.UpstreamCall call = metrics.startUpstream(method.name(), url);
+        CompletableFuture<SpotifyHttpResponse> future;
+        try {
+            future = delegate.executeAsync(method, url, headers, body);
+        } catch (RuntimeException e) {
+            call.fail();
+            throw e;
+        }
+        return future.whenComplete((response, error) -> {
+            if (response != null) {
+                call.finish(response.getStatusCode());
+            } else {
+                call.fail();
+            }
+        });
+    }
+    
+    @Override
+    public SpotifyHttpStream executeStreaming(HttpMethod method, String url, HttpHeaders headers, byte[] body) throws IOException {
+        SpotifyMetrics.UpstreamCall call = metrics.startUpstream(method.name(), url);
+        try {
+            SpotifyHttpStream stream = delegate.executeStreaming(method, url, headers, body);
+            call.finish(stream.getStatusCode());
+            return stream;
+        } catch (IOException | RuntimeException e) {
+            call.fail();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.spotifymediaplayer.client;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link SpotifyHttpClient} backed by the JDK {@link HttpClient}.
+ *
+ * A single client instance is shared by all requests, so connections to
+ * api.spotify.com and accounts.spotify.com are kept alive and reused (multiplexed
+ * over HTTP/2 where the server supports it). Connect and read timeouts are applied
+ * to every request.
+ *
+ * With {@code async} enabled, {@link #executeAsync} uses the client's non-blocking
+ * send so no thread waits on the upstream round-trip; otherwise it behaves like
+ * {@link #execute} on the calling thread. An optional executor runs response
+ * callbacks (e.g. virtual threads).
+ */
+public class JdkSpotifyHttpClient implements SpotifyHttpClient {
+    
+    /** Headers managed by the JDK client itself */
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "host", "expect", "upgrade");
+    
+    private final HttpClient httpClient;
+    private final Duration readTimeout;
+    private final boolean async;
+    
+    public JdkSpotifyHttpClient(Duration connectTimeout, Duration readTimeout, boolean async) {
+        this(connectTimeout, readTimeout, async, null);
+    }
+    
+    public JdkSpotifyHttpClient(Duration connectTimeout, Duration readTimeout, boolean async, Executor executor) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL);
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        this.httpClient = builder.build();
+        this.readTimeout = readTimeout;
+        this.async = async;
+    }
+    
+    @Override
+    public SpotifyHttpResponse execute(HttpMethod method, String url, HttpHeaders headers, byte[] body) throws IOException {
+        try {
+            return toResponse(httpClient.send(buildRequest(method, url, headers, body), HttpResponse.BodyHandlers.ofByteArray()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calling " + url, e);
+        }
+    }
+    
+    @Override
+    public SpotifyHttpStream executeStreaming(HttpMethod method, String url, HttpHeaders headers, byte[] body) throws IOException {
+        try {
+            HttpResponse<InputStream> response = httpClient.send(buildRequest(method, url, headers, body), HttpResponse.BodyHandlers.ofInputStream());
+            return new SpotifyHttpStream(response.statusCode(), toHeaders(response), response.body(), null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calling " + url, e);
+        }
+    }
+    
+    @Override
+    public CompletableFuture<SpotifyHttpResponse> executeAsync(HttpMethod method, String url, HttpHeaders headers, byte[] body) {
+        if (!async) {
+            try {
+                return CompletableFuture.completedFuture(execute(method, url, headers, body));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        
+        try {
+            return httpClient.sendAsync(buildRequest(method, url, headers, body), HttpResponse.BodyHandlers.ofByteArray())
+                    .thenApply(JdkSpotifyHttpClient::toResponse);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    private HttpRequest buildRequest(HttpMethod method, String url, HttpHeaders headers, byte[] body) {
+        HttpRequest.BodyPublisher publisher = body != null
+                ? HttpRequest.BodyPublishers.ofByteArray(body)
+                : HttpRequest.BodyPublishers.noBody();
+        
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(readTimeout)
+                .method(method.name(), publisher);
+        
+        if (headers != null) {
+            headers.forEach((name, values) -> {
+                if (!RESTRICTED_HEADERS.contains(name.toLowerCase())) {
+                    values.forEach(value -> builder.header(name, value));
+                }
+            });
+        }
+        return builder.build();
+    }
+    
+    private static SpotifyHttpResponse toResponse(HttpResponse<byte[]> response) {
+        return new SpotifyHttpResponse(response.statusCode(), toHeaders(response), response.body());
+    }
+    
+    private static HttpHeaders toHeaders(HttpResponse<?> response) {
+        HttpHeaders headers = new HttpHeaders();
+        response.headers().map().forEach(headers::addAll);
+        return headers;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.spotifymediaplayer.client;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Blocking {@link SpotifyHttpClient} backed by a {@link RestTemplate}.
+ *
+ * Used for the "blocking" mode, which keeps the original one-connection-per-request
+ * behaviour of {@code SimpleClientHttpRequestFactory}. The async variant simply runs
+ * the call on the calling thread.
+ */
+public class RestTemplateSpotifyHttpClient implements SpotifyHttpClient {
+    
+    private final ClientHttpRequestFactory requestFactory;
+    private final RestTemplate restTemplate;
+    
+    public RestTemplateSpotifyHttpClient(ClientHttpRequestFactory requestFactory) {
+        this.requestFactory = requestFactory;
+        this.restTemplate = new RestTemplate(requestFactory);
+        // Status codes are reported to the caller instead of being raised as exceptions
+        this.restTemplate.setErrorHandler(new ResponseErrorHandler() {
+            @Override
+            public boolean hasError(@NonNull ClientHttpResponse response) {
+                return false;
+            }
+            
+            @Override
+            public void handleError(@NonNull ClientHttpResponse response) {
+            }
+        });
+    }
+    
+    @Override
+    public SpotifyHttpResponse execute(HttpMethod method, String url, HttpHeaders headers, byte[] body) throws IOException {
+        try {
+            ResponseEntity<byte[]> response = restTemplate.exchange(
+                url,
+                method,
+                new HttpEntity<>(body, headers),
+                byte[].class
+            );
+            return new SpotifyHttpResponse(response.getStatusCode().value(), response.getHeaders(), response.getBody());
+        } catch (RestClientException e) {
+            throw new IOException("Request to " + url + " failed", e);
+        }
+    }
+    
+    @Override
+    public SpotifyHttpStream executeStreaming(HttpMethod method, String url, HttpHeaders headers, byte[] body) throws IOException {
+        ClientHttpRequest request = requestFactory.createRequest(URI.create(url), method);
+        if (headers != null) {
+            request.getHeaders().putAll(headers);
+        }
+        if (body != null) {
+            request.getBody().write(body);
+        }
+        
+        ClientHttpResponse response = request.execute();
+        return new SpotifyHttpStream(response.getStatusCode().value(), response.getHeaders(), response.getBody(), response::close);
+    }
+    
+    @Override
+    public CompletableFuture<SpotifyHttpResponse> executeAsync(HttpMethod method, String url, HttpHeaders headers, byte[] body) {
+        try {
+            return CompletableFuture.completedFuture(execute(method, url, headers, body));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.spotifymediaplayer.client;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport used by {@link com.example.spotifymediaplayer.service.SpotifyService} to talk
+ * to the Spotify accounts service and Web API.
+ *
+ * Implementations never throw on non-2xx responses; the status code is returned to the
+ * caller instead. Only transport failures (timeouts, connection errors) are raised.
+ * The active implementation is selected with the {@code spotify.http.mode} property.
+ */
+public interface SpotifyHttpClient {
+    
+    /**
+     * Sends a request and blocks until the full response has been received.
+     *
+     * @param method  HTTP method
+     * @param url     absolute request URL
+     * @param headers request headers
+     * @param body    request body, or null for none
+     * @return response with status, headers and body bytes
+     * @throws IOException on transport failures
+     */
+    SpotifyHttpResponse execute(HttpMethod method, String url, HttpHeaders headers, byte[] body) throws IOException;
+    
+    /**
+     * Sends a request without tying up the calling thread for the upstream round-trip.
+     * Blocking implementations may complete the future before returning.
+     *
+     * @return future completed with the response, or exceptionally on transport failures
+     */
+    CompletableFuture<SpotifyHttpResponse> executeAsync(HttpMethod method, String url, HttpHeaders headers, byte[] body);
+    
+    /**
+     * Sends a request and returns as soon as the response headers are available, leaving
+     * the body to be read from the returned stream. Used to pass large payloads through
+     * without buffering them.
+     *
+     * @return open response stream; callers must close it
+     * @throws IOException on transport failures
+     */
+    SpotifyHttpStream executeStreaming(HttpMethod method, String url, HttpHeaders headers, byte[] body) throws IOException;
+}
@@ -0,0 +1,36 @@
+package com.example.spotifymediaplayer.client;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Fully-buffered upstream response returned by {@link SpotifyHttpClient}.
+ */
+public class SpotifyHttpResponse {
+    
+    private static final byte[] EMPTY = new byte[0];
+    
+    private final int statusCode;
+    private final HttpHeaders headers;
+    private final byte[] body;
+    
+    public SpotifyHttpResponse(int statusCode, HttpHeaders headers, byte[] body) {
+        this.statusCode = statusCode;
+        this.headers = headers != null ? headers : new HttpHeaders();
+        this.body = body != null ? body : EMPTY;
+    }
+    
+    /** @return true for 2xx status codes */
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+    
+    /** @return true if the response carries a non-empty body */
+    public boolean hasBody() {
+        return body.length > 0;
+    }
+    
+    // Getters
+    public int getStatusCode() { return statusCode; }
+    public HttpHeaders getHeaders() { return headers; }
+    public byte[] getBody() { return body; }
+}
@@ -0,0 +1,48 @@
+package com.example.spotifymediaplayer.client;
+
+import org.springframework.http.HttpHeaders;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Unbuffered upstream response returned by {@link SpotifyHttpClient#executeStreaming}.
+ * The body must be consumed and the stream closed by the caller so the underlying
+ * connection can be released.
+ */
+public class SpotifyHttpStream implements Closeable {
+    
+    private final int statusCode;
+    private final HttpHeaders headers;
+    private final InputStream body;
+    private final Closeable onClose;
+    
+    public SpotifyHttpStream(int statusCode, HttpHeaders headers, InputStream body, Closeable onClose) {
+        this.statusCode = statusCode;
+        this.headers = headers != null ? headers : new HttpHeaders();
+        this.body = body != null ? body : InputStream.nullInputStream();
+        this.onClose = onClose;
+    }
+    
+    /** @return true for 2xx status codes */
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            body.close();
+        } finally {
+            if (onClose != null) {
+                onClose.close();
+            }
+        }
+    }
+    
+    // Getters
+    public int getStatusCode() { return statusCode; }
+    public HttpHeaders getHeaders() { return headers; }
+    public InputStream getBody() { return body; }
+}
@@ -0,0 +1,53 @@
+package com.example.spotifymediaplayer.cluster;
+
+import com.example.spotifymediaplayer.entity.TokenInvalidation;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Shared state the backend nodes coordinate through in cluster mode: token refresh
+ * leases and the cache invalidation log.
+ *
+ * Implementations are selected with {@code spotify.cluster.store}:
+ * - local: in-process, for a single node and for tests ({@link LocalClusterStore})
+ * - jdbc:  tables in the shared token database ({@link JdbcClusterStore})
+ */
+public interface ClusterStore {
+    
+    /**
+     * Takes or extends a lease. Succeeds if the lease is free, expired or already held
+     * by the same owner.
+     *
+     * @param name  lease name
+     * @param owner node id of the caller
+     * @param ttl   time after which the lease lapses unless released or extended
+     * @return true if the caller now holds the lease
+     */
+    boolean tryAcquireLease(String name, String owner, Duration ttl);
+    
+    /**
+     * Releases a lease if the caller still holds it.
+     */
+    void releaseLease(String name, String owner);
+    
+    /**
+     * Appends an invalidation to the shared log; the store assigns its id.
+     */
+    void publish(TokenInvalidation invalidation);
+    
+    /**
+     * @param afterId only entries with a larger id
+     * @param limit   maximum number of entries
+     * @return entries in ascending id order
+     */
+    List<TokenInvalidation> invalidationsAfter(long afterId, int limit);
+    
+    /**
+     * Deletes log entries created before the given instant.
+     *
+     * @return number of entries removed
+     */
+    int purgeInvalidations(LocalDateTime createdBefore);
+}
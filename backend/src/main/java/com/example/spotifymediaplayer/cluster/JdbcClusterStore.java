@@ -0,0 +1,101 @@
+package com.example.spotifymediaplayer.cluster;
+
+import com.example.spotifymediaplayer.entity.TokenInvalidation;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * {@link ClusterStore} on the token_leases and token_invalidations tables (see the
+ * {@link com.example.spotifymediaplayer.entity.TokenLease} and
+ * {@link TokenInvalidation} entities), i.e. in the database the nodes already share for
+ * session_tokens.
+ *
+ * Plain statements that behave the same on H2 and PostgreSQL: a lease is taken with a
+ * conditional UPDATE, or an INSERT that loses to a concurrent one on the primary key.
+ */
+public class JdbcClusterStore implements ClusterStore {
+    
+    private static final String TAKE_LEASE_SQL =
+            "UPDATE token_leases SET owner_node = ?, expires_at = ? WHERE name = ? AND (expires_at < ? OR owner_node = ?)";
+    
+    private static final String INSERT_LEASE_SQL =
+            "INSERT INTO token_leases (name, owner_node, expires_at) VALUES (?, ?, ?)";
+    
+    private static final String RELEASE_LEASE_SQL = "DELETE FROM token_leases WHERE name = ? AND owner_node = ?";
+    
+    private static final String INSERT_INVALIDATION_SQL =
+            "INSERT INTO token_invalidations (session_id, kind, origin_node, created_at) VALUES (?, ?, ?, ?)";
+    
+    private static final String SELECT_INVALIDATIONS_SQL =
+            "SELECT id, session_id, kind, origin_node, created_at FROM token_invalidations WHERE id > ? ORDER BY id LIMIT ?";
+    
+    private static final String PURGE_INVALIDATIONS_SQL = "DELETE FROM token_invalidations WHERE created_at < ?";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    public JdbcClusterStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+    
+    @Override
+    public boolean tryAcquireLease(String name, String owner, Duration ttl) {
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp expiresAt = Timestamp.valueOf(now.plus(ttl));
+        if (jdbcTemplate.update(TAKE_LEASE_SQL, owner, expiresAt, name, Timestamp.valueOf(now), owner) > 0) {
+            return true;
+        }
+        try {
+            return jdbcTemplate.update(INSERT_LEASE_SQL, name, owner, expiresAt) > 0;
+        } catch (DuplicateKeyException e) {
+            // Held by another node, or it inserted first
+            return false;
+        }
+    }
+    
+    @Override
+    public void releaseLease(String name, String owner) {
+        jdbcTemplate.update(RELEASE_LEASE_SQL, name, owner);
+    }
+    
+    @Override
+    public void publish(TokenInvalidation invalidation) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(INSERT_INVALIDATION_SQL, new String[] {"id"});
+            statement.setString(1, invalidation.getSessionId());
+            statement.setString(2, invalidation.getKind());
+            statement.setString(3, invalidation.getOriginNode());
+            statement.setTimestamp(4, Timestamp.valueOf(invalidation.getCreatedAt()));
+            return statement;
+        }, keyHolder);
+        Number id = keyHolder.getKey();
+        invalidation.setId(id != null ? id.longValue() : null);
+    }
+    
+    @Override
+    public List<TokenInvalidation> invalidationsAfter(long afterId, int limit) {
+        return jdbcTemplate.query(SELECT_INVALIDATIONS_SQL, (resultSet, row) -> {
+            TokenInvalidation invalidation = new TokenInvalidation();
+            invalidation.setId(resultSet.getLong("id"));
+            invalidation.setSessionId(resultSet.getString("session_id"));
+            invalidation.setKind(resultSet.getString("kind"));
+            invalidation.setOriginNode(resultSet.getString("origin_node"));
+            Timestamp createdAt = resultSet.getTimestamp("created_at");
+            invalidation.setCreatedAt(createdAt != null ? createdAt.toLocalDateTime() : null);
+            return invalidation;
+        }, afterId, limit);
+    }
+    
+    @Override
+    public int purgeInvalidations(LocalDateTime createdBefore) {
+        return jdbcTemplate.update(PURGE_INVALIDATIONS_SQL, Timestamp.valueOf(createdBefore));
+    }
+}
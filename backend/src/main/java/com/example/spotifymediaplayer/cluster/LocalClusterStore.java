@@ -0,0 +1,76 @@
+package com.example.spotifymediaplayer.cluster;
+
+import com.example.spotifymediaplayer.entity.TokenInvalidation;
+import com.example.spotifymediaplayer.entity.TokenLease;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process {@link ClusterStore}. Nodes sharing one instance (e.g. application contexts
+ * in the same test JVM) coordinate exactly like nodes sharing a database.
+ */
+public class LocalClusterStore implements ClusterStore {
+    
+    private final Map<String, TokenLease> leases = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, TokenInvalidation> invalidations = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    
+    @Override
+    public boolean tryAcquireLease(String name, String owner, Duration ttl) {
+        LocalDateTime now = LocalDateTime.now();
+        AtomicBoolean acquired = new AtomicBoolean();
+        leases.compute(name, (key, lease) -> {
+            if (lease == null || lease.getExpiresAt().isBefore(now) || lease.getOwnerNode().equals(owner)) {
+                acquired.set(true);
+                return new TokenLease(name, owner, now.plus(ttl));
+            }
+            return lease;
+        });
+        return acquired.get();
+    }
+    
+    @Override
+    public void releaseLease(String name, String owner) {
+        leases.computeIfPresent(name, (key, lease) -> lease.getOwnerNode().equals(owner) ? null : lease);
+    }
+    
+    @Override
+    public void publish(TokenInvalidation invalidation) {
+        TokenInvalidation stored = new TokenInvalidation(invalidation.getSessionId(), invalidation.getKind(), invalidation.getOriginNode());
+        stored.setId(nextId.incrementAndGet());
+        stored.setCreatedAt(invalidation.getCreatedAt());
+        invalidation.setId(stored.getId());
+        invalidations.put(stored.getId(), stored);
+    }
+    
+    @Override
+    public List<TokenInvalidation> invalidationsAfter(long afterId, int limit) {
+        List<TokenInvalidation> entries = new ArrayList<>();
+        for (TokenInvalidation invalidation : invalidations.tailMap(afterId, false).values()) {
+            if (entries.size() >= limit) {
+                break;
+            }
+            entries.add(invalidation);
+        }
+        return entries;
+    }
+    
+    @Override
+    public int purgeInvalidations(LocalDateTime createdBefore) {
+        int purged = 0;
+        for (TokenInvalidation invalidation : invalidations.values()) {
+            if (invalidation.getCreatedAt().isBefore(createdBefore) && invalidations.remove(invalidation.getId(), invalidation)) {
+                purged++;
+            }
+        }
+        return purged;
+    }
+}
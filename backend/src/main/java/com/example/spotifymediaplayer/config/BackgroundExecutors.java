@@ -0,0 +1,64 @@
+package com.example.spotifymediaplayer.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factories for the backend's own background work (playback pollers, token
+ * refreshers, async HTTP callbacks).
+ *
+ * When {@code spring.threads.virtual.enabled=true} and the JVM is Java 21+, threads are
+ * virtual and blocking upstream or JDBC calls are dispatched onto a fresh virtual thread
+ * per task. Otherwise small pools of daemon platform threads are used, as before.
+ */
+@Component
+public class BackgroundExecutors {
+    
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+    
+    /**
+     * @return true if background work runs on virtual threads
+     */
+    public boolean isVirtual() {
+        return virtualThreadsEnabled && Runtime.version().feature() >= 21;
+    }
+    
+    /**
+     * Creates a thread factory for a named background component.
+     *
+     * @param name thread name prefix
+     * @return virtual-thread factory in virtual mode; daemon platform threads otherwise
+     */
+    public ThreadFactory threadFactory(String name) {
+        if (isVirtual()) {
+            return new VirtualThreadTaskExecutor(name + "-").getVirtualThreadFactory();
+        }
+        
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * Executor used to hand off blocking work from a scheduler thread.
+     *
+     * @param name thread name prefix
+     * @return a thread-per-task virtual executor in virtual mode, or an executor that
+     *         runs the task on the calling (scheduler) thread otherwise
+     */
+    public Executor dispatchExecutor(String name) {
+        if (isVirtual()) {
+            return new VirtualThreadTaskExecutor(name + "-");
+        }
+        return Runnable::run;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.spotifymediaplayer.config;
+
+import com.example.spotifymediaplayer.cluster.ClusterStore;
+import com.example.spotifymediaplayer.cluster.JdbcClusterStore;
+import com.example.spotifymediaplayer.cluster.LocalClusterStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Selects the store backend nodes coordinate through (see
+ * {@link com.example.spotifymediaplayer.service.ClusterCoordinator}).
+ *
+ * Supported values for {@code spotify.cluster.store}:
+ * - local: in-process; single node and tests
+ * - jdbc:  lease and invalidation tables in the shared token database
+ *
+ * HTTP sessions are shared separately through Spring Session JDBC, which the "cluster"
+ * profile switches on.
+ */
+@Configuration
+public class ClusterConfig {
+    
+    @Value("${spotify.cluster.store:local}")
+    private String store;
+    
+    @Bean
+    public ClusterStore clusterStore(JdbcTemplate jdbcTemplate) {
+        switch (store.trim().toLowerCase()) {
+            case "local":
+                return new LocalClusterStore();
+            case "jdbc":
+                return new JdbcClusterStore(jdbcTemplate);
+            default:
+                throw new IllegalArgumentException("Unknown spotify.cluster.store '" + store + "' (expected local or jdbc)");
+        }
+    }
+}
@@ -44,6 +44,9 @@ public class SecurityConfig {
         configuration.setAllowedOrigins(Arrays.asList("https://localhost:3000", "http://localhost:3000"));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(Arrays.asList("*"));
+        // Lets the frontend read the playback ETag and revalidate with If-None-Match,
+        // and pace its polling by the server's next-poll advice
+        configuration.setExposedHeaders(Arrays.asList("ETag", "X-Next-Poll-Ms"));
         configuration.setAllowCredentials(true);
         
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
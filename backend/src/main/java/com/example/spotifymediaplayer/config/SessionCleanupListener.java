@@ -0,0 +1,39 @@
+package com.example.spotifymediaplayer.config;
+
+import com.example.spotifymediaplayer.service.TokenReaper;
+import jakarta.servlet.http.HttpSessionEvent;
+import jakarta.servlet.http.HttpSessionListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Servlet listener (registered by Spring Boot) that hands ended HTTP sessions to the
+ * {@link TokenReaper}, so their tokens do not outlive them. Covers the container's own
+ * sessions; Spring Session in cluster mode does not report ends and relies on the
+ * reaper's sweep.
+ *
+ * Sessions the container expires while shutting down are ignored: their users did not
+ * leave, and the beans needed for the cleanup are already being destroyed.
+ */
+@Component
+public class SessionCleanupListener implements HttpSessionListener, ApplicationListener<ContextClosedEvent> {
+    
+    @Autowired
+    private TokenReaper tokenReaper;
+    
+    private volatile boolean closing;
+    
+    @Override
+    public void onApplicationEvent(ContextClosedEvent event) {
+        closing = true;
+    }
+    
+    @Override
+    public void sessionDestroyed(HttpSessionEvent event) {
+        if (!closing) {
+            tokenReaper.sessionDestroyed(event.getSession().getId());
+        }
+    }
+}
@@ -24,9 +24,15 @@ public class SpotifyConfig {
     @Value("${spotify.redirect.uri:https://localhost:3000}")
     private String redirectUri;
     
-    private final String authUrl = "https://accounts.spotify.com/authorize";
-    private final String tokenUrl = "https://accounts.spotify.com/api/token";
-    private final String apiBaseUrl = "https://api.spotify.com/v1";
+    /** Endpoint URLs can be overridden to point at a local stand-in server for load testing */
+    @Value("${spotify.auth.url:https://accounts.spotify.com/authorize}")
+    private String authUrl;
+    
+    @Value("${spotify.token.url:https://accounts.spotify.com/api/token}")
+    private String tokenUrl;
+    
+    @Value("${spotify.api.url:https://api.spotify.com/v1}")
+    private String apiBaseUrl;
     
     // Getters
     public String getClientId() { return clientId; }
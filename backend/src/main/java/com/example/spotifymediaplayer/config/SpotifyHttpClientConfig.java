@@ -0,0 +1,64 @@
+package com.example.spotifymediaplayer.config;
+
+import com.example.spotifymediaplayer.client.InstrumentedSpotifyHttpClient;
+import com.example.spotifymediaplayer.client.JdkSpotifyHttpClient;
+import com.example.spotifymediaplayer.client.RestTemplateSpotifyHttpClient;
+import com.example.spotifymediaplayer.client.SpotifyHttpClient;
+import com.example.spotifymediaplayer.metrics.SpotifyMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/**
+ * Selects the HTTP transport used for Spotify calls.
+ *
+ * Supported values for {@code spotify.http.mode}:
+ * - blocking: RestTemplate with a fresh connection per request (previous behaviour)
+ * - pooled:   shared keep-alive HTTP/2 client, calls block the request thread
+ * - async:    shared keep-alive HTTP/2 client with non-blocking sends, so read-only
+ *             endpoints release the Tomcat worker while waiting on Spotify
+ *
+ * Whichever transport is chosen is wrapped for upstream latency and status metrics.
+ */
+@Configuration
+public class SpotifyHttpClientConfig {
+    
+    @Value("${spotify.http.mode:pooled}")
+    private String mode;
+    
+    @Value("${spotify.http.connect-timeout-ms:3000}")
+    private long connectTimeoutMs;
+    
+    @Value("${spotify.http.read-timeout-ms:10000}")
+    private long readTimeoutMs;
+    
+    @Bean
+    public SpotifyHttpClient spotifyHttpClient(BackgroundExecutors backgroundExecutors, SpotifyMetrics metrics) {
+        return new InstrumentedSpotifyHttpClient(createTransport(backgroundExecutors), metrics);
+    }
+    
+    private SpotifyHttpClient createTransport(BackgroundExecutors backgroundExecutors) {
+        // In virtual-thread mode the JDK client's own callbacks run on virtual threads too
+        Executor executor = backgroundExecutors.isVirtual() ? backgroundExecutors.dispatchExecutor("spotify-http") : null;
+        Duration connectTimeout = Duration.ofMillis(connectTimeoutMs);
+        Duration readTimeout = Duration.ofMillis(readTimeoutMs);
+        
+        switch (mode.trim().toLowerCase()) {
+            case "blocking":
+                SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+                requestFactory.setConnectTimeout(connectTimeout);
+                requestFactory.setReadTimeout(readTimeout);
+                return new RestTemplateSpotifyHttpClient(requestFactory);
+            case "pooled":
+                return new JdkSpotifyHttpClient(connectTimeout, readTimeout, false, executor);
+            case "async":
+                return new JdkSpotifyHttpClient(connectTimeout, readTimeout, true, executor);
+            default:
+                throw new IllegalArgumentException("Unknown spotify.http.mode '" + mode + "' (expected blocking, pooled or async)");
+        }
+    }
+}
@@ -1,14 +1,41 @@
 package com.example.spotifymediaplayer.controller;
 
+import com.example.spotifymediaplayer.dto.CompactPlayback;
+import com.example.spotifymediaplayer.service.AlbumArtCache;
+import com.example.spotifymediaplayer.service.FieldProjection;
+import com.example.spotifymediaplayer.service.PlaybackClock;
+import com.example.spotifymediaplayer.service.PlaybackCommandQueue;
+import com.example.spotifymediaplayer.service.PlaybackCommandQueue.CommandState;
+import com.example.spotifymediaplayer.service.PlaybackCommandQueue.CommandType;
+import com.example.spotifymediaplayer.service.PlaybackFingerprint;
+import com.example.spotifymediaplayer.service.PlaybackPollAdvisor;
+import com.example.spotifymediaplayer.service.PlaybackStateEngine;
+import com.example.spotifymediaplayer.service.PlayerQueueModel;
+import com.example.spotifymediaplayer.service.ResponseProjection;
+import com.example.spotifymediaplayer.service.SpotifyRateLimitedException;
 import com.example.spotifymediaplayer.service.SpotifyService;
+import com.example.spotifymediaplayer.service.TokenReaper;
+import com.example.spotifymediaplayer.service.TokenRefreshScheduler;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import org.springframework.http.HttpStatus;
 
 /**
@@ -26,6 +53,50 @@ public class SpotifyController {
     @Autowired
     private SpotifyService spotifyService;
     
+    @Autowired
+    private PlaybackStateEngine playbackStateEngine;
+    
+    @Autowired
+    private PlaybackCommandQueue playbackCommandQueue;
+    
+    @Autowired
+    private PlaybackPollAdvisor pollAdvisor;
+    
+    @Autowired
+    private PlaybackClock playbackClock;
+    
+    @Autowired
+    private PlayerQueueModel playerQueueModel;
+    
+    @Autowired
+    private TokenReaper tokenReaper;
+    
+    @Autowired
+    private TokenRefreshScheduler tokenRefreshScheduler;
+    
+    @Autowired
+    private ResponseProjection responseProjection;
+    
+    @Autowired
+    private AlbumArtCache albumArtCache;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    /** Stream read-only responses straight from Spotify instead of parsing and re-serializing them */
+    @Value("${spotify.proxy.passthrough:false}")
+    private boolean passthrough;
+    
+    /** Properties dropped from passthrough responses (by a streaming filter) */
+    @Value("${spotify.proxy.strip-fields:}")
+    private Set<String> stripFields;
+    
+    /** Response header carrying the recommended delay before the next playback poll */
+    private static final String NEXT_POLL_HEADER = "X-Next-Poll-Ms";
+    
+    /** Send ETags on /current-playback and answer matching If-None-Match with 304 */
+    @Value("${spotify.playback.etag.enabled:true}")
+    private boolean playbackEtags;
+    
     /**
      * Returns the Spotify authorization URL for the client to initiate OAuth flow.
      *
@@ -69,105 +140,340 @@ public class SpotifyController {
     
     /**
      * Fetches the current playback state for the authenticated user.
+     * Served from the account's {@link PlaybackClock}, which extrapolates the progress of
+     * the last fetched state and goes upstream only when that can no longer be trusted.
      * Returns 401 if no valid access token is present.
      *
+     * The response carries a weak ETag over everything but progress_ms and timestamp;
+     * a request whose If-None-Match still matches gets 304 without a body, and the
+     * client advances the progress of its copy locally.
+     *
+     * If nothing is playing the answer is 204 without a body, so an idle player is not
+     * mistaken for a logged-out one.
+     *
+     * 200, 204 and 304 all carry X-Next-Poll-Ms, the delay after which polling again is
+     * worthwhile (see {@link PlaybackPollAdvisor}); idle accounts get the idle interval.
+     *
+     * The body is the playback state as whitelisted by {@link ResponseProjection},
+     * narrowed to the fields= list if one is given, or the flat {@link CompactPlayback}
+     * with view=compact. The ETag is computed over the body actually sent.
+     *
+     * @param fields      properties to return, e.g. item(name,artists(name)),progress_ms
+     * @param view        "compact" for the flat view
+     * @param ifNoneMatch entity tag of the client's copy, if any
      * @param session current HTTP session
-     * @return current playback JSON, or 401 if unauthorized
+     * @return current playback JSON, 204 if nothing is playing, 304 if unchanged, 400 for
+     *         an invalid field list or view, or 401 if unauthorized
      */
     @GetMapping("/current-playback")
-    public ResponseEntity<JsonNode> getCurrentPlayback(HttpSession session) {
-        JsonNode response = spotifyService.makeSpotifyApiCall(session.getId(), "/me/player", HttpMethod.GET, null);
+    public CompletableFuture<ResponseEntity<JsonNode>> getCurrentPlayback(
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String view,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            HttpSession session) {
         
-        if (response != null) {
-            return ResponseEntity.ok(response);
+        boolean compact = "compact".equals(view);
+        if (view != null && !compact) {
+            return CompletableFuture.completedFuture(badRequest("view must be compact"));
+        }
+        FieldProjection projection;
+        try {
+            projection = responseProjection.parseClientFields(fields);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(badRequest(e.getMessage()));
+        }
+        
+        String sessionId = session.getId();
+        return playbackClock.getCurrentPlaybackAsync(sessionId)
+                .thenApply(state -> conditionalPlayback(sessionId, state, projection, compact, ifNoneMatch));
+    }
+    
+    private ResponseEntity<JsonNode> conditionalPlayback(String sessionId, JsonNode state, FieldProjection projection,
+                                                         boolean compact, String ifNoneMatch) {
+        if (state == null) {
+            return okOrUnauthorized(null);
+        }
+        if (state == SpotifyService.NOTHING_PLAYING) {
+            return ResponseEntity.noContent().header(NEXT_POLL_HEADER, String.valueOf(nextPollMs(sessionId, null))).build();
+        }
+        
+        // Poll advice needs progress and duration, whatever the client asked to see
+        String nextPoll = String.valueOf(nextPollMs(sessionId, state));
+        JsonNode body = compact ? objectMapper.valueToTree(CompactPlayback.of(state))
+                : projection != null ? projection.apply(state) : state;
+        if (!playbackEtags) {
+            return ResponseEntity.ok().header(NEXT_POLL_HEADER, nextPoll).body(body);
+        }
+        
+        String etag = PlaybackFingerprint.etag(body);
+        if (PlaybackFingerprint.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).header(NEXT_POLL_HEADER, nextPoll).build();
+        }
+        return ResponseEntity.ok().eTag(etag).header(NEXT_POLL_HEADER, nextPoll).body(body);
+    }
+    
+    /** @param state playback state, or null for an idle account */
+    private long nextPollMs(String sessionId, JsonNode state) {
+        return pollAdvisor.nextPollDelay(spotifyService.getCachedAccountId(sessionId), state);
+    }
+    
+    /**
+     * Returns several parts of the player state in one response, so a poll tick is a
+     * single request: one session and token lookup, with the upstream calls made in
+     * parallel. Playback comes from the playback clock while it can be trusted.
+     *
+     * The response holds one property per requested part (null when Spotify has nothing
+     * for it) and, for playback, its ETag as playbackEtag. If the If-None-Match header
+     * still matches that tag, playback is left out and playbackNotModified is true.
+     * nextPollMs is the recommended delay before the next snapshot.
+     *
+     * @param include     comma-separated parts: playback, queue, devices (default: all)
+     * @param ifNoneMatch ETag of the client's playback copy, if any
+     * @param session     current HTTP session
+     * @return merged snapshot, 400 for an unknown part, or 401 if unauthorized
+     */
+    @GetMapping("/snapshot")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> getSnapshot(
+            @RequestParam(defaultValue = "playback,queue,devices") Set<String> include,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            HttpSession session) {
+        
+        Set<String> parts = new LinkedHashSet<>();
+        for (String part : include) {
+            if (!part.isBlank()) {
+                parts.add(part.trim());
+            }
+        }
+        if (parts.isEmpty() || !SpotifyService.SNAPSHOT_PARTS.keySet().containsAll(parts)) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                .body(Map.of("error", "include must list " + SpotifyService.SNAPSHOT_PARTS.keySet())));
+        }
+        
+        JsonNode shared = parts.contains("playback") ? playbackClock.peek(session.getId()) : null;
+        Set<String> upstream = new LinkedHashSet<>(parts);
+        if (shared != null) {
+            upstream.remove("playback");
+        }
+        
+        return spotifyService.getSnapshotAsync(session.getId(), upstream)
+                .thenApply(fetched -> {
+                    if (fetched == null) {
+                        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).<Map<String, Object>>build();
+                    }
+                    
+                    if (shared == null) {
+                        playbackClock.observe(spotifyService.getCachedAccountId(session.getId()), fetched.get("playback"));
+                    }
+                    
+                    Map<String, Object> body = new LinkedHashMap<>();
+                    if (parts.contains("playback")) {
+                        JsonNode playback = shared != null ? shared : fetched.get("playback");
+                        body.put("nextPollMs", nextPollMs(session.getId(), playback));
+                    }
+                    for (String part : parts) {
+                        JsonNode value = "playback".equals(part) && shared != null ? shared : fetched.get(part);
+                        if ("playback".equals(part) && value != null && playbackEtags) {
+                            String etag = PlaybackFingerprint.etag(value);
+                            body.put("playbackEtag", etag);
+                            if (PlaybackFingerprint.matches(ifNoneMatch, etag)) {
+                                body.put("playbackNotModified", true);
+                                continue;
+                            }
+                        }
+                        body.put(part, value);
+                    }
+                    return ResponseEntity.ok(body);
+                });
+    }
+    
+    /**
+     * Streams playback state changes as Server-Sent Events ("playback" events).
+     * All sessions of the same Spotify account share one upstream poller.
+     *
+     * @param session current HTTP session
+     * @return event stream, or 401 if unauthorized
+     */
+    @GetMapping(path = "/playback/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamPlayback(HttpSession session) {
+        SseEmitter emitter = playbackStateEngine.subscribe(session.getId());
+        
+        if (emitter != null) {
+            return ResponseEntity.ok(emitter);
         } else {
-            // Return 401 Unauthorized if no valid token
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
     }
     
     /**
      * Attempts to start playback on the active device for the user.
+     * Returns at once with a command id; the account's command queue sends it.
      */
     @PostMapping("/play")
     public ResponseEntity<Map<String, Object>> play(HttpSession session) {
-        spotifyService.makeSpotifyApiCall(session.getId(), "/me/player/play", HttpMethod.PUT, null);
-        return ResponseEntity.ok(Map.of("success", true));
+        return commandAccepted(playbackCommandQueue.submit(session.getId(), CommandType.PLAY, null));
     }
     
     /**
      * Pauses playback on the active device.
+     * Returns at once with a command id; the account's command queue sends it.
      */
     @PostMapping("/pause")
     public ResponseEntity<Map<String, Object>> pause(HttpSession session) {
-        spotifyService.makeSpotifyApiCall(session.getId(), "/me/player/pause", HttpMethod.PUT, null);
-        return ResponseEntity.ok(Map.of("success", true));
+        return commandAccepted(playbackCommandQueue.submit(session.getId(), CommandType.PAUSE, null));
     }
     
     /**
      * Skips to the next track.
+     * Returns at once with a command id; the account's command queue sends it.
      */
     @PostMapping("/next")
     public ResponseEntity<Map<String, Object>> nextTrack(HttpSession session) {
-        spotifyService.makeSpotifyApiCall(session.getId(), "/me/player/next", HttpMethod.POST, null);
-        return ResponseEntity.ok(Map.of("success", true));
+        return commandAccepted(playbackCommandQueue.submit(session.getId(), CommandType.NEXT, null));
     }
     
     /**
      * Goes to the previous track.
+     * Returns at once with a command id; the account's command queue sends it.
      */
     @PostMapping("/previous")
     public ResponseEntity<Map<String, Object>> previousTrack(HttpSession session) {
-        spotifyService.makeSpotifyApiCall(session.getId(), "/me/player/previous", HttpMethod.POST, null);
-        return ResponseEntity.ok(Map.of("success", true));
+        return commandAccepted(playbackCommandQueue.submit(session.getId(), CommandType.PREVIOUS, null));
     }
     
     /**
      * Performs a Spotify Search API request.
+     * Prefixes of tracks and artists seen before are answered from a local type-ahead
+     * index; identical queries (after normalization) are answered from a shared cache.
+     * In passthrough mode the upstream body is streamed to the client as it is parsed
+     * (minus any configured strip fields) and the cache is bypassed.
+     *
+     * Results carry the properties whitelisted by {@link ResponseProjection}; a fields=
+     * list narrows them further, e.g. tracks.items(name,uri,artists.name).
      *
-     * @param q     query string (will be url-encoded)
-     * @param type  item type (e.g., "track", default "track")
-     * @param limit max results, default 10
+     * @param q      query string (will be url-encoded)
+     * @param type   item type (e.g., "track", default "track")
+     * @param limit  max results, default 10
+     * @param market optional ISO country code
+     * @param fields optional properties to return
      * @param session current HTTP session
-     * @return raw JSON search results or 401 if unauthorized
+     * @param servletResponse target of the passthrough stream
+     * @return JSON search results, 400 for an invalid field list, or 401 if unauthorized
      */
     @GetMapping("/search")
-    public ResponseEntity<JsonNode> search(
+    public CompletableFuture<ResponseEntity<JsonNode>> search(
             @RequestParam String q,
             @RequestParam(defaultValue = "track") String type,
             @RequestParam(defaultValue = "10") int limit,
-            HttpSession session) {
+            @RequestParam(required = false) String market,
+            @RequestParam(required = false) String fields,
+            HttpSession session,
+            HttpServletResponse servletResponse) throws IOException {
         
-        String endpoint = String.format("/search?q=%s&type=%s&limit=%d", 
-                                       q.replace(" ", "%20"), type, limit);
+        FieldProjection projection;
+        try {
+            projection = responseProjection.parseClientFields(fields);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(badRequest(e.getMessage()));
+        }
         
-        JsonNode response = spotifyService.makeSpotifyApiCall(session.getId(), endpoint, HttpMethod.GET, null);
+        if (passthrough) {
+            streamOrUnauthorized(session, spotifyService.searchEndpoint(q, type, limit, market), projection, servletResponse);
+            return null;
+        }
         
-        if (response != null) {
-            return ResponseEntity.ok(response);
-        } else {
-            // Return 401 Unauthorized if no valid token
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        return spotifyService.search(session.getId(), q, type, limit, market)
+                .thenApply(results -> okOrUnauthorized(projection != null ? projection.apply(results) : results));
+    }
+    
+    /**
+     * Serves an image from the local album-art cache; image URLs in playback, search and
+     * queue responses point here. A miss is fetched from Spotify's CDN once and stored.
+     * Responses carry the image's content hash as ETag and may be cached for a year.
+     * No session is needed: the images are public and the same for every user.
+     *
+     * @param key         source URL in base64url, as produced by the URL rewrite
+     * @param ifNoneMatch entity tag of the client's copy, if any
+     * @param request     current request
+     * @param servletResponse target of the image bytes
+     * @return nothing; writes the image, 304, a redirect to the CDN if the image could
+     *         not be cached, or 404 for a key that does not name a CDN image
+     */
+    @GetMapping("/images/{key}")
+    public void getImage(
+            @PathVariable String key,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            HttpServletRequest request,
+            HttpServletResponse servletResponse) throws IOException {
+        
+        String url = albumArtCache.isEnabled() ? albumArtCache.sourceUrl(key) : null;
+        if (url == null) {
+            servletResponse.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        
+        if (!albumArtCache.serve(url, ifNoneMatch, request, servletResponse)) {
+            servletResponse.sendRedirect(url);
         }
     }
     
+    /**
+     * Returns the user's queue from the account's shared queue model.
+     *
+     * Without sinceVersion the whole queue is returned (currently_playing, queue,
+     * queue_length, timestamp) together with its version and delta=false. With the
+     * version of the client's copy, only the changes since then are returned
+     * (delta=true, changes=[{version, currently_playing?, splices=[{index, remove,
+     * items}]}]), to be applied in order; an unknown or too old version gets the whole
+     * queue again.
+     *
+     * @param sinceVersion version of the client's copy, if any
+     * @param session current HTTP session
+     * @return queue or queue changes, or 401 if unauthorized
+     */
+    @GetMapping("/queue")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> getQueue(
+            @RequestParam(required = false) Long sinceVersion,
+            HttpSession session) {
+        
+        return playerQueueModel.getQueue(session.getId(), sinceVersion)
+                .thenApply(queue -> queue != null
+                        ? ResponseEntity.ok(queue)
+                        : ResponseEntity.status(HttpStatus.UNAUTHORIZED).<Map<String, Object>>build());
+    }
+    
     /**
      * Adds a track to the user's playback queue.
      *
      * @param request JSON body containing key "uri" (Spotify track URI)
      * @param session current HTTP session
-     * @return { success: true } on completion
+     * @return 202 with the command id; see {@link #commandAccepted}
      */
     @PostMapping("/add-to-queue")
     public ResponseEntity<Map<String, Object>> addToQueue(
             @RequestBody Map<String, String> request,
             HttpSession session) {
         
-        String trackUri = request.get("uri");
-        String endpoint = "/me/player/queue?uri=" + trackUri;
+        return commandAccepted(playbackCommandQueue.submit(session.getId(), CommandType.QUEUE, request.get("uri")));
+    }
+    
+    /**
+     * Reports the outcome of a player command submitted by the same Spotify account.
+     * The same status is pushed as a "command" event on /playback/stream.
+     *
+     * @param commandId id returned when the command was submitted
+     * @param session current HTTP session
+     * @return command status (state QUEUED, RUNNING, SUCCEEDED, FAILED or SUPERSEDED),
+     *         or 404 if unknown
+     */
+    @GetMapping("/commands/{commandId}")
+    public ResponseEntity<Map<String, Object>> getCommandStatus(@PathVariable String commandId, HttpSession session) {
+        Map<String, Object> status = playbackCommandQueue.getStatus(session.getId(), commandId);
         
-        spotifyService.makeSpotifyApiCall(session.getId(), endpoint, HttpMethod.POST, null);
-        return ResponseEntity.ok(Map.of("success", true));
+        if (status != null) {
+            return ResponseEntity.ok(status);
+        } else {
+            return ResponseEntity.notFound().build();
+        }
     }
     
     /**
@@ -190,6 +496,110 @@ public class SpotifyController {
         return ResponseEntity.ok(Map.of("success", true, "message", "All tokens cleared"));
     }
     
+    /**
+     * Debug helper exposing access-token cache counters.
+     */
+    @GetMapping("/debug/token-cache-stats")
+    public ResponseEntity<Map<String, Object>> getTokenCacheStats() {
+        return ResponseEntity.ok(spotifyService.getTokenCacheStats());
+    }
+    
+    /**
+     * Debug helper exposing search cache hit ratio, evictions and memory footprint.
+     */
+    @GetMapping("/debug/search-cache-stats")
+    public ResponseEntity<Map<String, Object>> getSearchCacheStats() {
+        return ResponseEntity.ok(spotifyService.getSearchCacheStats());
+    }
+    
+    /**
+     * Debug helper exposing type-ahead index size and local hit counters.
+     */
+    @GetMapping("/debug/typeahead-stats")
+    public ResponseEntity<Map<String, Object>> getTypeAheadStats() {
+        return ResponseEntity.ok(spotifyService.getTypeAheadStats());
+    }
+    
+    /**
+     * Debug helper exposing token write-behind queue depth and flush counters.
+     */
+    @GetMapping("/debug/token-store-stats")
+    public ResponseEntity<Map<String, Object>> getTokenStoreStats() {
+        return ResponseEntity.ok(spotifyService.getTokenStoreStats());
+    }
+    
+    /**
+     * Debug helper exposing this node's cluster id, refresh lease and invalidation counters.
+     */
+    @GetMapping("/debug/cluster-stats")
+    public ResponseEntity<Map<String, Object>> getClusterStats() {
+        return ResponseEntity.ok(spotifyService.getClusterStats());
+    }
+    
+    /**
+     * Debug helper exposing proactive token refresh statistics.
+     */
+    @GetMapping("/debug/token-refresh-stats")
+    public ResponseEntity<Map<String, Object>> getTokenRefreshStats() {
+        return ResponseEntity.ok(tokenRefreshScheduler.getStats());
+    }
+    
+    /**
+     * Debug helper exposing expired-token reaper statistics.
+     */
+    @GetMapping("/debug/token-reaper-stats")
+    public ResponseEntity<Map<String, Object>> getTokenReaperStats() {
+        return ResponseEntity.ok(tokenReaper.getStats());
+    }
+    
+    /**
+     * Debug helper exposing poll intervals and next-poll advice counts.
+     */
+    @GetMapping("/debug/poll-advice-stats")
+    public ResponseEntity<Map<String, Object>> getPollAdviceStats() {
+        return ResponseEntity.ok(pollAdvisor.getStats());
+    }
+    
+    /**
+     * Debug helper exposing playback clock hits, fetch reasons and measured drift.
+     */
+    @GetMapping("/debug/playback-clock-stats")
+    public ResponseEntity<Map<String, Object>> getPlaybackClockStats() {
+        return ResponseEntity.ok(playbackClock.getStats());
+    }
+    
+    /**
+     * Debug helper exposing the response whitelists and field projection counters.
+     */
+    @GetMapping("/debug/projection-stats")
+    public ResponseEntity<Map<String, Object>> getProjectionStats() {
+        return ResponseEntity.ok(responseProjection.getStats());
+    }
+    
+    /**
+     * Debug helper exposing album-art cache size, hit ratio and how hits were sent.
+     */
+    @GetMapping("/debug/image-cache-stats")
+    public ResponseEntity<Map<String, Object>> getImageCacheStats() {
+        return ResponseEntity.ok(albumArtCache.getStats());
+    }
+    
+    /**
+     * Debug helper exposing queue model statistics.
+     */
+    @GetMapping("/debug/queue-stats")
+    public ResponseEntity<Map<String, Object>> getQueueStats() {
+        return ResponseEntity.ok(playerQueueModel.getStats());
+    }
+    
+    /**
+     * Debug helper exposing player command queue statistics.
+     */
+    @GetMapping("/debug/command-stats")
+    public ResponseEntity<Map<String, Object>> getCommandStats() {
+        return ResponseEntity.ok(playbackCommandQueue.getStats());
+    }
+    
     /**
      * OAuth callback endpoint used when Spotify redirects back with an authorization code.
      *
@@ -234,14 +644,72 @@ public class SpotifyController {
      * Lists the user's available playback devices.
      */
     @GetMapping("/devices")
-    public ResponseEntity<JsonNode> getDevices(HttpSession session) {
-        JsonNode response = spotifyService.makeSpotifyApiCall(session.getId(), "/me/player/devices", HttpMethod.GET, null);
+    public CompletableFuture<ResponseEntity<JsonNode>> getDevices(
+            HttpSession session,
+            HttpServletResponse servletResponse) throws IOException {
+        
+        if (passthrough) {
+            streamOrUnauthorized(session, "/me/player/devices", null, servletResponse);
+            return null;
+        }
         
+        return spotifyService.makeSpotifyApiCallAsync(session.getId(), "/me/player/devices", HttpMethod.GET, null)
+                .thenApply(SpotifyController::okOrUnauthorized);
+    }
+    
+    /**
+     * Passthrough variant of a read-only proxy call: the upstream body is streamed to the
+     * servlet response as it arrives. Sends 401 if nothing could be streamed.
+     * The handler returns null afterwards, which marks the request as handled.
+     */
+    private void streamOrUnauthorized(HttpSession session, String endpoint, FieldProjection fields,
+                                      HttpServletResponse servletResponse) throws IOException {
+        if (!spotifyService.streamSpotifyApiCall(session.getId(), endpoint, stripFields, fields, servletResponse)) {
+            servletResponse.sendError(HttpStatus.UNAUTHORIZED.value());
+        }
+    }
+    
+    /**
+     * Answers a submitted player command: 202 with {success, commandId, state} while it
+     * is queued, 200 if it already finished (async mode off), or 401 if unauthorized.
+     */
+    private static ResponseEntity<Map<String, Object>> commandAccepted(Map<String, Object> status) {
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        
+        Map<String, Object> body = new LinkedHashMap<>();
+        String state = (String) status.get("state");
+        boolean queued = CommandState.QUEUED.name().equals(state);
+        body.put("success", queued || CommandState.SUCCEEDED.name().equals(state));
+        body.putAll(status);
+        return ResponseEntity.status(queued ? HttpStatus.ACCEPTED : HttpStatus.OK).body(body);
+    }
+    
+    /**
+     * Maps an exhausted Spotify rate budget to 429 with a Retry-After header, so clients
+     * back off instead of treating the failure as a lost session.
+     */
+    @ExceptionHandler(SpotifyRateLimitedException.class)
+    public ResponseEntity<Map<String, Object>> handleRateLimited(SpotifyRateLimitedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(Map.of("error", "rate_limited", "retryAfter", e.getRetryAfterSeconds()));
+    }
+    
+    /**
+     * Wraps a proxied response, mapping a missing body to 401 Unauthorized
+     * (no valid token for the session).
+     */
+    private static ResponseEntity<JsonNode> okOrUnauthorized(JsonNode response) {
         if (response != null) {
             return ResponseEntity.ok(response);
         } else {
-            // Return 401 Unauthorized if no valid token
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
     }
-}
\ No newline at end of file
+    
+    private ResponseEntity<JsonNode> badRequest(String error) {
+        return ResponseEntity.badRequest().body(objectMapper.createObjectNode().put("error", error));
+    }
+}
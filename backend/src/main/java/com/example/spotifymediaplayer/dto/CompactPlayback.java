@@ -0,0 +1,137 @@
+package com.example.spotifymediaplayer.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Flat view of a Spotify playback state with just what a player UI renders
+ * (/current-playback?view=compact). Fields keep Spotify's snake_case names; the
+ * album image is the smallest one of at least 64 pixels.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CompactPlayback {
+    
+    /** Smallest album image edge that still looks sharp in the player */
+    private static final int MIN_IMAGE_SIZE = 64;
+    
+    @JsonProperty("is_playing")
+    private boolean playing;
+    
+    @JsonProperty("progress_ms")
+    private Long progressMs;
+    
+    @JsonProperty("timestamp")
+    private Long timestamp;
+    
+    @JsonProperty("duration_ms")
+    private Long durationMs;
+    
+    @JsonProperty("uri")
+    private String uri;
+    
+    @JsonProperty("name")
+    private String name;
+    
+    @JsonProperty("artists")
+    private List<String> artists;
+    
+    @JsonProperty("album")
+    private String album;
+    
+    @JsonProperty("image_url")
+    private String imageUrl;
+    
+    @JsonProperty("device")
+    private String device;
+    
+    @JsonProperty("volume_percent")
+    private Integer volumePercent;
+    
+    // Constructors
+    public CompactPlayback() {}
+    
+    /**
+     * Builds the compact view of a playback state.
+     *
+     * @param state /me/player JSON (full or projected)
+     * @return compact view; track fields are null when nothing is loaded
+     */
+    public static CompactPlayback of(JsonNode state) {
+        CompactPlayback compact = new CompactPlayback();
+        compact.playing = state.path("is_playing").asBoolean();
+        compact.progressMs = state.hasNonNull("progress_ms") ? state.get("progress_ms").asLong() : null;
+        compact.timestamp = state.hasNonNull("timestamp") ? state.get("timestamp").asLong() : null;
+        
+        JsonNode device = state.path("device");
+        compact.device = device.hasNonNull("name") ? device.get("name").asText() : null;
+        compact.volumePercent = device.hasNonNull("volume_percent") ? device.get("volume_percent").asInt() : null;
+        
+        JsonNode item = state.path("item");
+        if (!item.isObject()) {
+            return compact;
+        }
+        compact.durationMs = item.hasNonNull("duration_ms") ? item.get("duration_ms").asLong() : null;
+        compact.uri = item.hasNonNull("uri") ? item.get("uri").asText() : null;
+        compact.name = item.hasNonNull("name") ? item.get("name").asText() : null;
+        compact.artists = new ArrayList<>();
+        for (JsonNode artist : item.path("artists")) {
+            compact.artists.add(artist.path("name").asText());
+        }
+        JsonNode album = item.path("album");
+        compact.album = album.hasNonNull("name") ? album.get("name").asText() : null;
+        // Episodes carry their images on the item itself
+        compact.imageUrl = smallestImage(album.isObject() ? album.path("images") : item.path("images"));
+        return compact;
+    }
+    
+    private static String smallestImage(JsonNode images) {
+        String url = null;
+        int best = Integer.MAX_VALUE;
+        for (JsonNode image : images) {
+            int size = image.path("width").asInt(0);
+            if (url == null || (size >= MIN_IMAGE_SIZE && size < best)) {
+                url = image.path("url").asText(null);
+                best = size >= MIN_IMAGE_SIZE ? size : Integer.MAX_VALUE;
+            }
+        }
+        return url;
+    }
+    
+    // Getters and Setters
+    public boolean isPlaying() { return playing; }
+    public void setPlaying(boolean playing) { this.playing = playing; }
+    
+    public Long getProgressMs() { return progressMs; }
+    public void setProgressMs(Long progressMs) { this.progressMs = progressMs; }
+    
+    public Long getTimestamp() { return timestamp; }
+    public void setTimestamp(Long timestamp) { this.timestamp = timestamp; }
+    
+    public Long getDurationMs() { return durationMs; }
+    public void setDurationMs(Long durationMs) { this.durationMs = durationMs; }
+    
+    public String getUri() { return uri; }
+    public void setUri(String uri) { this.uri = uri; }
+    
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    
+    public List<String> getArtists() { return artists; }
+    public void setArtists(List<String> artists) { this.artists = artists; }
+    
+    public String getAlbum() { return album; }
+    public void setAlbum(String album) { this.album = album; }
+    
+    public String getImageUrl() { return imageUrl; }
+    public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; }
+    
+    public String getDevice() { return device; }
+    public void setDevice(String device) { this.device = device; }
+    
+    public Integer getVolumePercent() { return volumePercent; }
+    public void setVolumePercent(Integer volumePercent) { this.volumePercent = volumePercent; }
+}
@@ -1,11 +1,13 @@
 package com.example.spotifymediaplayer.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
  * POJO mapped to the response from Spotify's /api/token endpoint.
  * Fields are annotated to match snake_case JSON returned by Spotify.
  */
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class SpotifyTokenResponse {
     
     @JsonProperty("access_token")
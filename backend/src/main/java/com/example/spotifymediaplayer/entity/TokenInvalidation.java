@@ -0,0 +1,65 @@
+package com.example.spotifymediaplayer.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Entity for a cross-node cache invalidation in cluster mode.
+ *
+ * A node appends one when a session's token changes or the session ends; the other
+ * nodes read the log in id order and drop their cached copies. Old entries are purged
+ * after a retention period.
+ */
+@Entity
+@Table(name = "token_invalidations", indexes = @Index(columnList = "createdAt"))
+public class TokenInvalidation {
+    
+    /** Token was issued or refreshed; cached copies are stale */
+    public static final String KIND_TOKEN = "token";
+    /** Session logged out; drop everything kept for it */
+    public static final String KIND_LOGOUT = "logout";
+    /** All sessions cleared; sessionId is "*" */
+    public static final String KIND_CLEAR = "clear";
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    /** Affected session id, "*" for all sessions */
+    private String sessionId;
+    
+    /** One of the KIND_* values */
+    @Column(length = 16)
+    private String kind;
+    
+    /** Node that made the change; it skips its own entries */
+    private String originNode;
+    
+    private LocalDateTime createdAt;
+    
+    // Constructors
+    public TokenInvalidation() {}
+    
+    public TokenInvalidation(String sessionId, String kind, String originNode) {
+        this.sessionId = sessionId;
+        this.kind = kind;
+        this.originNode = originNode;
+        this.createdAt = LocalDateTime.now();
+    }
+    
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public String getSessionId() { return sessionId; }
+    public void setSessionId(String sessionId) { this.sessionId = sessionId; }
+    
+    public String getKind() { return kind; }
+    public void setKind(String kind) { this.kind = kind; }
+    
+    public String getOriginNode() { return originNode; }
+    public void setOriginNode(String originNode) { this.originNode = originNode; }
+    
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
@@ -0,0 +1,45 @@
+package com.example.spotifymediaplayer.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Entity for a time-limited lease held by one backend node in cluster mode.
+ *
+ * A node holds the lease "token-refresh:&lt;session key&gt;" while it refreshes that
+ * session's token, so only one node calls Spotify for it. Leases expire on their own if
+ * the holder dies.
+ */
+@Entity
+@Table(name = "token_leases")
+public class TokenLease {
+    
+    /** Lease name, e.g. token-refresh:&lt;hex session key&gt; */
+    @Id
+    private String name;
+    
+    /** Node id of the current holder */
+    private String ownerNode;
+    
+    /** Instant after which another node may take the lease */
+    private LocalDateTime expiresAt;
+    
+    // Constructors
+    public TokenLease() {}
+    
+    public TokenLease(String name, String ownerNode, LocalDateTime expiresAt) {
+        this.name = name;
+        this.ownerNode = ownerNode;
+        this.expiresAt = expiresAt;
+    }
+    
+    // Getters and Setters
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    
+    public String getOwnerNode() { return ownerNode; }
+    public void setOwnerNode(String ownerNode) { this.ownerNode = ownerNode; }
+    
+    public LocalDateTime getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(LocalDateTime expiresAt) { this.expiresAt = expiresAt; }
+}
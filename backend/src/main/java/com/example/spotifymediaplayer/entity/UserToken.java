@@ -1,54 +1,88 @@
 package com.example.spotifymediaplayer.entity;
 
 import jakarta.persistence.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 
 /**
  * Entity persisting Spotify tokens per anonymous HTTP session.
  *
- * Tokens are keyed by sessionId. H2 is used by default for development storage.
- * The model stores access and refresh tokens along with expiry and timestamps.
+ * Rows are keyed by a fixed-width hash of the session id ({@link #keyOf}), so the primary
+ * key is the only lookup index and raw session ids stay out of the token table and the
+ * refresh leases. The cluster's invalidation log does name them for a few minutes, since
+ * other nodes evict their caches by session id. The index on expiresAt serves refresh
+ * scans and expiry purges. Replaces the legacy user_tokens table, which
+ * {@link com.example.spotifymediaplayer.service.LegacyTokenMigration} copies over on
+ * startup.
  */
 @Entity
-@Table(name = "user_tokens")
+@Table(name = "session_tokens", indexes = @Index(name = "idx_session_tokens_expires_at", columnList = "expiresAt"))
 public class UserToken {
     
+    /** Bytes of the SHA-256 digest kept as the key (128 bits, the width of a UUID) */
+    public static final int KEY_LENGTH = 16;
+    
+    /**
+     * Width of both token columns. Spotify does not document a maximum token length;
+     * VARCHAR stores only the actual length, so headroom costs nothing, while a column
+     * too narrow for a longer token would fail every write of it.
+     */
+    public static final int TOKEN_LENGTH = 1000;
+    
+    /** First {@link #KEY_LENGTH} bytes of SHA-256(sessionId) */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Long id;
+    @Column(length = KEY_LENGTH)
+    private byte[] sessionKey;
     
-    /** Unique id correlating to HttpSession.getId() */
-    @Column(unique = true)
+    /** Session the row belongs to; not stored, set by the constructor or after a lookup */
+    @Transient
     private String sessionId;
     
     /** Short-lived OAuth access token used for Spotify API calls */
-    @Column(length = 1000)
+    @Column(length = TOKEN_LENGTH, nullable = false)
     private String accessToken;
     
     /** Long-lived refresh token used to obtain new access tokens */
-    @Column(length = 1000)
+    @Column(length = TOKEN_LENGTH)
     private String refreshToken;
     
     /** Expiration instant of the current access token */
+    @Column(nullable = false)
     private LocalDateTime expiresAt;
-    private LocalDateTime createdAt;
-    private LocalDateTime updatedAt;
     
     // Constructors
     public UserToken() {}
     
     public UserToken(String sessionId, String accessToken, String refreshToken, LocalDateTime expiresAt) {
+        this.sessionKey = keyOf(sessionId);
         this.sessionId = sessionId;
         this.accessToken = accessToken;
         this.refreshToken = refreshToken;
         this.expiresAt = expiresAt;
-        this.createdAt = LocalDateTime.now();
-        this.updatedAt = LocalDateTime.now();
+    }
+    
+    /**
+     * Derives the stored key of a session.
+     *
+     * @param sessionId HttpSession.getId()
+     * @return first {@link #KEY_LENGTH} bytes of the SHA-256 digest of the id
+     */
+    public static byte[] keyOf(String sessionId) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sessionId.getBytes(StandardCharsets.UTF_8));
+            return Arrays.copyOf(digest, KEY_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE ships SHA-256
+            throw new IllegalStateException(e);
+        }
     }
     
     // Getters and Setters
-    public Long getId() { return id; }
-    public void setId(Long id) { this.id = id; }
+    public byte[] getSessionKey() { return sessionKey; }
+    public void setSessionKey(byte[] sessionKey) { this.sessionKey = sessionKey; }
     
     public String getSessionId() { return sessionId; }
     public void setSessionId(String sessionId) { this.sessionId = sessionId; }
@@ -61,15 +95,4 @@ public class UserToken {
     
     public LocalDateTime getExpiresAt() { return expiresAt; }
     public void setExpiresAt(LocalDateTime expiresAt) { this.expiresAt = expiresAt; }
-    
-    public LocalDateTime getCreatedAt() { return createdAt; }
-    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
-    
-    public LocalDateTime getUpdatedAt() { return updatedAt; }
-    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
-    
-    @PreUpdate
-    public void preUpdate() {
-        this.updatedAt = LocalDateTime.now();
-    }
 }
\ No newline at end of file
@@ -0,0 +1,245 @@
+package com.example.spotifymediaplayer.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Micrometer instrumentation for the Spotify proxy hot paths.
+ *
+ * Meters (exposed at /actuator/prometheus):
+ * - spotify.upstream.latency    timer with histogram, by route, endpoint, method, status
+ * - spotify.upstream.responses  counter by endpoint and status
+ * - spotify.upstream.throttled  counter of 429 responses by route and endpoint
+ * - spotify.upstream.inflight   gauge of open upstream calls by endpoint
+ * - spotify.token.lookup        timer by route and source (cache, database, refreshed, none)
+ * - spotify.token.refresh       timer by route and outcome
+ * - spotify.json.parse          timer by endpoint
+ * - spotify.json.parse.skipped  counter of unchanged bodies that were not re-parsed
+ *
+ * The route tag is the {@code SpotifyController} mapping that triggered the work
+ * (e.g. /api/spotify/search). Background work is tagged with the name passed to
+ * {@link #runAs}, or "background" if none was given.
+ */
+@Component
+public class SpotifyMetrics {
+    
+    public static final String BACKGROUND_ROUTE = "background";
+    
+    /** Spotify ids in paths (base62, 22 chars) are collapsed to keep tag cardinality bounded */
+    private static final Pattern SPOTIFY_ID = Pattern.compile("/[0-9A-Za-z]{22}(?=/|$)");
+    
+    /** Image CDN ids (hex, 40 chars or several of them joined for mosaics) likewise */
+    private static final Pattern IMAGE_ID = Pattern.compile("/[0-9a-f]{32,}(?=/|$)");
+    
+    private static final ThreadLocal<String> backgroundRoute = new ThreadLocal<>();
+    
+    @Autowired
+    private MeterRegistry registry;
+    
+    private final Map<String, AtomicInteger> inflight = new ConcurrentHashMap<>();
+    
+    /**
+     * Resolves the route tag for work started on the current thread: the matched
+     * controller pattern on request threads, the {@link #runAs} name otherwise.
+     */
+    public static String currentRoute() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            Object pattern = attributes.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            if (pattern != null) {
+                return pattern.toString();
+            }
+        }
+        String route = backgroundRoute.get();
+        return route != null ? route : BACKGROUND_ROUTE;
+    }
+    
+    /**
+     * Runs background work with the given route tag, e.g. "poller:/me/player".
+     */
+    public static void runAs(String route, Runnable task) {
+        callAs(route, () -> {
+            task.run();
+            return null;
+        });
+    }
+    
+    /**
+     * Like {@link #runAs} for work that returns a value, e.g. a call sent later on
+     * behalf of a request thread.
+     */
+    public static <T> T callAs(String route, Supplier<T> task) {
+        String previous = backgroundRoute.get();
+        backgroundRoute.set(route);
+        try {
+            return task.get();
+        } finally {
+            if (previous != null) {
+                backgroundRoute.set(previous);
+            } else {
+                backgroundRoute.remove();
+            }
+        }
+    }
+    
+    /**
+     * Maps an absolute Spotify URL to a low-cardinality endpoint tag
+     * ("https://api.spotify.com/v1/me/player?x=1" becomes "/me/player").
+     */
+    static String endpointOf(String url) {
+        String path;
+        try {
+            path = URI.create(url).getPath();
+        } catch (IllegalArgumentException e) {
+            return "unknown";
+        }
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        if (path.startsWith("/v1/")) {
+            path = path.substring(3);
+        }
+        return IMAGE_ID.matcher(SPOTIFY_ID.matcher(path).replaceAll("/{id}")).replaceAll("/{id}");
+    }
+    
+    /**
+     * Starts timing an upstream call and counts it as in flight.
+     * The route is captured now, on the calling thread.
+     *
+     * @param method HTTP method
+     * @param url    absolute request URL
+     * @return handle to finish exactly once
+     */
+    public UpstreamCall startUpstream(String method, String url) {
+        String endpoint = endpointOf(url);
+        AtomicInteger gauge = inflight.computeIfAbsent(endpoint,
+                key -> registry.gauge("spotify.upstream.inflight", Tags.of("endpoint", key), new AtomicInteger()));
+        gauge.incrementAndGet();
+        return new UpstreamCall(currentRoute(), endpoint, method, gauge, System.nanoTime());
+    }
+    
+    /**
+     * Records how long resolving a session's access token took.
+     *
+     * @param source      where the token came from: cache, database, refreshed or none
+     * @param startNanos  {@link System#nanoTime()} at the start of the lookup
+     */
+    public void recordTokenLookup(String source, long startNanos) {
+        Timer.builder("spotify.token.lookup")
+                .description("Time to resolve a valid access token for a session")
+                .tags("route", currentRoute(), "source", source)
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Records a token refresh against the accounts service.
+     *
+     * @param success    whether a new token was obtained
+     * @param startNanos {@link System#nanoTime()} at the start of the refresh
+     */
+    public void recordTokenRefresh(boolean success, long startNanos) {
+        Timer.builder("spotify.token.refresh")
+                .description("Access token refresh including the accounts service round-trip")
+                .tags("route", currentRoute(), "outcome", success ? "success" : "failure")
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Records the time spent parsing an upstream JSON body.
+     *
+     * @param endpoint   Spotify endpoint path (query string is ignored)
+     * @param startNanos {@link System#nanoTime()} before parsing
+     */
+    public void recordJsonParse(String endpoint, long startNanos) {
+        int query = endpoint.indexOf('?');
+        String path = query >= 0 ? endpoint.substring(0, query) : endpoint;
+        Timer.builder("spotify.json.parse")
+                .description("Time spent parsing Spotify response bodies")
+                .tags("endpoint", SPOTIFY_ID.matcher(path).replaceAll("/{id}"))
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Counts an upstream body whose parse was skipped because its content fingerprint
+     * matched the previous one.
+     *
+     * @param endpoint Spotify endpoint path
+     */
+    public void recordParseSkipped(String endpoint) {
+        Counter.builder("spotify.json.parse.skipped")
+                .description("Upstream bodies answered from the previously parsed tree")
+                .tags("endpoint", endpoint)
+                .register(registry)
+                .increment();
+    }
+    
+    /**
+     * A single upstream call being timed.
+     */
+    public class UpstreamCall {
+        
+        private final String route;
+        private final String endpoint;
+        private final String method;
+        private final AtomicInteger gauge;
+        private final long startNanos;
+        
+        private UpstreamCall(String route, String endpoint, String method, AtomicInteger gauge, long startNanos) {
+            this.route = route;
+            this.endpoint = endpoint;
+            this.method = method;
+            this.gauge = gauge;
+            this.startNanos = startNanos;
+        }
+        
+        /** Records a call that received a response with the given status */
+        public void finish(int statusCode) {
+            record(String.valueOf(statusCode));
+            Counter.builder("spotify.upstream.responses")
+                    .description("Upstream responses by status code")
+                    .tags("endpoint", endpoint, "status", String.valueOf(statusCode))
+                    .register(registry)
+                    .increment();
+            if (statusCode == 429) {
+                Counter.builder("spotify.upstream.throttled")
+                        .description("Upstream 429 Too Many Requests responses")
+                        .tags("route", route, "endpoint", endpoint)
+                        .register(registry)
+                        .increment();
+            }
+        }
+        
+        /** Records a call that failed without a response (timeout, connection error) */
+        public void fail() {
+            record("IO_ERROR");
+        }
+        
+        private void record(String status) {
+            gauge.decrementAndGet();
+            Timer.builder("spotify.upstream.latency")
+                    .description("Spotify round-trip time until the response (headers for streamed calls)")
+                    .tags("route", route, "endpoint", endpoint, "method", method, "status", status)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
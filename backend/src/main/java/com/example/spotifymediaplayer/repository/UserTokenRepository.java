@@ -8,12 +8,18 @@ import java.util.Optional;
 
 /**
  * Repository for CRUD operations on {@link UserToken} entities.
- * Provides helpers to find and delete token records by session id.
+ * Rows are keyed by {@link UserToken#keyOf}; the helpers take the raw session id.
  */
 @Repository
-public interface UserTokenRepository extends JpaRepository<UserToken, Long> {
+public interface UserTokenRepository extends JpaRepository<UserToken, byte[]> {
     /** Find token record by associated HTTP session id */
-    Optional<UserToken> findBySessionId(String sessionId);
+    default Optional<UserToken> findBySessionId(String sessionId) {
+        Optional<UserToken> token = findById(UserToken.keyOf(sessionId));
+        token.ifPresent(found -> found.setSessionId(sessionId));
+        return token;
+    }
     /** Delete token record for a given HTTP session id */
-    void deleteBySessionId(String sessionId);
+    default void deleteBySessionId(String sessionId) {
+        deleteById(UserToken.keyOf(sessionId));
+    }
 }
\ No newline at end of file
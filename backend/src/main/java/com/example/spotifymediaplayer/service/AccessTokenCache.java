@@ -0,0 +1,228 @@
+package com.example.spotifymediaplayer.service;
+
+import com.example.spotifymediaplayer.entity.UserToken;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Bounded, expiry-aware in-memory cache of access tokens keyed by session id.
+ *
+ * Sits in front of {@link com.example.spotifymediaplayer.repository.UserTokenRepository}
+ * so the request path does not hit the database for every proxied call. Entries are
+ * evicted in least-recently-used order once the configured capacity is exceeded.
+ * Concurrent refreshes of the same session are collapsed into a single in-flight call.
+ */
+@Component
+public class AccessTokenCache {
+    
+    @Value("${spotify.token-cache.max-entries:10000}")
+    private int maxEntries;
+    
+    /** Access-ordered map; guarded by {@code this} */
+    private final LinkedHashMap<String, CachedToken> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, CompletableFuture<CachedToken>> inflightRefreshes = new ConcurrentHashMap<>();
+    private final List<BiConsumer<String, CachedToken>> putListeners = new CopyOnWriteArrayList<>();
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong coalescedRefreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    /**
+     * Looks up the cached token for a session and records a hit or miss.
+     *
+     * @param sessionId current session id
+     * @return cached token or null if the session is not cached
+     */
+    public CachedToken get(String sessionId) {
+        CachedToken token;
+        synchronized (this) {
+            token = entries.get(sessionId);
+        }
+        
+        if (token != null) {
+            hits.incrementAndGet();
+            token.lastAccess = LocalDateTime.now();
+        } else {
+            misses.incrementAndGet();
+        }
+        return token;
+    }
+    
+    /**
+     * Stores a token for a session, evicting the least recently used entries if needed.
+     */
+    public void put(String sessionId, CachedToken token) {
+        synchronized (this) {
+            CachedToken previous = entries.put(sessionId, token);
+            if (previous != null) {
+                token.lastAccess = previous.lastAccess;
+            }
+            while (entries.size() > maxEntries) {
+                Iterator<String> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        for (BiConsumer<String, CachedToken> listener : putListeners) {
+            listener.accept(sessionId, token);
+        }
+    }
+    
+    /**
+     * Looks up a session without counting a hit or miss or marking it as used, for
+     * background work that must not keep a session alive.
+     *
+     * @param sessionId session id
+     * @return cached token or null if the session is not cached
+     */
+    public synchronized CachedToken peek(String sessionId) {
+        return entries.get(sessionId);
+    }
+    
+    /**
+     * Registers a callback run after every {@link #put}, including refreshes.
+     */
+    public void addPutListener(BiConsumer<String, CachedToken> listener) {
+        putListeners.add(listener);
+    }
+    
+    /** Removes a single session from the cache */
+    public synchronized void evict(String sessionId) {
+        entries.remove(sessionId);
+    }
+    
+    /** Removes all sessions from the cache */
+    public synchronized void clear() {
+        entries.clear();
+    }
+    
+    /**
+     * Refreshes the token of a session, collapsing concurrent refreshes of the same
+     * session into one call. Callers arriving while a refresh is in flight wait for
+     * and share its result. A caller that starts a refresh just after another one
+     * finished gets the token that refresh stored instead of refreshing again.
+     *
+     * @param sessionId current session id
+     * @param seen      token the caller found stale, or null if it found none
+     * @param refresher performs the actual refresh; returns null on failure
+     * @return refreshed token or null if the refresh failed
+     */
+    public CachedToken refresh(String sessionId, CachedToken seen, Function<String, CachedToken> refresher) {
+        CompletableFuture<CachedToken> mine = new CompletableFuture<>();
+        CompletableFuture<CachedToken> inflight = inflightRefreshes.putIfAbsent(sessionId, mine);
+        if (inflight != null) {
+            coalescedRefreshes.incrementAndGet();
+            return inflight.join();
+        }
+        
+        CachedToken token = null;
+        try {
+            // A refresh may have completed between the caller's lookup and putIfAbsent
+            CachedToken current = peek(sessionId);
+            if (current != null && seen != null && current.getExpiresAt().isAfter(seen.getExpiresAt())) {
+                coalescedRefreshes.incrementAndGet();
+                token = current;
+                return token;
+            }
+            
+            refreshes.incrementAndGet();
+            token = refresher.apply(sessionId);
+            if (token != null) {
+                put(sessionId, token);
+            } else {
+                refreshFailures.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            refreshFailures.incrementAndGet();
+            e.printStackTrace();
+        } finally {
+            // Completed before it is removed, so a caller finding it still registered gets this token
+            mine.complete(token);
+            inflightRefreshes.remove(sessionId, mine);
+        }
+        return token;
+    }
+    
+    /**
+     * Removes sessions that have not been used since the given instant, e.g. because
+     * their HTTP session timed out.
+     *
+     * @param usedBefore sessions last used before this instant are removed
+     * @return number of removed sessions
+     */
+    public synchronized int evictIdle(LocalDateTime usedBefore) {
+        int removed = 0;
+        Iterator<CachedToken> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().lastAccess.isBefore(usedBefore)) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+    
+    /**
+     * @return hit/miss/refresh counters and current size
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("refreshes", refreshes.get());
+        stats.put("coalescedRefreshes", coalescedRefreshes.get());
+        stats.put("refreshFailures", refreshFailures.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+    
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Immutable snapshot of a session's tokens. Only the last-access time is updated
+     * in place so proactive refresh can skip abandoned sessions.
+     */
+    public static class CachedToken {
+        
+        private final String accessToken;
+        private final String refreshToken;
+        private final LocalDateTime expiresAt;
+        private volatile LocalDateTime lastAccess = LocalDateTime.now();
+        
+        public CachedToken(String accessToken, String refreshToken, LocalDateTime expiresAt) {
+            this.accessToken = accessToken;
+            this.refreshToken = refreshToken;
+            this.expiresAt = expiresAt;
+        }
+        
+        public static CachedToken of(UserToken userToken) {
+            return new CachedToken(userToken.getAccessToken(), userToken.getRefreshToken(), userToken.getExpiresAt());
+        }
+        
+        // Getters
+        public String getAccessToken() { return accessToken; }
+        public String getRefreshToken() { return refreshToken; }
+        public LocalDateTime getExpiresAt() { return expiresAt; }
+        public LocalDateTime getLastAccess() { return lastAccess; }
+    }
+}
@@ -0,0 +1,586 @@
+package com.example.spotifymediaplayer.service;
+
+import com.example.spotifymediaplayer.client.SpotifyHttpClient;
+import com.example.spotifymediaplayer.client.SpotifyHttpStream;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of album art and other Spotify CDN images, so each image crosses the
+ * uplink once instead of once per client.
+ *
+ * Image URLs in parsed Spotify responses are rewritten to /api/spotify/images/{key},
+ * where the key is the original URL in base64url; it names the source, so any node can
+ * fetch an image it has never seen and keys stay valid across restarts. Only https and
+ * http URLs on the configured CDN hosts are accepted.
+ *
+ * Storage is content-addressed:
+ * - objects/ab/abcd… holds the bytes under their SHA-256, so the same image behind
+ *   several URLs is stored once;
+ * - refs/{SHA-256 of the URL} maps a source URL to its object and content type.
+ * Objects live as long as a ref points to them. Refs are evicted in least-recently-used
+ * order once the objects exceed the byte budget. The file of an object that lost its
+ * last ref is deleted a grace period later, so a send that already looked it up (or a
+ * sendfile Tomcat has yet to open) still finds it. After a restart the refs are reloaded
+ * in the order they were written, which stands in for the lost access order.
+ *
+ * Hits are sent with Tomcat's sendfile (FileChannel.transferTo straight to the socket)
+ * where the connector supports it, otherwise with transferTo to the response stream.
+ * Spotify image URLs never change content, so responses are cacheable for a year.
+ */
+@Component
+public class AlbumArtCache {
+    
+    /** Path under which cached images are served */
+    public static final String PATH = "/api/spotify/images/";
+    
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    
+    /** How long the file of an evicted object outlives it */
+    private static final long DELETE_GRACE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    
+    @Value("${spotify.image-cache.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${spotify.image-cache.dir:${java.io.tmpdir}/spotify-image-cache}")
+    private String dir;
+    
+    /** Budget for the size of all stored objects */
+    @Value("${spotify.image-cache.max-bytes:268435456}")
+    private long maxBytes;
+    
+    /** Larger images are not cached; clients are redirected to the CDN instead */
+    @Value("${spotify.image-cache.max-image-bytes:4194304}")
+    private long maxImageBytes;
+    
+    /** CDN hosts (host or host:port) whose images are cached */
+    @Value("${spotify.image-cache.hosts:i.scdn.co,mosaic.scdn.co,image-cdn-ak.spotifycdn.com,image-cdn-fa.spotifycdn.com}")
+    private Set<String> hosts;
+    
+    /** Prefix for rewritten URLs, e.g. https://api.example.com; empty for same-origin paths */
+    @Value("${spotify.image-cache.public-url:}")
+    private String publicUrl;
+    
+    @Value("${spotify.image-cache.max-age-seconds:31536000}")
+    private long maxAgeSeconds;
+    
+    @Autowired
+    private SpotifyHttpClient httpClient;
+    
+    private Path objectsDir;
+    private Path refsDir;
+    private Path tmpDir;
+    
+    /** Source URL to stored object, access-ordered; guarded by {@code this} */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    /** Number of refs per object hash; guarded by {@code this} */
+    private final Map<String, Integer> objectRefs = new HashMap<>();
+    /** Size of all stored objects; guarded by {@code this} */
+    private long totalBytes;
+    /** Evicted object hashes and when their files may go, oldest first; guarded by {@code this} */
+    private final LinkedHashMap<String, Long> pendingDeletes = new LinkedHashMap<>();
+    private final Map<String, CompletableFuture<Entry>> inflightFetches = new ConcurrentHashMap<>();
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalescedMisses = new AtomicLong();
+    private final AtomicLong fetchFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong missingObjects = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong sentWithSendfile = new AtomicLong();
+    private final AtomicLong sentWithTransferTo = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    
+    /** A stored image as referenced from one source URL */
+    public static final class Entry {
+        private final String hash;
+        private final long size;
+        private final String contentType;
+        private final Path path;
+        
+        private Entry(String hash, long size, String contentType, Path path) {
+            this.hash = hash;
+            this.size = size;
+            this.contentType = contentType;
+            this.path = path;
+        }
+    }
+    
+    /**
+     * Creates the cache directories and loads the refs left by a previous run, oldest
+     * first, removing partial downloads and objects no ref points to.
+     */
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path root = Paths.get(dir);
+        objectsDir = Files.createDirectories(root.resolve("objects"));
+        refsDir = Files.createDirectories(root.resolve("refs"));
+        tmpDir = Files.createDirectories(root.resolve("tmp"));
+        
+        try (Stream<Path> partial = Files.list(tmpDir)) {
+            for (Path file : (Iterable<Path>) partial::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        
+        List<Path> refs;
+        try (Stream<Path> listed = Files.list(refsDir)) {
+            refs = new ArrayList<>(listed.toList());
+        }
+        refs.sort(Comparator.comparingLong(AlbumArtCache::lastModified));
+        for (Path ref : refs) {
+            String[] fields = Files.readString(ref, StandardCharsets.UTF_8).trim().split("\t", 3);
+            Path object = fields.length == 3 && fields[0].length() == 64 ? objectPath(fields[0]) : null;
+            if (object == null || !Files.isRegularFile(object)) {
+                Files.deleteIfExists(ref);
+                continue;
+            }
+            add(fields[2], new Entry(fields[0], Files.size(object), fields[1], object));
+        }
+        
+        try (Stream<Path> objects = Files.walk(objectsDir)) {
+            for (Path object : (Iterable<Path>) objects.filter(Files::isRegularFile)::iterator) {
+                boolean referenced;
+                synchronized (this) {
+                    referenced = objectRefs.containsKey(object.getFileName().toString());
+                }
+                if (!referenced) {
+                    Files.deleteIfExists(object);
+                }
+            }
+        }
+        evictOverBudget();
+    }
+    
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Points an image URL at this cache.
+     *
+     * @param url image URL from a Spotify response
+     * @return cache URL, or the given URL if it is not on a cached host
+     */
+    public String rewrite(String url) {
+        if (!enabled || !isCacheable(url)) {
+            return url;
+        }
+        return publicUrl + PATH + Base64.getUrlEncoder().withoutPadding().encodeToString(url.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Rewrites the url of every entry of every "images" array in a freshly parsed
+     * response, at any depth (album art, artist and playlist images).
+     *
+     * @param node parsed response, modified in place; must not be shared yet
+     */
+    public void rewriteImages(JsonNode node) {
+        if (!enabled || node == null) {
+            return;
+        }
+        if (node.isObject()) {
+            JsonNode images = node.get("images");
+            if (images != null && images.isArray()) {
+                for (JsonNode image : images) {
+                    if (image.isObject() && image.path("url").isTextual()) {
+                        ((ObjectNode) image).put("url", rewrite(image.get("url").asText()));
+                    }
+                }
+            }
+        }
+        if (node.isContainerNode()) {
+            for (JsonNode child : node) {
+                rewriteImages(child);
+            }
+        }
+    }
+    
+    /**
+     * Decodes a cache key back to its source URL.
+     *
+     * @param key path segment produced by {@link #rewrite}
+     * @return source URL, or null if the key is malformed or not on a cached host
+     */
+    public String sourceUrl(String key) {
+        String url;
+        try {
+            url = new String(Base64.getUrlDecoder().decode(key), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return isCacheable(url) ? url : null;
+    }
+    
+    private boolean isCacheable(String url) {
+        try {
+            URI uri = URI.create(url);
+            return ("https".equals(uri.getScheme()) || "http".equals(uri.getScheme()))
+                    && uri.getUserInfo() == null
+                    && uri.getAuthority() != null
+                    && hosts.contains(uri.getAuthority());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Returns the stored image for a source URL, fetching and storing it on a miss.
+     * Concurrent misses for the same URL share one download.
+     *
+     * @param url source URL from {@link #sourceUrl}
+     * @return stored image, or null if it could not be fetched or is too large
+     */
+    public Entry get(String url) {
+        synchronized (this) {
+            Entry entry = entries.get(url);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry;
+            }
+        }
+        misses.incrementAndGet();
+        
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> inflight = inflightFetches.putIfAbsent(url, mine);
+        if (inflight != null) {
+            coalescedMisses.incrementAndGet();
+            return inflight.join();
+        }
+        
+        Entry fetched = null;
+        try {
+            fetched = fetch(url);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (fetched == null) {
+                fetchFailures.incrementAndGet();
+            }
+            mine.complete(fetched);
+            inflightFetches.remove(url, mine);
+        }
+        return fetched;
+    }
+    
+    /**
+     * Downloads an image into a temporary file while hashing it, then moves it to its
+     * content address and records a ref for the URL.
+     */
+    private Entry fetch(String url) throws IOException, NoSuchAlgorithmException {
+        Path tmp = Files.createTempFile(tmpDir, "fetch", ".part");
+        try (SpotifyHttpStream upstream = httpClient.executeStreaming(HttpMethod.GET, url, new HttpHeaders(), null)) {
+            String contentType = upstream.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE);
+            if (!upstream.isSuccessful() || contentType == null || !contentType.startsWith("image/")
+                    || upstream.getHeaders().getContentLength() > maxImageBytes) {
+                return null;
+            }
+            
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            long size = 0;
+            try (InputStream in = upstream.getBody();
+                 OutputStream out = new DigestOutputStream(Files.newOutputStream(tmp), sha256)) {
+                byte[] buffer = new byte[16384];
+                for (int read; (read = in.read(buffer)) >= 0; ) {
+                    size += read;
+                    if (size > maxImageBytes) {
+                        return null;
+                    }
+                    out.write(buffer, 0, read);
+                }
+            }
+            
+            String hash = HexFormat.of().formatHex(sha256.digest());
+            Files.writeString(refPath(url), hash + '\t' + contentType + '\t' + url, StandardCharsets.UTF_8);
+            return store(url, new Entry(hash, size, contentType, objectPath(hash)), tmp);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+    
+    /**
+     * Moves a download to its content address, unless an identical image is stored
+     * already, and makes it the most recently used entry. Runs under the lock so that
+     * eviction cannot delete the object in between.
+     */
+    private synchronized Entry store(String url, Entry entry, Path download) throws IOException {
+        if (!Files.exists(entry.path)) {
+            Files.createDirectories(entry.path.getParent());
+            Files.move(download, entry.path, StandardCopyOption.ATOMIC_MOVE);
+        }
+        add(url, entry);
+        evictOverBudget();
+        deleteDueObjects();
+        return entry;
+    }
+    
+    /**
+     * Drops the ref of a URL whose object file has gone missing, so the next lookup
+     * fetches the image again.
+     */
+    private synchronized void invalidate(String url, Entry entry) {
+        if (entries.get(url) != entry) {
+            return;
+        }
+        entries.remove(url);
+        try {
+            Files.deleteIfExists(refPath(url));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        release(entry);
+    }
+    
+    private synchronized void add(String url, Entry entry) {
+        Entry previous = entries.put(url, entry);
+        if (previous != null) {
+            release(previous);
+        }
+        if (objectRefs.merge(entry.hash, 1, Integer::sum) == 1) {
+            totalBytes += entry.size;
+        }
+    }
+    
+    /** Drops a ref's claim on its object; true if that was the last one */
+    private boolean release(Entry entry) {
+        int refs = objectRefs.merge(entry.hash, -1, Integer::sum);
+        if (refs > 0) {
+            return false;
+        }
+        objectRefs.remove(entry.hash);
+        totalBytes -= entry.size;
+        return true;
+    }
+    
+    /**
+     * Evicts least recently used refs until the objects fit the budget; objects no ref
+     * points to any more are queued for deletion. The image just added is the most
+     * recently used, so it is only evicted if it alone exceeds the budget.
+     */
+    private synchronized void evictOverBudget() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            it.remove();
+            evictions.incrementAndGet();
+            try {
+                Files.deleteIfExists(refPath(eldest.getKey()));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (release(eldest.getValue())) {
+                pendingDeletes.remove(eldest.getValue().hash);
+                pendingDeletes.put(eldest.getValue().hash, System.nanoTime() + DELETE_GRACE_NANOS);
+            }
+        }
+    }
+    
+    /**
+     * Deletes the files of evicted objects whose grace period is over, unless a new ref
+     * has claimed the object again in the meantime.
+     */
+    private synchronized void deleteDueObjects() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<String, Long>> it = pendingDeletes.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> pending = it.next();
+            if (now - pending.getValue() < 0) {
+                return;
+            }
+            it.remove();
+            if (!objectRefs.containsKey(pending.getKey())) {
+                try {
+                    Files.deleteIfExists(objectPath(pending.getKey()));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+    
+    private Path objectPath(String hash) {
+        return objectsDir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+    
+    private Path refPath(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return refsDir.resolve(HexFormat.of().formatHex(digest));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Sends the image behind a source URL, fetching and storing it on a miss. If its
+     * stored file has gone missing (removed from outside the cache), the image is fetched
+     * once more.
+     *
+     * @param url             source URL from {@link #sourceUrl}
+     * @param ifNoneMatch     entity tag of the client's copy, if any
+     * @param request         current request, checked for sendfile support
+     * @param servletResponse response to write headers and body to
+     * @return false if nothing was written because the image could not be fetched or is
+     *         too large; callers redirect to the source URL then
+     */
+    public boolean serve(String url, String ifNoneMatch, HttpServletRequest request,
+                         HttpServletResponse servletResponse) throws IOException {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Entry entry = get(url);
+            if (entry == null) {
+                return false;
+            }
+            if (send(entry, ifNoneMatch, request, servletResponse)) {
+                return true;
+            }
+            missingObjects.incrementAndGet();
+            invalidate(url, entry);
+        }
+        return false;
+    }
+    
+    /**
+     * Sends a stored image: 304 if If-None-Match names its hash, otherwise the bytes
+     * with a year-long, immutable Cache-Control. The file is checked (or opened) before
+     * any header is set, so a missing file leaves the response untouched.
+     *
+     * @return false if the object's file is missing
+     */
+    private boolean send(Entry entry, String ifNoneMatch, HttpServletRequest request,
+                         HttpServletResponse servletResponse) throws IOException {
+        String etag = '"' + entry.hash + '"';
+        if (ifNoneMatch != null && ifNoneMatch.contains(etag)) {
+            setCacheHeaders(servletResponse, etag);
+            notModified.incrementAndGet();
+            servletResponse.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return true;
+        }
+        
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat opens the file after the handler returns; evicted files outlive that by the grace period
+            if (!Files.isRegularFile(entry.path)) {
+                return false;
+            }
+            setCacheHeaders(servletResponse, etag);
+            servletResponse.setContentType(entry.contentType);
+            servletResponse.setContentLengthLong(entry.size);
+            request.setAttribute(SENDFILE_FILENAME, entry.path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, entry.size);
+            bytesSent.addAndGet(entry.size);
+            sentWithSendfile.incrementAndGet();
+            return true;
+        }
+        
+        FileChannel file;
+        try {
+            file = FileChannel.open(entry.path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        try (file) {
+            setCacheHeaders(servletResponse, etag);
+            servletResponse.setContentType(entry.contentType);
+            servletResponse.setContentLengthLong(entry.size);
+            OutputStream out = servletResponse.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            for (long position = 0; position < entry.size; ) {
+                position += file.transferTo(position, entry.size - position, target);
+            }
+            out.flush();
+        }
+        bytesSent.addAndGet(entry.size);
+        sentWithTransferTo.incrementAndGet();
+        return true;
+    }
+    
+    private void setCacheHeaders(HttpServletResponse servletResponse, String etag) {
+        servletResponse.setHeader(HttpHeaders.ETAG, etag);
+        servletResponse.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=" + maxAgeSeconds + ", immutable");
+    }
+    
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("dir", dir);
+        synchronized (this) {
+            stats.put("refs", entries.size());
+            stats.put("objects", objectRefs.size());
+            stats.put("bytes", totalBytes);
+            stats.put("pendingDeletes", pendingDeletes.size());
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRatio", lookups > 0 ? (double) hitCount / lookups : 0.0);
+        stats.put("coalescedMisses", coalescedMisses.get());
+        stats.put("fetchFailures", fetchFailures.get());
+        stats.put("evictions", evictions.get());
+        stats.put("missingObjects", missingObjects.get());
+        stats.put("notModified", notModified.get());
+        stats.put("sentWithSendfile", sentWithSendfile.get());
+        stats.put("sentWithTransferTo", sentWithTransferTo.get());
+        stats.put("bytesSent", bytesSent.get());
+        return stats;
+    }
+}
@@ -0,0 +1,319 @@
+package com.example.spotifymediaplayer.service;
+
+import com.example.spotifymediaplayer.cluster.ClusterStore;
+import com.example.spotifymediaplayer.config.BackgroundExecutors;
+import com.example.spotifymediaplayer.entity.TokenInvalidation;
+import com.example.spotifymediaplayer.entity.UserToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Coordinates token state between backend nodes when {@code spotify.cluster.enabled=true}.
+ *
+ * - Refresh leases: a node refreshes a session's token only while it holds the lease
+ *   "token-refresh:&lt;session key&gt;" (the hex {@link UserToken#keyOf} of the session id),
+ *   so exactly one node calls Spotify per refresh.
+ * - Invalidations: token changes and logouts are appended to the shared log. Every node
+ *   polls it and evicts the affected sessions from its {@link AccessTokenCache}; the next
+ *   lookup reloads them from the shared token table. Entries name the raw session id,
+ *   which the caches are keyed by, and are purged after retention-minutes.
+ *
+ * With clustering off every method is a no-op and leases are always granted.
+ */
+@Component
+public class ClusterCoordinator {
+    
+    private static final String REFRESH_LEASE_PREFIX = "token-refresh:";
+    private static final String TASK_LEASE_PREFIX = "task:";
+    private static final int POLL_BATCH = 500;
+    /** Polls a gap in the log may stay open (a rolled-back or still uncommitted insert) before it is skipped */
+    private static final int MAX_GAP_POLLS = 20;
+    
+    @Autowired
+    private ClusterStore store;
+    
+    @Autowired
+    private AccessTokenCache tokenCache;
+    
+    @Autowired
+    private BackgroundExecutors backgroundExecutors;
+    
+    @Autowired
+    private MeterRegistry registry;
+    
+    @Value("${spotify.cluster.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${spotify.cluster.store:local}")
+    private String storeType;
+    
+    /** Defaults to host name, process id and a random suffix */
+    @Value("${spotify.cluster.node-id:}")
+    private String nodeId;
+    
+    @Value("${spotify.cluster.lease-ttl-ms:10000}")
+    private long leaseTtlMs;
+    
+    @Value("${spotify.cluster.lease-poll-ms:100}")
+    private long leasePollMs;
+    
+    @Value("${spotify.cluster.invalidation.poll-ms:500}")
+    private long invalidationPollMs;
+    
+    @Value("${spotify.cluster.invalidation.retention-minutes:10}")
+    private long retentionMinutes;
+    
+    private final List<Consumer<TokenInvalidation>> listeners = new CopyOnWriteArrayList<>();
+    
+    /** Highest log id below which every entry has been applied; only touched by the poller */
+    private volatile long watermark;
+    /** Applied ids above the watermark (the log has a gap below them) */
+    private final TreeSet<Long> appliedAhead = new TreeSet<>();
+    private int gapPolls;
+    
+    private ScheduledExecutorService poller;
+    
+    private Counter leasesAcquired;
+    private Counter leasesContended;
+    private Counter published;
+    private Counter applied;
+    private Counter pollFailures;
+    
+    @PostConstruct
+    void start() {
+        if (nodeId == null || nodeId.isBlank()) {
+            nodeId = defaultNodeId();
+        }
+        leasesAcquired = Counter.builder("spotify.cluster.leases").tag("outcome", "acquired")
+                .description("Token refresh leases taken by this node").register(registry);
+        leasesContended = Counter.builder("spotify.cluster.leases").tag("outcome", "contended")
+                .description("Token refresh leases held by another node").register(registry);
+        published = Counter.builder("spotify.cluster.invalidations").tag("direction", "published")
+                .description("Cache invalidations sent to other nodes").register(registry);
+        applied = Counter.builder("spotify.cluster.invalidations").tag("direction", "applied")
+                .description("Cache invalidations received from other nodes").register(registry);
+        pollFailures = Counter.builder("spotify.cluster.poll.failures")
+                .description("Failed reads of the invalidation log").register(registry);
+        
+        if (!enabled) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(backgroundExecutors.threadFactory("cluster-invalidations"));
+        poller.scheduleWithFixedDelay(this::pollQuietly, 0, invalidationPollMs, TimeUnit.MILLISECONDS);
+        poller.scheduleWithFixedDelay(this::purgeQuietly, 1, 1, TimeUnit.MINUTES);
+    }
+    
+    @PreDestroy
+    void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public String getNodeId() {
+        return nodeId;
+    }
+    
+    /**
+     * @return how long a node waits for another node's refresh before giving up
+     */
+    public long getLeaseTtlMs() {
+        return leaseTtlMs;
+    }
+    
+    /**
+     * @return pause between checks of the shared token while another node refreshes it
+     */
+    public long getLeasePollMs() {
+        return leasePollMs;
+    }
+    
+    /**
+     * Registers a callback for invalidations made by other nodes, after the token cache
+     * entry has been evicted.
+     */
+    public void addListener(Consumer<TokenInvalidation> listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * Takes the refresh lease of a session.
+     *
+     * @param sessionId session whose token is about to be refreshed
+     * @return true if this node may refresh; always true with clustering off
+     */
+    public boolean tryAcquireRefreshLease(String sessionId) {
+        if (!enabled) {
+            return true;
+        }
+        boolean acquired = store.tryAcquireLease(refreshLeaseName(sessionId), nodeId, Duration.ofMillis(leaseTtlMs));
+        (acquired ? leasesAcquired : leasesContended).increment();
+        return acquired;
+    }
+    
+    public void releaseRefreshLease(String sessionId) {
+        if (enabled) {
+            store.releaseLease(refreshLeaseName(sessionId), nodeId);
+        }
+    }
+    
+    /** Lease names carry the hashed session key, so raw session ids stay out of token_leases */
+    private static String refreshLeaseName(String sessionId) {
+        return REFRESH_LEASE_PREFIX + HexFormat.of().formatHex(UserToken.keyOf(sessionId));
+    }
+    
+    /**
+     * Takes or renews the lease of a background task that one node at a time should run.
+     * The holder renews it on every run; if it dies, another node takes over once the
+     * lease expires.
+     *
+     * @param task task name, e.g. "token-reaper"
+     * @param ttl  how long the lease lasts without renewal
+     * @return true if this node should run the task; always true with clustering off
+     */
+    public boolean tryAcquireTaskLease(String task, Duration ttl) {
+        if (!enabled) {
+            return true;
+        }
+        return store.tryAcquireLease(TASK_LEASE_PREFIX + task, nodeId, ttl);
+    }
+    
+    /** Tells other nodes that the session's token was issued or refreshed */
+    public void tokenChanged(String sessionId) {
+        publish(sessionId, TokenInvalidation.KIND_TOKEN);
+    }
+    
+    /** Tells other nodes that the session logged out */
+    public void sessionEnded(String sessionId) {
+        publish(sessionId, TokenInvalidation.KIND_LOGOUT);
+    }
+    
+    /** Tells other nodes that all tokens were cleared */
+    public void allSessionsEnded() {
+        publish("*", TokenInvalidation.KIND_CLEAR);
+    }
+    
+    private void publish(String sessionId, String kind) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            store.publish(new TokenInvalidation(sessionId, kind, nodeId));
+            published.increment();
+        } catch (Exception e) {
+            // Other nodes keep their copy until it expires or fails upstream
+            e.printStackTrace();
+        }
+    }
+    
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (Exception e) {
+            pollFailures.increment();
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Applies new log entries from other nodes. Ids are assigned on insert but become
+     * visible on commit, so an entry can show up after higher ids; the watermark only
+     * advances over a contiguous run and a gap is skipped after a number of polls.
+     */
+    void poll() {
+        List<TokenInvalidation> entries;
+        do {
+            entries = store.invalidationsAfter(watermark, POLL_BATCH);
+            for (TokenInvalidation entry : entries) {
+                if (appliedAhead.add(entry.getId()) && !nodeId.equals(entry.getOriginNode())) {
+                    apply(entry);
+                }
+            }
+            advanceWatermark();
+        } while (entries.size() == POLL_BATCH && appliedAhead.isEmpty());
+    }
+    
+    private void advanceWatermark() {
+        while (!appliedAhead.isEmpty() && appliedAhead.first() == watermark + 1) {
+            watermark = appliedAhead.pollFirst();
+        }
+        if (appliedAhead.isEmpty()) {
+            gapPolls = 0;
+        } else if (++gapPolls > MAX_GAP_POLLS) {
+            watermark = appliedAhead.last();
+            appliedAhead.clear();
+            gapPolls = 0;
+        }
+    }
+    
+    private void apply(TokenInvalidation entry) {
+        if (TokenInvalidation.KIND_CLEAR.equals(entry.getKind())) {
+            tokenCache.clear();
+        } else {
+            tokenCache.evict(entry.getSessionId());
+        }
+        applied.increment();
+        for (Consumer<TokenInvalidation> listener : listeners) {
+            listener.accept(entry);
+        }
+    }
+    
+    private void purgeQuietly() {
+        try {
+            store.purgeInvalidations(LocalDateTime.now().minusMinutes(retentionMinutes));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+    
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + ProcessHandle.current().pid() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+    
+    /**
+     * @return node id, store type, lease and invalidation counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("nodeId", nodeId);
+        stats.put("store", storeType);
+        stats.put("leasesAcquired", (long) leasesAcquired.count());
+        stats.put("leasesContended", (long) leasesContended.count());
+        stats.put("invalidationsPublished", (long) published.count());
+        stats.put("invalidationsApplied", (long) applied.count());
+        stats.put("pollFailures", (long) pollFailures.count());
+        stats.put("logWatermark", watermark);
+        return stats;
+    }
+}
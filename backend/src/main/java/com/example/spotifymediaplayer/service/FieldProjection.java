@@ -0,0 +1,201 @@
+package com.example.spotifymediaplayer.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.filter.FilteringParserDelegate;
+import com.fasterxml.jackson.core.filter.TokenFilter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Whitelist of JSON properties to keep, applied while a document is parsed or to a
+ * parsed tree.
+ *
+ * Specs list property paths separated by commas; a dot descends into an object and
+ * parentheses group several properties under one prefix, so these are equivalent:
+ * - {@code item.name,item.artists.name,is_playing}
+ * - {@code item(name,artists(name)),is_playing}
+ * Arrays are transparent (a path applies to every element) and a property named at
+ * the end of a path is kept with everything below it. Nulls and arrays or objects that
+ * were already empty are kept, so "nothing playing" still reads as null.
+ */
+public final class FieldProjection extends TokenFilter {
+    
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+    
+    /** Kept properties; a null value keeps the whole subtree */
+    private final Map<String, FieldProjection> children = new LinkedHashMap<>();
+    
+    private FieldProjection() {}
+    
+    /**
+     * Parses a projection spec.
+     *
+     * @param spec property paths, e.g. {@code tracks.items(name,uri),tracks.total}
+     * @return the projection
+     * @throws IllegalArgumentException if the spec is empty or malformed
+     */
+    public static FieldProjection parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            throw new IllegalArgumentException("Empty field list");
+        }
+        String compact = spec.replaceAll("\\s+", "");
+        FieldProjection root = new FieldProjection();
+        int end = root.parseList(compact, 0);
+        if (end != compact.length()) {
+            throw new IllegalArgumentException("Unexpected '" + compact.charAt(end) + "' at position " + end + " in fields");
+        }
+        return root;
+    }
+    
+    private int parseList(String spec, int pos) {
+        pos = parsePath(spec, pos);
+        while (pos < spec.length() && spec.charAt(pos) == ',') {
+            pos = parsePath(spec, pos + 1);
+        }
+        return pos;
+    }
+    
+    private int parsePath(String spec, int pos) {
+        int end = pos;
+        while (end < spec.length() && ".,()".indexOf(spec.charAt(end)) < 0) {
+            end++;
+        }
+        if (end == pos) {
+            throw new IllegalArgumentException("Missing property name at position " + pos + " in fields");
+        }
+        String name = spec.substring(pos, end);
+        if (end < spec.length() && spec.charAt(end) == '.') {
+            return child(name).parsePath(spec, end + 1);
+        }
+        if (end < spec.length() && spec.charAt(end) == '(') {
+            int close = child(name).parseList(spec, end + 1);
+            if (close >= spec.length() || spec.charAt(close) != ')') {
+                throw new IllegalArgumentException("Missing ')' in fields");
+            }
+            return close + 1;
+        }
+        children.put(name, null);
+        return end;
+    }
+    
+    /** Nested projection for a property; one that is already kept whole stays whole */
+    private FieldProjection child(String name) {
+        if (children.containsKey(name) && children.get(name) == null) {
+            return new FieldProjection();
+        }
+        return children.computeIfAbsent(name, key -> new FieldProjection());
+    }
+    
+    /**
+     * Wraps a parser so that it only returns the kept properties; anything else is
+     * skipped token by token and never materialized.
+     *
+     * @param parser source parser, not yet advanced
+     * @return filtering parser
+     */
+    public JsonParser filter(JsonParser parser) {
+        return new FilteringParserDelegate(parser, this, Inclusion.INCLUDE_ALL_AND_PATH, true);
+    }
+    
+    /**
+     * Projects an already parsed tree.
+     *
+     * @param node tree to project (not modified)
+     * @return new tree with the kept properties; leaves are shared with the input
+     */
+    public JsonNode apply(JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            return node;
+        }
+        if (node.isArray()) {
+            ArrayNode projected = NODES.arrayNode(node.size());
+            for (JsonNode element : node) {
+                JsonNode value = apply(element);
+                if (value != null) {
+                    projected.add(value);
+                }
+            }
+            return projected;
+        }
+        if (!node.isObject()) {
+            return null;
+        }
+        ObjectNode projected = NODES.objectNode();
+        for (Map.Entry<String, FieldProjection> entry : children.entrySet()) {
+            JsonNode value = node.get(entry.getKey());
+            if (value == null) {
+                continue;
+            }
+            JsonNode kept = entry.getValue() == null ? value : entry.getValue().apply(value);
+            if (kept != null) {
+                projected.set(entry.getKey(), kept);
+            }
+        }
+        return projected;
+    }
+    
+    @Override
+    public TokenFilter includeProperty(String name) {
+        if (!children.containsKey(name)) {
+            return null;
+        }
+        FieldProjection child = children.get(name);
+        return child == null ? TokenFilter.INCLUDE_ALL : child;
+    }
+    
+    @Override
+    public TokenFilter includeElement(int index) {
+        return this;
+    }
+    
+    @Override
+    public TokenFilter includeRootValue(int index) {
+        return this;
+    }
+    
+    @Override
+    public boolean includeNull() {
+        return true;
+    }
+    
+    @Override
+    public boolean includeEmptyArray(boolean contentsFiltered) {
+        return !contentsFiltered;
+    }
+    
+    @Override
+    public boolean includeEmptyObject(boolean contentsFiltered) {
+        return !contentsFiltered;
+    }
+    
+    /** Scalars are only kept through a whole subtree, never where an object was expected */
+    @Override
+    protected boolean _includeScalar() {
+        return false;
+    }
+    
+    /**
+     * @return the spec in grouped form, e.g. {@code item(name,artists(name)),is_playing}
+     */
+    @Override
+    public String toString() {
+        StringBuilder spec = new StringBuilder();
+        for (Iterator<Map.Entry<String, FieldProjection>> it = children.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, FieldProjection> entry = it.next();
+            spec.append(entry.getKey());
+            if (entry.getValue() != null) {
+                spec.append('(').append(entry.getValue()).append(')');
+            }
+            if (it.hasNext()) {
+                spec.append(',');
+            }
+        }
+        return spec.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.spotifymediaplayer.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Token-level JSON copy used by the passthrough proxy.
+ *
+ * Copies a document from a streaming parser to a streaming generator without building
+ * a tree, dropping every property whose name is in the strip set (at any depth) along
+ * with its whole value, and optionally rewriting image URLs on the way.
+ */
+public final class JsonStreamFilter {
+    
+    private JsonStreamFilter() {}
+    
+    /**
+     * Copies all remaining tokens from parser to generator, skipping stripped properties.
+     *
+     * @param parser      source positioned before the first token
+     * @param generator   destination
+     * @param stripFields property names to remove wherever they occur
+     */
+    public static void copyWithout(JsonParser parser, JsonGenerator generator, Set<String> stripFields) throws IOException {
+        copyWithout(parser, generator, stripFields, null);
+    }
+    
+    /**
+     * Copies all remaining tokens from parser to generator, skipping stripped properties
+     * and passing the url of every entry of an "images" array through imageUrls.
+     *
+     * @param parser      source positioned before the first token
+     * @param generator   destination
+     * @param stripFields property names to remove wherever they occur
+     * @param imageUrls   image URL rewrite (may be null)
+     */
+    public static void copyWithout(JsonParser parser, JsonGenerator generator, Set<String> stripFields,
+                                   UnaryOperator<String> imageUrls) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            if (token == JsonToken.FIELD_NAME && stripFields.contains(parser.currentName())) {
+                parser.nextToken();
+                parser.skipChildren();
+                continue;
+            }
+            if (token == JsonToken.VALUE_STRING && imageUrls != null && isImageUrl(parser.getParsingContext())) {
+                generator.writeString(imageUrls.apply(parser.getText()));
+                continue;
+            }
+            generator.copyCurrentEvent(parser);
+        }
+        generator.flush();
+    }
+    
+    /** True for the context of {@code "images": [{"url": ...}]} */
+    private static boolean isImageUrl(JsonStreamContext context) {
+        if (!context.inObject() || !"url".equals(context.getCurrentName())) {
+            return false;
+        }
+        JsonStreamContext array = context.getParent();
+        return array != null && array.inArray()
+                && array.getParent() != null && "images".equals(array.getParent().getCurrentName());
+    }
+}
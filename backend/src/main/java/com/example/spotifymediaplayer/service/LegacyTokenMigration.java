@@ -0,0 +1,181 @@
+package com.example.spotifymediaplayer.service;
+
+import com.example.spotifymediaplayer.entity.UserToken;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves rows of the legacy user_tokens table (surrogate id, raw session id) into the
+ * session_tokens layout of {@link UserToken}.
+ *
+ * Runs once during startup, before the web server accepts requests. Rows are read in
+ * id order in chunks and upserted by session key, so a run that dies halfway can simply
+ * be repeated. Afterwards the legacy table is renamed to user_tokens_migrated (or
+ * user_tokens_migrated_2 and so on if that name is taken), which keeps later starts from
+ * copying stale tokens again; drop it once the new layout is trusted. Rows without a
+ * refresh token or expiry cannot be used and are skipped.
+ *
+ * In cluster mode nodes starting on the same database take turns through a task lease:
+ * one copies, the others wait until the legacy table is gone, or take over the copy if
+ * the lease holder stops renewing.
+ */
+@Component
+public class LegacyTokenMigration {
+    
+    private static final String LEGACY_TABLE = "user_tokens";
+    private static final String MIGRATED_TABLE = "user_tokens_migrated";
+    
+    private static final String LEASE_TASK = "legacy-token-migration";
+    /** Renewed after every chunk, so it only has to outlast copying one */
+    private static final Duration LEASE_TTL = Duration.ofMinutes(1);
+    
+    private static final String SELECT_CHUNK_SQL =
+            "SELECT id, session_id, access_token, refresh_token, expires_at FROM " + LEGACY_TABLE
+            + " WHERE id > ? ORDER BY id LIMIT ?";
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    /** Also makes sure the new table exists before rows are copied */
+    @Autowired
+    private TokenWriteBehind tokenStore;
+    
+    @Autowired
+    private ClusterCoordinator clusterCoordinator;
+    
+    @Value("${spotify.token-store.migrate-legacy.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${spotify.token-store.migrate-legacy.chunk-size:5000}")
+    private int chunkSize;
+    
+    private volatile boolean legacyTableFound;
+    private volatile String migratedTable;
+    private volatile long copiedRows;
+    private volatile long skippedRows;
+    private volatile long durationMillis;
+    
+    @PostConstruct
+    void migrate() throws InterruptedException {
+        if (!enabled || !tableExists(LEGACY_TABLE)) {
+            return;
+        }
+        legacyTableFound = true;
+        long started = System.nanoTime();
+        
+        // Another node may be copying; wait for it to finish or to give up its lease
+        while (!clusterCoordinator.tryAcquireTaskLease(LEASE_TASK, LEASE_TTL)) {
+            Thread.sleep(clusterCoordinator.getLeasePollMs());
+            if (!tableExists(LEGACY_TABLE)) {
+                durationMillis = (System.nanoTime() - started) / 1_000_000;
+                return;
+            }
+        }
+        
+        try {
+            long lastId = 0;
+            while (true) {
+                List<UserToken> chunk = new ArrayList<>(chunkSize);
+                List<Long> ids = new ArrayList<>(chunkSize);
+                jdbcTemplate.query(SELECT_CHUNK_SQL, (ResultSet row) -> {
+                    ids.add(row.getLong("id"));
+                    String sessionId = row.getString("session_id");
+                    String refreshToken = row.getString("refresh_token");
+                    Timestamp expiresAt = row.getTimestamp("expires_at");
+                    if (sessionId == null || refreshToken == null || expiresAt == null) {
+                        skippedRows++;
+                        return;
+                    }
+                    chunk.add(new UserToken(sessionId, row.getString("access_token"), refreshToken, expiresAt.toLocalDateTime()));
+                }, lastId, chunkSize);
+                
+                if (ids.isEmpty()) {
+                    break;
+                }
+                tokenStore.saveAllNow(chunk);
+                copiedRows += chunk.size();
+                lastId = ids.get(ids.size() - 1);
+                clusterCoordinator.tryAcquireTaskLease(LEASE_TASK, LEASE_TTL);
+            }
+        } catch (DataAccessException e) {
+            // A node that took over after this one's lease lapsed may have finished first
+            if (tableExists(LEGACY_TABLE)) {
+                throw e;
+            }
+            durationMillis = (System.nanoTime() - started) / 1_000_000;
+            return;
+        }
+        
+        migratedTable = renameLegacyTable();
+        durationMillis = (System.nanoTime() - started) / 1_000_000;
+    }
+    
+    /**
+     * Renames the legacy table to the first free migrated name.
+     *
+     * @return new name, or null if the table was already gone (renamed by a node whose
+     *         lease had expired)
+     */
+    private String renameLegacyTable() {
+        for (int suffix = 1; ; suffix++) {
+            String target = suffix == 1 ? MIGRATED_TABLE : MIGRATED_TABLE + "_" + suffix;
+            if (tableExists(target)) {
+                continue;
+            }
+            try {
+                jdbcTemplate.execute("ALTER TABLE " + LEGACY_TABLE + " RENAME TO " + target);
+                return target;
+            } catch (DataAccessException e) {
+                if (!tableExists(LEGACY_TABLE)) {
+                    return null;
+                }
+                if (!tableExists(target)) {
+                    throw e;
+                }
+                // Taken in the meantime; try the next name
+            }
+        }
+    }
+    
+    private boolean tableExists(String table) {
+        Boolean exists = jdbcTemplate.execute((Connection connection) -> {
+            try (ResultSet tables = connection.getMetaData().getTables(null, null, "%", new String[] {"TABLE"})) {
+                while (tables.next()) {
+                    if (table.equalsIgnoreCase(tables.getString("TABLE_NAME"))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+        return Boolean.TRUE.equals(exists);
+    }
+    
+    /**
+     * @return whether a legacy table was found, how many rows were moved and where the
+     *         legacy table went
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("legacyTableFound", legacyTableFound);
+        stats.put("copiedRows", copiedRows);
+        stats.put("skippedRows", skippedRows);
+        stats.put("durationMillis", durationMillis);
+        stats.put("migratedTable", migratedTable);
+        return stats;
+    }
+}
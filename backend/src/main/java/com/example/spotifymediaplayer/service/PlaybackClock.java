@@ -0,0 +1,402 @@
+package com.example.spotifymediaplayer.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-account playback clock that answers /current-playback without upstream calls.
+ *
+ * The clock keeps the last authoritative /me/player state of each account, whoever
+ * fetched it (a request, a snapshot or the shared poller), and serves copies with
+ * progress_ms advanced by the time since it was observed. The state is fetched again
+ * only when the extrapolation can no longer be trusted:
+ * - track-end: the current track is due to end
+ * - command: a player command of the account went out; states observed within the
+ *   advisor's command window are trusted for the after-command delay only
+ * - drift: the extrapolated progress may be off by more than drift-bound-ms. Every
+ *   fetch measures how far the previous state's extrapolation was off (a change made
+ *   on another device counts as fully off), and the account's drift rate, floored at
+ *   min-drift-rate, decides how long a state stays within the bound.
+ * - idle: nothing was playing at the last fetch; that answer is served for the
+ *   advisor's idle interval
+ *
+ * Concurrent reads of an account that needs a fetch share one upstream call. Waiters
+ * only fetch on their own when the shared fetch had no valid token to work with.
+ */
+@Service
+public class PlaybackClock {
+    
+    /** Why a read was or was not served from the clock; each result is counted */
+    public enum Result {
+        HIT, COLD, TRACK_END, COMMAND, DRIFT, IDLE;
+        
+        String tag() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+    
+    /** Weight of the newest sample in the drift rate */
+    private static final double DRIFT_SMOOTHING = 0.5;
+    
+    /** Shared fetch result when the fetching session had no valid token; compared by identity */
+    private static final JsonNode UNAUTHORIZED = JsonNodeFactory.instance.objectNode();
+    
+    @Autowired
+    private SpotifyService spotifyService;
+    
+    @Autowired
+    private PlaybackPollAdvisor pollAdvisor;
+    
+    @Autowired
+    private MeterRegistry registry;
+    
+    @Value("${spotify.playback.clock.enabled:true}")
+    private boolean enabled;
+    
+    /** Largest progress error, in milliseconds, a served state may carry */
+    @Value("${spotify.playback.clock.drift-bound-ms:1000}")
+    private long driftBoundMs;
+    
+    /** Drift assumed per millisecond of age even when every fetch matched the extrapolation */
+    @Value("${spotify.playback.clock.min-drift-rate:0.25}")
+    private double minDriftRate;
+    
+    @Value("${spotify.playback.clock.max-accounts:1000}")
+    private int maxAccounts;
+    
+    private final JsonNodeFactory nodes = JsonNodeFactory.instance;
+    
+    /** Clocks by account, least recently read first; guarded by {@code this} */
+    private final LinkedHashMap<String, AccountClock> clocks = new LinkedHashMap<>(16, 0.75f, true);
+    
+    private final Map<Result, Counter> reads = new EnumMap<>(Result.class);
+    private Counter coalesced;
+    private Counter driftExceeded;
+    private DistributionSummary drift;
+    
+    @PostConstruct
+    void registerMeters() {
+        for (Result result : Result.values()) {
+            reads.put(result, Counter.builder("spotify.playback.clock.reads").tag("result", result.tag())
+                    .description("Playback reads served from the clock (hit) or fetched, by the reason").register(registry));
+        }
+        coalesced = Counter.builder("spotify.playback.clock.coalesced")
+                .description("Playback reads that waited for a fetch of the same account").register(registry);
+        driftExceeded = Counter.builder("spotify.playback.clock.drift.exceeded")
+                .description("Fetches whose progress was further off the extrapolation than the drift bound").register(registry);
+        drift = DistributionSummary.builder("spotify.playback.clock.drift").baseUnit("milliseconds")
+                .description("Difference between fetched and extrapolated progress of the same track").register(registry);
+    }
+    
+    /**
+     * Returns the session's playback state, extrapolated from the account's clock when
+     * it can be trusted and fetched from Spotify otherwise.
+     *
+     * @param sessionId current session id
+     * @return future with the playback JSON, {@link SpotifyService#NOTHING_PLAYING} if the
+     *         account is idle, or null if unauthorized or the call failed. Completed
+     *         exceptionally only with {@link SpotifyRateLimitedException}
+     */
+    public CompletableFuture<JsonNode> getCurrentPlaybackAsync(String sessionId) {
+        if (!enabled) {
+            return spotifyService.getCurrentPlaybackAsync(sessionId);
+        }
+        String accountId = spotifyService.resolveAccountId(sessionId);
+        if (accountId == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return clockOf(accountId, true).read(sessionId);
+    }
+    
+    /**
+     * Returns the extrapolated state of the session's account if the clock can be
+     * trusted right now. Never calls Spotify.
+     *
+     * @param sessionId current session id
+     * @return playback JSON, or null if callers should fetch it (and {@link #observe} it)
+     */
+    public JsonNode peek(String sessionId) {
+        String accountId = enabled ? spotifyService.getCachedAccountId(sessionId) : null;
+        AccountClock clock = accountId != null ? clockOf(accountId, false) : null;
+        return clock != null ? clock.peek() : null;
+    }
+    
+    /**
+     * Records a playback state fetched from Spotify outside the clock.
+     *
+     * @param accountId Spotify user id the state belongs to, or null if not known
+     * @param state     /me/player body, or null (ignored)
+     */
+    public void observe(String accountId, JsonNode state) {
+        if (enabled && accountId != null && state != null) {
+            clockOf(accountId, true).observe(state);
+        }
+    }
+    
+    /**
+     * Records that Spotify had nothing playing for the account, as found outside the clock.
+     *
+     * @param accountId Spotify user id the answer belongs to, or null if not known
+     */
+    public void observeIdle(String accountId) {
+        if (enabled && accountId != null) {
+            clockOf(accountId, true).observeIdle();
+        }
+    }
+    
+    /**
+     * Expires the account's clock after a player command reached Spotify.
+     *
+     * @param accountId Spotify user id that sent the command
+     */
+    public void commandSent(String accountId) {
+        AccountClock clock = clockOf(accountId, false);
+        if (clock != null) {
+            clock.expire(Result.COMMAND);
+        }
+    }
+    
+    /**
+     * @return configuration, read results by reason and drift counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (this) {
+            stats.put("accounts", clocks.size());
+        }
+        stats.put("driftBoundMs", driftBoundMs);
+        stats.put("minDriftRate", minDriftRate);
+        Map<String, Long> byResult = new LinkedHashMap<>();
+        reads.forEach((result, counter) -> byResult.put(result.tag(), (long) counter.count()));
+        stats.put("reads", byResult);
+        stats.put("coalesced", (long) coalesced.count());
+        stats.put("driftSamples", drift.count());
+        stats.put("meanDriftMs", Math.round(drift.mean()));
+        stats.put("maxDriftMs", Math.round(drift.max()));
+        stats.put("driftExceeded", (long) driftExceeded.count());
+        return stats;
+    }
+    
+    /** What readers get for a fetch result: the result itself, or null if the fetching session had no token */
+    private static JsonNode visible(JsonNode fetched) {
+        return fetched == UNAUTHORIZED ? null : fetched;
+    }
+    
+    private synchronized AccountClock clockOf(String accountId, boolean create) {
+        if (!create) {
+            return clocks.get(accountId);
+        }
+        AccountClock clock = clocks.computeIfAbsent(accountId, AccountClock::new);
+        Iterator<AccountClock> eldest = clocks.values().iterator();
+        while (clocks.size() > maxAccounts) {
+            eldest.next();
+            eldest.remove();
+        }
+        return clock;
+    }
+    
+    /**
+     * Clock of one account.
+     */
+    private class AccountClock {
+        
+        private final String accountId;
+        /** Whether a fetch has answered yet; state stays null after one that found nothing playing */
+        private boolean observed;
+        private JsonNode state;
+        private long observedNanos;
+        private long progressMs;
+        private long durationMs;
+        private boolean playing;
+        private String itemId;
+        /** When the state stops being served, and why */
+        private long expiresNanos;
+        private Result expiry = Result.COLD;
+        /** Smoothed drift per millisecond of age, from the fetches so far */
+        private double driftRate;
+        private CompletableFuture<JsonNode> inFlight;
+        
+        AccountClock(String accountId) {
+            this.accountId = accountId;
+        }
+        
+        CompletableFuture<JsonNode> read(String sessionId) {
+            CompletableFuture<JsonNode> fetch;
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (observed && now - expiresNanos < 0) {
+                    reads.get(Result.HIT).increment();
+                    return CompletableFuture.completedFuture(extrapolate(now));
+                }
+                if (inFlight != null) {
+                    coalesced.increment();
+                    // Another session's missing token says nothing about this one's
+                    return inFlight.thenCompose(shared -> shared == UNAUTHORIZED ? spotifyService.getCurrentPlaybackAsync(sessionId)
+                            : CompletableFuture.completedFuture(visible(shared)));
+                }
+                reads.get(observed ? expiry : Result.COLD).increment();
+                fetch = new CompletableFuture<>();
+                inFlight = fetch;
+            }
+            
+            // The upstream call is made outside the lock; readers arriving meanwhile wait on inFlight
+            String accessToken = spotifyService.getValidAccessToken(sessionId);
+            CompletableFuture<JsonNode> upstream = accessToken != null
+                    ? spotifyService.fetchCurrentPlaybackAsync(sessionId, accessToken)
+                    : CompletableFuture.completedFuture(UNAUTHORIZED);
+            upstream.whenComplete((fetched, error) -> {
+                if (fetched == SpotifyService.NOTHING_PLAYING) {
+                    observeIdle();
+                } else if (fetched != null && fetched != UNAUTHORIZED) {
+                    observe(fetched);
+                }
+                synchronized (this) {
+                    inFlight = null;
+                }
+                if (error != null) {
+                    fetch.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                } else {
+                    fetch.complete(fetched);
+                }
+            });
+            return fetch.thenApply(PlaybackClock::visible);
+        }
+        
+        synchronized JsonNode peek() {
+            long now = System.nanoTime();
+            if (state == null || now - expiresNanos >= 0) {
+                return null;
+            }
+            reads.get(Result.HIT).increment();
+            return extrapolate(now);
+        }
+        
+        synchronized void observe(JsonNode fetched) {
+            long now = System.nanoTime();
+            JsonNode item = fetched.path("item");
+            String fetchedItem = item.path("id").asText(item.path("uri").asText(null));
+            long fetchedProgress = fetched.path("progress_ms").asLong(0);
+            
+            if (state != null && !pollAdvisor.inCommandWindow(accountId)) {
+                learn(now, fetchedItem, fetchedProgress);
+            }
+            
+            observed = true;
+            state = fetched;
+            observedNanos = now;
+            progressMs = fetchedProgress;
+            durationMs = item.path("duration_ms").asLong(0);
+            playing = fetched.path("is_playing").asBoolean(false);
+            itemId = fetchedItem;
+            
+            long trustMs = Math.round(driftBoundMs / Math.max(minDriftRate, driftRate));
+            expiry = Result.DRIFT;
+            if (playing && durationMs > 0 && durationMs - progressMs < trustMs) {
+                trustMs = Math.max(0, durationMs - progressMs);
+                expiry = Result.TRACK_END;
+            }
+            if (pollAdvisor.inCommandWindow(accountId) && pollAdvisor.getAfterCommandMs() < trustMs) {
+                trustMs = pollAdvisor.getAfterCommandMs();
+                expiry = Result.COMMAND;
+            }
+            expiresNanos = now + TimeUnit.MILLISECONDS.toNanos(trustMs);
+        }
+        
+        /**
+         * Records that Spotify had nothing playing for the account. The answer is served
+         * for the advisor's idle interval, or the after-command delay right after a command.
+         */
+        synchronized void observeIdle() {
+            long now = System.nanoTime();
+            observed = true;
+            state = null;
+            observedNanos = now;
+            progressMs = 0;
+            durationMs = 0;
+            playing = false;
+            itemId = null;
+            
+            long trustMs = pollAdvisor.getIdleIntervalMs();
+            expiry = Result.IDLE;
+            if (pollAdvisor.inCommandWindow(accountId) && pollAdvisor.getAfterCommandMs() < trustMs) {
+                trustMs = pollAdvisor.getAfterCommandMs();
+                expiry = Result.COMMAND;
+            }
+            expiresNanos = now + TimeUnit.MILLISECONDS.toNanos(trustMs);
+        }
+        
+        /**
+         * Updates the drift rate from how far the current state's extrapolation is from
+         * a freshly fetched one.
+         */
+        private void learn(long now, String fetchedItem, long fetchedProgress) {
+            long ageMs = TimeUnit.NANOSECONDS.toMillis(now - observedNanos);
+            if (ageMs <= 0) {
+                return;
+            }
+            double sample;
+            if (fetchedItem != null && fetchedItem.equals(itemId)) {
+                long error = Math.abs(fetchedProgress - extrapolatedProgress(now));
+                drift.record(error);
+                if (error > driftBoundMs) {
+                    driftExceeded.increment();
+                }
+                sample = Math.min(1.0, (double) error / ageMs);
+            } else if (playing && durationMs > 0 && extrapolatedProgress(now) >= durationMs) {
+                // The track ended as predicted; the new one says nothing about drift
+                return;
+            } else {
+                // Track changed on another device: nothing of the extrapolation held
+                driftExceeded.increment();
+                sample = 1.0;
+            }
+            driftRate = driftRate * (1 - DRIFT_SMOOTHING) + sample * DRIFT_SMOOTHING;
+        }
+        
+        synchronized void expire(Result reason) {
+            if (observed) {
+                expiresNanos = System.nanoTime();
+                expiry = reason;
+            }
+        }
+        
+        private long extrapolatedProgress(long now) {
+            if (!playing) {
+                return progressMs;
+            }
+            long progress = progressMs + TimeUnit.NANOSECONDS.toMillis(now - observedNanos);
+            return durationMs > 0 ? Math.min(progress, durationMs) : progress;
+        }
+        
+        /** Shallow copy of the state with the progress moved on; nested nodes are shared and never modified */
+        private JsonNode extrapolate(long now) {
+            if (state == null) {
+                return SpotifyService.NOTHING_PLAYING;
+            }
+            if (!playing || !(state instanceof ObjectNode)) {
+                return state;
+            }
+            ObjectNode view = nodes.objectNode();
+            view.setAll((ObjectNode) state);
+            view.put("progress_ms", extrapolatedProgress(now));
+            return view;
+        }
+    }
+}
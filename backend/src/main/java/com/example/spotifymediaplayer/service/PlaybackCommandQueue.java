@@ -0,0 +1,410 @@
+package com.example.spotifymediaplayer.service;
+
+import com.example.spotifymediaplayer.config.BackgroundExecutors;
+import com.example.spotifymediaplayer.metrics.SpotifyMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous, per-account pipeline for player commands (play, pause, next, previous,
+ * add to queue).
+ *
+ * Submitting a command returns at once with a command id. Commands of one Spotify
+ * account run one at a time, in order, on a background worker. Commands that arrive
+ * while the worker is busy are coalesced before they are sent:
+ * - a run of "next" (or "previous") presses becomes one skip sequence sent back to back
+ * - in a run of play/pause toggles only the last one is sent; the others are superseded
+ * - the same track queued twice in a row is added once
+ *
+ * The outcome of every command can be read from {@link #getStatus} and is pushed to
+ * the account's playback stream as a "command" event.
+ */
+@Service
+public class PlaybackCommandQueue {
+    
+    /** Route tag for metrics of upstream calls made by the command worker */
+    private static final String COMMAND_ROUTE = "commands:/me/player";
+    
+    public enum CommandType {
+        PLAY("/me/player/play", HttpMethod.PUT),
+        PAUSE("/me/player/pause", HttpMethod.PUT),
+        NEXT("/me/player/next", HttpMethod.POST),
+        PREVIOUS("/me/player/previous", HttpMethod.POST),
+        QUEUE("/me/player/queue", HttpMethod.POST);
+        
+        private final String endpoint;
+        private final HttpMethod method;
+        
+        CommandType(String endpoint, HttpMethod method) {
+            this.endpoint = endpoint;
+            this.method = method;
+        }
+        
+        boolean isPlayPause() {
+            return this == PLAY || this == PAUSE;
+        }
+        
+        boolean isSkip() {
+            return this == NEXT || this == PREVIOUS;
+        }
+    }
+    
+    public enum CommandState {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, SUPERSEDED
+    }
+    
+    @Autowired
+    private SpotifyService spotifyService;
+    
+    @Autowired
+    private PlaybackStateEngine playbackStateEngine;
+    
+    @Autowired
+    private PlayerQueueModel playerQueueModel;
+    
+    @Autowired
+    private BackgroundExecutors backgroundExecutors;
+    
+    /** When disabled, commands run on the request thread (no queueing or coalescing) */
+    @Value("${spotify.commands.async.enabled:true}")
+    private boolean asyncEnabled;
+    
+    @Value("${spotify.commands.threads:4}")
+    private int workerThreads;
+    
+    /** Number of finished commands whose status stays available */
+    @Value("${spotify.commands.max-tracked:10000}")
+    private int maxTracked;
+    
+    /** Pending commands per account; an entry exists only while its worker is draining */
+    private final Map<String, Deque<Command>> lanes = new ConcurrentHashMap<>();
+    /** Commands by id, oldest first; guarded by {@code this} */
+    private final LinkedHashMap<String, Command> commands = new LinkedHashMap<>();
+    private Executor worker;
+    
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+    private final AtomicLong upstreamCalls = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    
+    @PostConstruct
+    void start() {
+        worker = backgroundExecutors.isVirtual()
+                ? backgroundExecutors.dispatchExecutor("playback-command")
+                : Executors.newFixedThreadPool(workerThreads, backgroundExecutors.threadFactory("playback-command"));
+    }
+    
+    @PreDestroy
+    void stop() {
+        if (worker instanceof ExecutorService) {
+            ((ExecutorService) worker).shutdown();
+        }
+    }
+    
+    /**
+     * Queues a player command for the session's Spotify account.
+     *
+     * @param sessionId session whose token is used to send the command
+     * @param type      command to send
+     * @param uri       track URI for {@link CommandType#QUEUE}; ignored otherwise
+     * @return status of the new command (already final when async mode is off), or null
+     *         if the session is not authenticated
+     */
+    public Map<String, Object> submit(String sessionId, CommandType type, String uri) {
+        String accountId = spotifyService.resolveAccountId(sessionId);
+        if (accountId == null) {
+            return null;
+        }
+        
+        Command command = new Command(UUID.randomUUID().toString(), accountId, sessionId, type, uri);
+        track(command);
+        submitted.incrementAndGet();
+        
+        if (!asyncEnabled) {
+            execute(new Step(command));
+            return command.describe();
+        }
+        
+        boolean[] startWorker = new boolean[1];
+        lanes.compute(accountId, (key, pending) -> {
+            if (pending == null) {
+                pending = new ArrayDeque<>();
+                startWorker[0] = true;
+            }
+            pending.add(command);
+            return pending;
+        });
+        if (startWorker[0]) {
+            worker.execute(() -> SpotifyMetrics.runAs(COMMAND_ROUTE, () -> drain(accountId)));
+        }
+        return command.describe();
+    }
+    
+    /**
+     * Looks up a command submitted by the same Spotify account.
+     *
+     * @param sessionId current session id
+     * @param commandId id returned by {@link #submit}
+     * @return command status, or null if unknown, expired or owned by another account
+     */
+    public Map<String, Object> getStatus(String sessionId, String commandId) {
+        String accountId = spotifyService.getCachedAccountId(sessionId);
+        Command command;
+        synchronized (this) {
+            command = commands.get(commandId);
+        }
+        if (command == null || !command.accountId.equals(accountId)) {
+            return null;
+        }
+        return command.describe();
+    }
+    
+    /**
+     * Runs the account's commands until its lane is empty. Everything that queued up
+     * while the previous batch was being sent is taken and coalesced at once.
+     */
+    private void drain(String accountId) {
+        while (true) {
+            List<Command> batch = new ArrayList<>();
+            lanes.computeIfPresent(accountId, (key, pending) -> {
+                batch.addAll(pending);
+                pending.clear();
+                return batch.isEmpty() ? null : pending;
+            });
+            if (batch.isEmpty()) {
+                return;
+            }
+            
+            for (Step step : coalesce(batch)) {
+                execute(step);
+            }
+        }
+    }
+    
+    /**
+     * Folds a batch of commands into the upstream calls that have the same effect.
+     */
+    private List<Step> coalesce(List<Command> batch) {
+        List<Step> steps = new ArrayList<>();
+        for (Command command : batch) {
+            Step last = steps.isEmpty() ? null : steps.get(steps.size() - 1);
+            if (last != null && last.type.isPlayPause() && command.type.isPlayPause()) {
+                for (Command replaced : last.members) {
+                    replaced.finish(CommandState.SUPERSEDED, 0, "superseded by " + command.id);
+                    publish(replaced);
+                }
+                superseded.addAndGet(last.members.size());
+                steps.set(steps.size() - 1, new Step(command));
+            } else if (last != null && last.type.isSkip() && last.type == command.type) {
+                last.add(command, true);
+            } else if (last != null && last.type == CommandType.QUEUE && command.type == CommandType.QUEUE
+                    && last.uri != null && last.uri.equals(command.uri)) {
+                last.add(command, false);
+            } else {
+                steps.add(new Step(command));
+            }
+        }
+        return steps;
+    }
+    
+    private void execute(Step step) {
+        coalesced.addAndGet(step.members.size() - 1);
+        step.members.forEach(command -> command.state = CommandState.RUNNING);
+        
+        // The newest command's session is the most likely to hold a fresh token
+        String sessionId = step.members.get(step.members.size() - 1).sessionId;
+        String endpoint = step.type.endpoint;
+        if (step.type == CommandType.QUEUE) {
+            endpoint += "?uri=" + URLEncoder.encode(step.uri != null ? step.uri : "", StandardCharsets.UTF_8);
+        }
+        
+        int status = 0;
+        String error = null;
+        try {
+            for (int i = 0; i < step.repeat; i++) {
+                upstreamCalls.incrementAndGet();
+                status = spotifyService.sendPlayerCommand(sessionId, endpoint, step.type.method);
+                if (status < 200 || status >= 300) {
+                    error = describeFailure(status);
+                    break;
+                }
+            }
+        } catch (SpotifyRateLimitedException e) {
+            status = 429;
+            error = "rate_limited";
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            error = "internal_error";
+        }
+        
+        CommandState outcome = error == null ? CommandState.SUCCEEDED : CommandState.FAILED;
+        if (outcome == CommandState.FAILED) {
+            failed.addAndGet(step.members.size());
+        } else if (step.type == CommandType.QUEUE) {
+            // Queueing a track leaves /me/player as it was, but shows up in the queue model
+            playerQueueModel.trackQueued(step.members.get(0).accountId, step.uri);
+        } else {
+            playbackStateEngine.commandSent(step.members.get(0).accountId);
+        }
+        for (Command command : step.members) {
+            command.finish(outcome, status, error);
+            publish(command);
+        }
+    }
+    
+    private static String describeFailure(int status) {
+        switch (status) {
+            case 0:
+                return "upstream_unreachable";
+            case 401:
+                return "unauthorized";
+            case 403:
+                return "forbidden";
+            case 404:
+                return "no_active_device";
+            default:
+                return "upstream_status_" + status;
+        }
+    }
+    
+    private void publish(Command command) {
+        playbackStateEngine.publishCommandStatus(command.accountId, command.describe());
+    }
+    
+    /**
+     * Records a command's status and drops the oldest finished ones beyond max-tracked.
+     * Unfinished commands are skipped rather than waited for, so one stuck upstream call
+     * does not keep the map from being trimmed.
+     */
+    private synchronized void track(Command command) {
+        commands.put(command.id, command);
+        Iterator<Command> oldest = commands.values().iterator();
+        while (commands.size() > maxTracked && oldest.hasNext()) {
+            if (oldest.next().isDone()) {
+                oldest.remove();
+            }
+        }
+    }
+    
+    /**
+     * @return submission, coalescing and outcome counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("async", asyncEnabled);
+        stats.put("activeAccounts", lanes.size());
+        synchronized (this) {
+            stats.put("tracked", commands.size());
+        }
+        stats.put("submitted", submitted.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("superseded", superseded.get());
+        stats.put("upstreamCalls", upstreamCalls.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+    
+    /**
+     * One submitted command and its outcome.
+     */
+    private static class Command {
+        
+        private final String id;
+        private final String accountId;
+        private final String sessionId;
+        private final CommandType type;
+        private final String uri;
+        private final long submittedAt = System.currentTimeMillis();
+        
+        private volatile CommandState state = CommandState.QUEUED;
+        private volatile int upstreamStatus;
+        private volatile String error;
+        private volatile long completedAt;
+        
+        private Command(String id, String accountId, String sessionId, CommandType type, String uri) {
+            this.id = id;
+            this.accountId = accountId;
+            this.sessionId = sessionId;
+            this.type = type;
+            this.uri = type == CommandType.QUEUE ? uri : null;
+        }
+        
+        private void finish(CommandState state, int upstreamStatus, String error) {
+            this.upstreamStatus = upstreamStatus;
+            this.error = error;
+            this.completedAt = System.currentTimeMillis();
+            this.state = state;
+        }
+        
+        private boolean isDone() {
+            CommandState current = state;
+            return current != CommandState.QUEUED && current != CommandState.RUNNING;
+        }
+        
+        private Map<String, Object> describe() {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("commandId", id);
+            status.put("type", type.name());
+            if (uri != null) {
+                status.put("uri", uri);
+            }
+            status.put("state", state.name());
+            status.put("submittedAt", submittedAt);
+            if (isDone()) {
+                status.put("completedAt", completedAt);
+                if (upstreamStatus != 0) {
+                    status.put("upstreamStatus", upstreamStatus);
+                }
+                if (error != null) {
+                    status.put("error", error);
+                }
+            }
+            return status;
+        }
+    }
+    
+    /**
+     * An upstream call (repeated for skip sequences) covering one or more commands.
+     */
+    private static class Step {
+        
+        private final CommandType type;
+        private final String uri;
+        private final List<Command> members = new ArrayList<>();
+        private int repeat = 1;
+        
+        private Step(Command first) {
+            this.type = first.type;
+            this.uri = first.uri;
+            this.members.add(first);
+        }
+        
+        private void add(Command command, boolean repeatCall) {
+            members.add(command);
+            if (repeatCall) {
+                repeat++;
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.spotifymediaplayer.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/**
+ * Content fingerprints of playback state that ignore the fields clients can derive
+ * locally (progress_ms and timestamp move on every poll while a track plays).
+ *
+ * Two flavours are provided:
+ * - {@link #etag(JsonNode)} hashes a parsed state and backs ETag / If-None-Match
+ * - {@link #ofBody(byte[])} hashes a raw upstream body without parsing it, so an
+ *   unchanged /me/player payload can reuse the previously parsed tree
+ *
+ * Hashes are 64 bits wide (FNV-1a for trees, CRC32C and CRC32 for raw bodies); they
+ * identify content, they are not a security measure.
+ */
+public final class PlaybackFingerprint {
+    
+    /** Top-level fields that change on every poll and can be derived locally by clients */
+    public static final List<String> VOLATILE_FIELDS = List.of("progress_ms", "timestamp");
+    
+    /** Quoted names of {@link #VOLATILE_FIELDS}, as searched for in raw bodies */
+    private static final String[] VOLATILE_KEYS = {"\"progress_ms\"", "\"timestamp\""};
+    
+    private static final byte[] NULL_LITERAL = "null".getBytes(StandardCharsets.US_ASCII);
+    
+    /** Marks a volatile field that is missing from the body */
+    private static final long ABSENT = Long.MIN_VALUE;
+    /** Marks a volatile field whose value is JSON null */
+    private static final long NULL = Long.MIN_VALUE + 1;
+    
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    private PlaybackFingerprint() {}
+    
+    /**
+     * Computes a weak ETag for a playback state; states that differ only in volatile
+     * fields get the same tag.
+     *
+     * @param state parsed playback state
+     * @return weak entity tag, e.g. {@code W/"3f2a9c0d1e4b5a67"}
+     */
+    public static String etag(JsonNode state) {
+        return "W/\"" + Long.toHexString(hashNode(state, true, FNV_OFFSET)) + '"';
+    }
+    
+    /**
+     * Evaluates an If-None-Match header with the weak comparison of RFC 9110.
+     *
+     * @param ifNoneMatch header value (may be null)
+     * @param etag        current entity tag
+     * @return true if the client's copy is current and a 304 may be sent
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        String current = opaqueTag(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || opaqueTag(tag).equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static String opaqueTag(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+    
+    private static long hashNode(JsonNode node, boolean topLevel, long hash) {
+        if (node.isObject()) {
+            hash = mix(hash, '{');
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (topLevel && VOLATILE_FIELDS.contains(field.getKey())) {
+                    continue;
+                }
+                hash = mix(hash, field.getKey());
+                hash = mix(hash, ':');
+                hash = hashNode(field.getValue(), false, hash);
+            }
+            return mix(hash, '}');
+        }
+        if (node.isArray()) {
+            hash = mix(hash, '[');
+            for (JsonNode element : node) {
+                hash = hashNode(element, false, hash);
+                hash = mix(hash, ',');
+            }
+            return mix(hash, ']');
+        }
+        hash = mix(hash, node.getNodeType().ordinal());
+        return mix(hash, node.asText());
+    }
+    
+    private static long mix(long hash, int value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+    
+    private static long mix(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+    
+    /**
+     * Fingerprints a raw JSON body, skipping the values (not the names) of volatile
+     * fields and capturing them instead. Keys are located with the vectorized
+     * {@link String#indexOf} on a Latin-1 view and the spans in between are hashed with
+     * the CRC32C and CRC32 intrinsics, which is several times cheaper than parsing.
+     *
+     * @param body raw upstream body
+     * @return fingerprint of the body
+     */
+    public static BodyFingerprint ofBody(byte[] body) {
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        long[] values = {ABSENT, ABSENT};
+        boolean patchable = true;
+        List<int[]> skipped = new ArrayList<>(2);
+        
+        for (int key = 0; key < VOLATILE_KEYS.length; key++) {
+            int occurrences = 0;
+            int from = 0;
+            int keyStart;
+            while ((keyStart = text.indexOf(VOLATILE_KEYS[key], from)) >= 0) {
+                from = keyStart + 1;
+                int valueStart = volatileValueStart(body, keyStart + VOLATILE_KEYS[key].length());
+                int valueEnd = valueStart < 0 ? -1 : valueEnd(body, valueStart);
+                if (valueEnd <= valueStart) {
+                    // Not a key, e.g. the same text inside a string value
+                    continue;
+                }
+                try {
+                    values[key] = parseValue(body, valueStart, valueEnd);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                skipped.add(new int[] {valueStart, valueEnd});
+                occurrences++;
+            }
+            patchable &= occurrences <= 1;
+        }
+        skipped.sort((a, b) -> Integer.compare(a[0], b[0]));
+        
+        CRC32C crc32c = new CRC32C();
+        CRC32 crc32 = new CRC32();
+        int spanStart = 0;
+        for (int[] span : skipped) {
+            crc32c.update(body, spanStart, span[0] - spanStart);
+            crc32.update(body, spanStart, span[0] - spanStart);
+            spanStart = span[1];
+        }
+        crc32c.update(body, spanStart, body.length - spanStart);
+        crc32.update(body, spanStart, body.length - spanStart);
+        return new BodyFingerprint(crc32c.getValue() << 32 | crc32.getValue(), values, patchable);
+    }
+    
+    /**
+     * @return offset of the value after a key ending at {@code keyEnd}, or -1 if the
+     *         key is not followed by a colon
+     */
+    private static int volatileValueStart(byte[] body, int keyEnd) {
+        int pos = skipWhitespace(body, keyEnd);
+        if (pos >= body.length || body[pos] != ':') {
+            return -1;
+        }
+        return skipWhitespace(body, pos + 1);
+    }
+    
+    private static boolean regionMatches(byte[] body, int start, byte[] name) {
+        if (start + name.length > body.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (body[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static int skipWhitespace(byte[] body, int pos) {
+        while (pos < body.length && (body[pos] == ' ' || body[pos] == '\n' || body[pos] == '\r' || body[pos] == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+    
+    /** End of a number or null literal starting at pos; pos itself if there is none */
+    private static int valueEnd(byte[] body, int pos) {
+        if (regionMatches(body, pos, NULL_LITERAL)) {
+            return pos + NULL_LITERAL.length;
+        }
+        int end = pos;
+        while (end < body.length && (body[end] == '-' || (body[end] >= '0' && body[end] <= '9'))) {
+            end++;
+        }
+        return end;
+    }
+    
+    private static long parseValue(byte[] body, int start, int end) {
+        if (body[start] == 'n') {
+            return NULL;
+        }
+        return Long.parseLong(new String(body, start, end - start, StandardCharsets.US_ASCII));
+    }
+    
+    /**
+     * Fingerprint of a raw body plus the volatile values that were left out of it.
+     */
+    public static final class BodyFingerprint {
+        
+        private final long hash;
+        private final long[] volatileValues;
+        /** False if a volatile key occurs more than once, so it may not be top-level */
+        private final boolean patchable;
+        
+        private BodyFingerprint(long hash, long[] volatileValues, boolean patchable) {
+            this.hash = hash;
+            this.volatileValues = volatileValues;
+            this.patchable = patchable;
+        }
+        
+        /**
+         * @return true if both bodies are equal apart from their volatile values
+         */
+        public boolean sameContent(BodyFingerprint other) {
+            return other != null && patchable && other.patchable && hash == other.hash;
+        }
+        
+        /**
+         * Builds the tree of this body from the tree of a body with the same content:
+         * a shallow copy of {@code parsed} with this body's volatile values.
+         *
+         * @param parsed tree parsed from a body for which {@link #sameContent} holds
+         * @return new top-level node sharing the (read-only) nested nodes of parsed, or
+         *         null if a volatile field of the body is not a top-level field
+         */
+        public ObjectNode patch(ObjectNode parsed) {
+            for (int key = 0; key < VOLATILE_FIELDS.size(); key++) {
+                if (volatileValues[key] != ABSENT && !parsed.has(VOLATILE_FIELDS.get(key))) {
+                    return null;
+                }
+            }
+            ObjectNode copy = parsed.objectNode();
+            copy.setAll(parsed);
+            for (int key = 0; key < VOLATILE_FIELDS.size(); key++) {
+                long value = volatileValues[key];
+                if (value == NULL) {
+                    copy.putNull(VOLATILE_FIELDS.get(key));
+                } else if (value != ABSENT) {
+                    copy.put(VOLATILE_FIELDS.get(key), value);
+                }
+            }
+            return copy;
+        }
+    }
+}
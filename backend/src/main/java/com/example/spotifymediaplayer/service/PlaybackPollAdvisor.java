@@ -0,0 +1,174 @@
+package com.example.spotifymediaplayer.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when playback state is worth polling again.
+ *
+ * The same advice drives the shared playback pollers and is sent to clients with every
+ * /current-playback response (X-Next-Poll-Ms), so a browser tab polls no more often
+ * than something can actually change:
+ * - command: shortly after a player command of the account went out, when Spotify is
+ *   about to report its effect
+ * - track-end: just after the current track is due to end
+ * - playing: at the playing interval, to notice changes made on other devices
+ * - paused: at the slower paused interval
+ * - idle: rarely, while nothing is loaded or no device is active
+ */
+@Component
+public class PlaybackPollAdvisor {
+    
+    /** Why a delay was chosen; each reason is counted separately */
+    public enum Reason {
+        COMMAND, TRACK_END, PLAYING, PAUSED, IDLE;
+        
+        String tag() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+    
+    /** Lower bound of any advice, so a track that just ended is not polled in a loop */
+    private static final long MIN_DELAY_MS = 250;
+    
+    @Autowired
+    private MeterRegistry registry;
+    
+    @Value("${spotify.playback.poll.playing-ms:2000}")
+    private long playingIntervalMs;
+    
+    @Value("${spotify.playback.poll.paused-ms:5000}")
+    private long pausedIntervalMs;
+    
+    @Value("${spotify.playback.poll.idle-ms:15000}")
+    private long idleIntervalMs;
+    
+    /** Delay of the first poll after a player command */
+    @Value("${spotify.playback.poll.after-command-ms:500}")
+    private long afterCommandMs;
+    
+    /** How long after a command polling stays at the after-command pace */
+    @Value("${spotify.playback.poll.command-window-ms:3000}")
+    private long commandWindowMs;
+    
+    /** Added to the remaining track time, so the poll lands after the track change */
+    @Value("${spotify.playback.poll.track-end-margin-ms:300}")
+    private long trackEndMarginMs;
+    
+    /** System.nanoTime() of the last player command per account */
+    private final Map<String, Long> lastCommands = new ConcurrentHashMap<>();
+    
+    private final Map<Reason, Counter> advice = new EnumMap<>(Reason.class);
+    
+    @PostConstruct
+    void registerMeters() {
+        for (Reason reason : Reason.values()) {
+            advice.put(reason, Counter.builder("spotify.playback.poll.advice").tag("reason", reason.tag())
+                    .description("Next-poll advice given, by the reason for its delay").register(registry));
+        }
+    }
+    
+    /**
+     * Records that a player command of the account reached Spotify.
+     *
+     * @param accountId Spotify user id that sent the command
+     */
+    public void commandSent(String accountId) {
+        lastCommands.put(accountId, System.nanoTime());
+    }
+    
+    /**
+     * @return delay of the first poll after a player command, in milliseconds
+     */
+    public long getAfterCommandMs() {
+        return afterCommandMs;
+    }
+    
+    /**
+     * @return delay between polls while nothing is playing, in milliseconds
+     */
+    public long getIdleIntervalMs() {
+        return idleIntervalMs;
+    }
+    
+    /**
+     * @param accountId Spotify user id
+     * @return true if a player command of the account went out less than
+     *         command-window-ms ago
+     */
+    public boolean inCommandWindow(String accountId) {
+        Long commandAt = lastCommands.get(accountId);
+        return commandAt != null && System.nanoTime() - commandAt < TimeUnit.MILLISECONDS.toNanos(commandWindowMs);
+    }
+    
+    /**
+     * Computes how long to wait before polling the playback state again.
+     *
+     * @param accountId Spotify user id, or null if not known yet
+     * @param state     last observed /me/player body, or null if nothing is playing
+     * @return recommended delay in milliseconds
+     */
+    public long nextPollDelay(String accountId, JsonNode state) {
+        Reason reason;
+        long delay;
+        if (state == null || state.path("item").isMissingNode() || state.path("item").isNull()) {
+            reason = Reason.IDLE;
+            delay = idleIntervalMs;
+        } else if (!state.path("is_playing").asBoolean(false)) {
+            reason = Reason.PAUSED;
+            delay = pausedIntervalMs;
+        } else {
+            reason = Reason.PLAYING;
+            delay = playingIntervalMs;
+            long duration = state.path("item").path("duration_ms").asLong(0);
+            if (duration > 0) {
+                long untilTrackEnd = duration - state.path("progress_ms").asLong(0) + trackEndMarginMs;
+                if (untilTrackEnd < delay) {
+                    reason = Reason.TRACK_END;
+                    delay = Math.max(MIN_DELAY_MS, untilTrackEnd);
+                }
+            }
+        }
+        
+        Long commandAt = accountId != null ? lastCommands.get(accountId) : null;
+        if (commandAt != null && delay > afterCommandMs) {
+            if (System.nanoTime() - commandAt < TimeUnit.MILLISECONDS.toNanos(commandWindowMs)) {
+                reason = Reason.COMMAND;
+                delay = afterCommandMs;
+            } else {
+                lastCommands.remove(accountId, commandAt);
+            }
+        }
+        
+        advice.get(reason).increment();
+        return delay;
+    }
+    
+    /**
+     * @return configured intervals and advice counts per reason
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("playingMs", playingIntervalMs);
+        stats.put("pausedMs", pausedIntervalMs);
+        stats.put("idleMs", idleIntervalMs);
+        stats.put("afterCommandMs", afterCommandMs);
+        stats.put("commandWindowMs", commandWindowMs);
+        stats.put("recentCommandAccounts", lastCommands.size());
+        Map<String, Long> byReason = new LinkedHashMap<>();
+        advice.forEach((reason, counter) -> byReason.put(reason.tag(), (long) counter.count()));
+        stats.put("advice", byReason);
+        return stats;
+    }
+}
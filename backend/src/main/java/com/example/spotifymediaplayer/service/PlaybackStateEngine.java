@@ -0,0 +1,317 @@
+package com.example.spotifymediaplayer.service;
+
+import com.example.spotifymediaplayer.config.BackgroundExecutors;
+import com.example.spotifymediaplayer.metrics.SpotifyMetrics;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shared playback state engine.
+ *
+ * Instead of every open tab polling /me/player on its own, a single poller runs per
+ * Spotify account. Each poll result is diffed against the previous one and only
+ * meaningful changes are pushed to subscribers over Server-Sent Events, so upstream
+ * traffic scales with the number of accounts rather than the number of viewers.
+ *
+ * Any subscribed session of an account may lend its token to the poller; if one
+ * session's token stops working the next one is tried. A poller stops as soon as
+ * its last subscriber disconnects. Outcomes of player commands are pushed over the
+ * same stream as "command" events.
+ *
+ * Poll delays come from the {@link PlaybackPollAdvisor}; a player command pulls the
+ * account's next poll forward. Every poll result is recorded in the {@link PlaybackClock},
+ * which serves /current-playback between polls. When nothing is playing, subscribers get
+ * a stopped state ({"is_playing":false,"item":null}) and the account is polled at the
+ * advisor's idle interval; only calls that fail back off.
+ */
+@Service
+public class PlaybackStateEngine {
+    
+    /** Route tag for metrics of upstream calls made by pollers */
+    private static final String POLLER_ROUTE = "poller:/me/player";
+    
+    /** State pushed while nothing is playing; shared and never modified */
+    private static final JsonNode STOPPED = JsonNodeFactory.instance.objectNode().put("is_playing", false).putNull("item");
+    
+    @Autowired
+    private SpotifyService spotifyService;
+    
+    @Autowired
+    private BackgroundExecutors backgroundExecutors;
+    
+    @Autowired
+    private PlaybackPollAdvisor pollAdvisor;
+    
+    @Autowired
+    private PlaybackClock playbackClock;
+    
+    @Value("${spotify.playback.poll.paused-ms:5000}")
+    private long pausedIntervalMs;
+    
+    @Value("${spotify.playback.poll.max-backoff-ms:30000}")
+    private long maxBackoffMs;
+    
+    @Value("${spotify.playback.poll.threads:4}")
+    private int pollerThreads;
+    
+    @Value("${spotify.playback.stream.timeout-ms:600000}")
+    private long streamTimeoutMs;
+    
+    private final Map<String, AccountPoller> pollers = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+    /** Runs the blocking poll; a virtual thread per poll in virtual-thread mode */
+    private Executor pollExecutor;
+    
+    @PostConstruct
+    void start() {
+        // With virtual threads the scheduler only dispatches, so one thread is enough
+        int schedulerThreads = backgroundExecutors.isVirtual() ? 1 : pollerThreads;
+        scheduler = Executors.newScheduledThreadPool(schedulerThreads, backgroundExecutors.threadFactory("playback-poller"));
+        pollExecutor = backgroundExecutors.dispatchExecutor("playback-poll");
+    }
+    
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+        pollers.values().forEach(AccountPoller::completeAll);
+        pollers.clear();
+    }
+    
+    /**
+     * Subscribes the session to playback updates of its Spotify account.
+     * The latest known state, if any, is sent immediately.
+     *
+     * @param sessionId current session id
+     * @return emitter streaming "playback" events (the stopped state while nothing is
+     *         playing), or null if the session is not authenticated
+     */
+    public SseEmitter subscribe(String sessionId) {
+        String accountId = spotifyService.resolveAccountId(sessionId);
+        if (accountId == null) {
+            return null;
+        }
+        
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        emitter.onCompletion(() -> detach(accountId, emitter));
+        emitter.onTimeout(() -> detach(accountId, emitter));
+        emitter.onError(e -> detach(accountId, emitter));
+        
+        AccountPoller poller = pollers.compute(accountId, (key, existing) -> {
+            AccountPoller target = existing != null ? existing : new AccountPoller(key);
+            target.subscribers.put(emitter, sessionId);
+            return target;
+        });
+        poller.sendCurrentState(emitter);
+        poller.ensureRunning();
+        
+        return emitter;
+    }
+    
+    /**
+     * Pushes the status of a player command to the account's subscribers as a
+     * "command" event. Does nothing if nobody of the account is subscribed.
+     *
+     * @param accountId Spotify user id that issued the command
+     * @param status    command status as returned by {@link PlaybackCommandQueue}
+     */
+    public void publishCommandStatus(String accountId, Map<String, Object> status) {
+        AccountPoller poller = pollers.get(accountId);
+        if (poller != null) {
+            poller.subscribers.keySet().forEach(emitter -> poller.send(emitter, "command", status));
+        }
+    }
+    
+    /**
+     * Notes that a player command of the account reached Spotify: the account's poller
+     * polls again after the advisor's after-command delay, and the playback clock stops
+     * serving the state observed before the command.
+     *
+     * @param accountId Spotify user id that sent the command
+     */
+    public void commandSent(String accountId) {
+        pollAdvisor.commandSent(accountId);
+        playbackClock.commandSent(accountId);
+        AccountPoller poller = pollers.get(accountId);
+        if (poller != null) {
+            poller.pollSoon(pollAdvisor.getAfterCommandMs());
+        }
+    }
+    
+    /**
+     * @return number of accounts that currently have an active poller
+     */
+    public int getActivePollerCount() {
+        return pollers.size();
+    }
+    
+    private void detach(String accountId, SseEmitter emitter) {
+        pollers.computeIfPresent(accountId, (key, poller) -> {
+            poller.subscribers.remove(emitter);
+            return poller.subscribers.isEmpty() ? null : poller;
+        });
+    }
+    
+    private static JsonNode significantView(JsonNode state) {
+        if (!(state instanceof ObjectNode)) {
+            return state;
+        }
+        ObjectNode view = ((ObjectNode) state).deepCopy();
+        view.remove(PlaybackFingerprint.VOLATILE_FIELDS);
+        return view;
+    }
+    
+    /**
+     * Per-account poller holding the subscribers and the last observed state.
+     */
+    private class AccountPoller {
+        
+        private final String accountId;
+        /** Subscribed emitters mapped to the session that opened them */
+        private final Map<SseEmitter, String> subscribers = new ConcurrentHashMap<>();
+        private final AtomicBoolean running = new AtomicBoolean(false);
+        
+        private volatile JsonNode lastState;
+        private volatile JsonNode lastSignificant;
+        private int consecutiveFailures;
+        /** Next scheduled poll; guarded by {@code this} */
+        private ScheduledFuture<?> nextPoll;
+        
+        AccountPoller(String accountId) {
+            this.accountId = accountId;
+        }
+        
+        void ensureRunning() {
+            if (running.compareAndSet(false, true)) {
+                scheduler.execute(() -> pollExecutor.execute(() -> SpotifyMetrics.runAs(POLLER_ROUTE, this::poll)));
+            }
+        }
+        
+        private void poll() {
+            if (pollers.get(accountId) != this) {
+                running.set(false);
+                return;
+            }
+            
+            JsonNode state = null;
+            long retryAfterMs = 0;
+            Set<String> sessions = new LinkedHashSet<>(subscribers.values());
+            try {
+                for (String sessionId : sessions) {
+                    String accessToken = spotifyService.getValidAccessToken(sessionId);
+                    state = accessToken != null ? spotifyService.fetchCurrentPlaybackAsync(sessionId, accessToken).join() : null;
+                    if (state != null) {
+                        break;
+                    }
+                }
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof SpotifyRateLimitedException)) {
+                    throw e;
+                }
+                // Other sessions share the account budget; wait out the throttle instead
+                retryAfterMs = TimeUnit.SECONDS.toMillis(((SpotifyRateLimitedException) e.getCause()).getRetryAfterSeconds());
+            }
+            
+            long delay;
+            if (retryAfterMs > 0) {
+                delay = retryAfterMs;
+            } else if (state == null) {
+                // No usable token or a failed call: back off exponentially
+                consecutiveFailures = Math.min(consecutiveFailures + 1, 6);
+                delay = Math.min(maxBackoffMs, pausedIntervalMs << (consecutiveFailures - 1));
+            } else if (state == SpotifyService.NOTHING_PLAYING) {
+                consecutiveFailures = 0;
+                delay = pollAdvisor.nextPollDelay(accountId, null);
+                publish(STOPPED);
+            } else {
+                consecutiveFailures = 0;
+                delay = pollAdvisor.nextPollDelay(accountId, state);
+                publish(state);
+            }
+            
+            try {
+                schedulePoll(delay);
+            } catch (Exception e) {
+                // Scheduler is shutting down
+                running.set(false);
+            }
+        }
+        
+        private synchronized void schedulePoll(long delayMs) {
+            nextPoll = scheduler.schedule(() -> pollExecutor.execute(() -> SpotifyMetrics.runAs(POLLER_ROUTE, this::poll)), delayMs, TimeUnit.MILLISECONDS);
+        }
+        
+        /**
+         * Moves the next poll up to at most delayMs from now. A poll that is already
+         * running picks the short delay up from the advisor when it reschedules.
+         */
+        synchronized void pollSoon(long delayMs) {
+            if (nextPoll != null && nextPoll.getDelay(TimeUnit.MILLISECONDS) > delayMs && nextPoll.cancel(false)) {
+                try {
+                    schedulePoll(delayMs);
+                } catch (Exception e) {
+                    // Scheduler is shutting down
+                    running.set(false);
+                }
+            }
+        }
+        
+        private void publish(JsonNode state) {
+            JsonNode significant = significantView(state);
+            boolean changed = !significant.equals(lastSignificant);
+            
+            lastState = state;
+            lastSignificant = significant;
+            if (state == STOPPED) {
+                playbackClock.observeIdle(accountId);
+            } else {
+                playbackClock.observe(accountId, state);
+            }
+            
+            if (changed) {
+                subscribers.keySet().forEach(this::sendCurrentState);
+            }
+        }
+        
+        void sendCurrentState(SseEmitter emitter) {
+            JsonNode state = lastState;
+            if (state == null) {
+                return;
+            }
+            send(emitter, "playback", state);
+        }
+        
+        void send(SseEmitter emitter, String eventName, Object data) {
+            try {
+                emitter.send(SseEmitter.event().name(eventName).data(data, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                // Client went away; the completion callback takes care of cleanup
+                detach(accountId, emitter);
+            }
+        }
+        
+        void completeAll() {
+            subscribers.keySet().forEach(SseEmitter::complete);
+        }
+    }
+}
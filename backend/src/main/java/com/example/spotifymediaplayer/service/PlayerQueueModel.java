@@ -0,0 +1,409 @@
+package com.example.spotifymediaplayer.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.NullNode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Materialized "up next" queue per Spotify account, served as versioned deltas.
+ *
+ * The model is filled from /me/player/queue and shared by all sessions of the account:
+ * a read older than max-age-ms triggers one upstream call, which concurrent readers of
+ * the account wait for instead of making their own. Tracks added through
+ * {@link PlaybackCommandQueue} are inserted right away, after the tracks added earlier
+ * through this backend (where Spotify puts them), and the next upstream read confirms
+ * or corrects the guess.
+ *
+ * Every change gets a new version and is kept as a list of splices (index, number of
+ * items removed, items inserted). A client that sends the version it holds receives
+ * only the changes since then; without a version, or when it is too old, it receives
+ * the whole queue. Versions increase across accounts and restarts (they start from the
+ * current time), so a version from another model never matches.
+ */
+@Service
+public class PlayerQueueModel {
+    
+    /** Spotify endpoint of the user's queue */
+    public static final String QUEUE_ENDPOINT = "/me/player/queue";
+    
+    /** Queue heads removed in one step are looked for this far (a few skipped tracks) */
+    private static final int MAX_ADVANCE = 5;
+    
+    private static final AtomicLong VERSIONS = new AtomicLong(System.currentTimeMillis() * 1000);
+    
+    @Autowired
+    private SpotifyService spotifyService;
+    
+    @Autowired
+    private TypeAheadIndex typeAheadIndex;
+    
+    /** Reads within this age of the last upstream fetch are served from the model */
+    @Value("${spotify.queue.max-age-ms:1000}")
+    private long maxAgeMs;
+    
+    /** Changes kept per account for delta responses */
+    @Value("${spotify.queue.history:64}")
+    private int historySize;
+    
+    @Value("${spotify.queue.max-accounts:1000}")
+    private int maxAccounts;
+    
+    private final JsonNodeFactory nodes = JsonNodeFactory.instance;
+    
+    /** Models by account, least recently read first; guarded by {@code this} */
+    private final LinkedHashMap<String, AccountQueue> accounts = new LinkedHashMap<>(16, 0.75f, true);
+    
+    private final AtomicLong upstreamCalls = new AtomicLong();
+    private final AtomicLong servedFromModel = new AtomicLong();
+    private final AtomicLong fullResponses = new AtomicLong();
+    private final AtomicLong deltaResponses = new AtomicLong();
+    private final AtomicLong unchangedResponses = new AtomicLong();
+    private final AtomicLong localInserts = new AtomicLong();
+    private final AtomicLong versionsCreated = new AtomicLong();
+    
+    /**
+     * Returns the session's queue, or the changes since a version the client holds.
+     *
+     * @param sessionId    current session id
+     * @param sinceVersion version of the client's copy, or null for the whole queue
+     * @return future with {version, delta, ...}: when delta is false the whole queue
+     *         (currently_playing, queue, queue_length, timestamp), otherwise the changes
+     *         since sinceVersion in order; null if the session is not authenticated.
+     *         Completed exceptionally only with {@link SpotifyRateLimitedException}
+     */
+    public CompletableFuture<Map<String, Object>> getQueue(String sessionId, Long sinceVersion) {
+        String accountId = spotifyService.resolveAccountId(sessionId);
+        if (accountId == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        AccountQueue queue;
+        synchronized (this) {
+            queue = accounts.computeIfAbsent(accountId, key -> new AccountQueue());
+            Iterator<AccountQueue> eldest = accounts.values().iterator();
+            while (accounts.size() > maxAccounts) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return queue.ensureFresh(sessionId).thenApply(ready -> ready ? queue.describe(sinceVersion) : null);
+    }
+    
+    /**
+     * Inserts a track the account just added through the command queue, ahead of the
+     * next upstream read. Does nothing if the account's queue has not been loaded.
+     *
+     * @param accountId Spotify user id that added the track
+     * @param uri       track URI
+     */
+    public void trackQueued(String accountId, String uri) {
+        AccountQueue queue;
+        synchronized (this) {
+            queue = accounts.get(accountId);
+        }
+        if (queue != null && uri != null) {
+            queue.insertLocally(uri);
+        }
+    }
+    
+    /**
+     * @return model counts and response counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("accounts", accounts.size());
+        }
+        stats.put("maxAgeMs", maxAgeMs);
+        stats.put("upstreamCalls", upstreamCalls.get());
+        stats.put("servedFromModel", servedFromModel.get());
+        stats.put("fullResponses", fullResponses.get());
+        stats.put("deltaResponses", deltaResponses.get());
+        stats.put("unchangedResponses", unchangedResponses.get());
+        stats.put("localInserts", localInserts.get());
+        stats.put("versionsCreated", versionsCreated.get());
+        return stats;
+    }
+    
+    /**
+     * Computes the splices that turn one list of track URIs into another: a removal
+     * at the head when the queue advanced, then one replacement of the differing middle.
+     * Applying them in order to the old list yields the new one.
+     */
+    static List<Splice> diff(List<String> before, List<String> after) {
+        List<Splice> splices = new ArrayList<>();
+        int start = 0;
+        if (!after.isEmpty() && !before.isEmpty() && !before.get(0).equals(after.get(0))) {
+            for (int shift = 1; shift <= Math.min(MAX_ADVANCE, before.size() - 1); shift++) {
+                if (before.get(shift).equals(after.get(0))) {
+                    splices.add(new Splice(0, shift, 0, 0));
+                    start = shift;
+                    break;
+                }
+            }
+        }
+        
+        int oldSize = before.size() - start;
+        int prefix = 0;
+        while (prefix < oldSize && prefix < after.size() && before.get(start + prefix).equals(after.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < oldSize - prefix && suffix < after.size() - prefix
+                && before.get(before.size() - 1 - suffix).equals(after.get(after.size() - 1 - suffix))) {
+            suffix++;
+        }
+        int removed = oldSize - prefix - suffix;
+        int inserted = after.size() - prefix - suffix;
+        if (removed > 0 || inserted > 0) {
+            splices.add(new Splice(prefix, removed, prefix, inserted));
+        }
+        return splices;
+    }
+    
+    private static String uriOf(JsonNode item) {
+        return item.path("uri").asText(item.path("id").asText(""));
+    }
+    
+    private static List<String> uris(List<JsonNode> items) {
+        List<String> uris = new ArrayList<>(items.size());
+        items.forEach(item -> uris.add(uriOf(item)));
+        return uris;
+    }
+    
+    /**
+     * Splice of a diff: remove {@code remove} items at {@code index}, then insert
+     * {@code insertCount} items taken from the new list at {@code insertFrom}.
+     */
+    static final class Splice {
+        
+        final int index;
+        final int remove;
+        final int insertFrom;
+        final int insertCount;
+        
+        Splice(int index, int remove, int insertFrom, int insertCount) {
+            this.index = index;
+            this.remove = remove;
+            this.insertFrom = insertFrom;
+            this.insertCount = insertCount;
+        }
+    }
+    
+    /**
+     * Queue model of one account.
+     */
+    private class AccountQueue {
+        
+        private long version;
+        private JsonNode currentlyPlaying = NullNode.getInstance();
+        private List<JsonNode> items = List.of();
+        /** Tracks inserted through this backend that are still in the queue */
+        private final Set<String> addedHere = new HashSet<>();
+        /** Recent changes, oldest first; each holds the version it was made from */
+        private final Deque<Change> history = new ArrayDeque<>();
+        private long fetchedAtNanos;
+        private boolean loaded;
+        private CompletableFuture<Boolean> inFlight;
+        
+        /**
+         * Completes with true once the model is no older than max-age-ms, or with false
+         * if the session's token is not valid.
+         */
+        CompletableFuture<Boolean> ensureFresh(String sessionId) {
+            CompletableFuture<Boolean> fetch;
+            synchronized (this) {
+                if (loaded && System.nanoTime() - fetchedAtNanos < TimeUnit.MILLISECONDS.toNanos(maxAgeMs)) {
+                    servedFromModel.incrementAndGet();
+                    return CompletableFuture.completedFuture(true);
+                }
+                if (inFlight != null) {
+                    servedFromModel.incrementAndGet();
+                    return inFlight;
+                }
+                fetch = new CompletableFuture<>();
+                inFlight = fetch;
+            }
+            
+            // The upstream call is made outside the lock; readers arriving meanwhile wait on inFlight
+            upstreamCalls.incrementAndGet();
+            spotifyService.makeSpotifyApiCallAsync(sessionId, QUEUE_ENDPOINT, HttpMethod.GET, null)
+                    .thenApply(response -> {
+                        if (response == null && spotifyService.getValidAccessToken(sessionId) == null) {
+                            return false;
+                        }
+                        // No body with a valid token: no active player, so nothing is queued
+                        typeAheadIndex.ingest(response);
+                        apply(response);
+                        return true;
+                    })
+                    .whenComplete((ready, error) -> {
+                        synchronized (this) {
+                            inFlight = null;
+                        }
+                        if (error != null) {
+                            fetch.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                        } else {
+                            fetch.complete(ready);
+                        }
+                    });
+            return fetch;
+        }
+        
+        private synchronized void apply(JsonNode response) {
+            JsonNode playing = response != null ? response.path("currently_playing") : NullNode.getInstance();
+            if (playing.isMissingNode()) {
+                playing = NullNode.getInstance();
+            }
+            List<JsonNode> fetched = new ArrayList<>();
+            if (response != null) {
+                response.path("queue").forEach(fetched::add);
+            }
+            
+            fetchedAtNanos = System.nanoTime();
+            boolean playingChanged = !loaded || !Objects.equals(uriOf(playing), uriOf(currentlyPlaying));
+            List<Splice> splices = diff(uris(items), uris(fetched));
+            if (!loaded || playingChanged || !splices.isEmpty()) {
+                record(playingChanged ? playing : null, splices, fetched);
+            }
+            addedHere.retainAll(uris(fetched));
+            loaded = true;
+        }
+        
+        synchronized void insertLocally(String uri) {
+            if (!loaded) {
+                return;
+            }
+            int index = 0;
+            for (int i = 0; i < items.size(); i++) {
+                if (addedHere.contains(uriOf(items.get(i)))) {
+                    index = i + 1;
+                }
+            }
+            JsonNode track = typeAheadIndex.findTrack(uri);
+            if (track == null) {
+                track = nodes.objectNode().put("uri", uri);
+            }
+            
+            List<JsonNode> updated = new ArrayList<>(items);
+            updated.add(index, track);
+            record(null, List.of(new Splice(index, 0, index, 1)), updated);
+            addedHere.add(uri);
+            localInserts.incrementAndGet();
+            // Give Spotify time to report the track before the model is replaced again
+            fetchedAtNanos = System.nanoTime();
+        }
+        
+        private void record(JsonNode playing, List<Splice> splices, List<JsonNode> updated) {
+            long next = VERSIONS.incrementAndGet();
+            versionsCreated.incrementAndGet();
+            history.addLast(new Change(version, next, playing, splices, updated));
+            while (history.size() > historySize) {
+                history.removeFirst();
+            }
+            version = next;
+            if (playing != null) {
+                currentlyPlaying = playing;
+            }
+            items = List.copyOf(updated);
+        }
+        
+        synchronized Map<String, Object> describe(Long sinceVersion) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("version", version);
+            
+            List<Change> since = sinceVersion != null ? changesSince(sinceVersion) : null;
+            if (since == null) {
+                fullResponses.incrementAndGet();
+                body.put("delta", false);
+                body.put("currently_playing", currentlyPlaying);
+                body.put("queue", items);
+            } else {
+                if (since.isEmpty()) {
+                    unchangedResponses.incrementAndGet();
+                } else {
+                    deltaResponses.incrementAndGet();
+                }
+                body.put("delta", true);
+                List<Map<String, Object>> changes = new ArrayList<>(since.size());
+                since.forEach(change -> changes.add(change.describe()));
+                body.put("changes", changes);
+            }
+            body.put("queue_length", items.size());
+            body.put("timestamp", System.currentTimeMillis());
+            return body;
+        }
+        
+        /** Changes after the given version, or null if it is not a known recent version */
+        private List<Change> changesSince(long sinceVersion) {
+            if (sinceVersion == version) {
+                return List.of();
+            }
+            List<Change> since = new ArrayList<>();
+            for (Change change : history) {
+                if (!since.isEmpty() || change.fromVersion == sinceVersion) {
+                    since.add(change);
+                }
+            }
+            return since.isEmpty() ? null : since;
+        }
+    }
+    
+    /**
+     * One version step: the new currently playing track if it changed, and the splices
+     * applied to the queue. Inserted items are taken from the queue as of that version.
+     */
+    private static final class Change {
+        
+        private final long fromVersion;
+        private final long version;
+        private final JsonNode currentlyPlaying;
+        private final List<Splice> splices;
+        private final List<JsonNode> after;
+        
+        private Change(long fromVersion, long version, JsonNode currentlyPlaying, List<Splice> splices, List<JsonNode> after) {
+            this.fromVersion = fromVersion;
+            this.version = version;
+            this.currentlyPlaying = currentlyPlaying;
+            this.splices = splices;
+            this.after = after;
+        }
+        
+        private Map<String, Object> describe() {
+            Map<String, Object> change = new LinkedHashMap<>();
+            change.put("version", version);
+            if (currentlyPlaying != null) {
+                change.put("currently_playing", currentlyPlaying);
+            }
+            List<Map<String, Object>> described = new ArrayList<>(splices.size());
+            for (Splice splice : splices) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("index", splice.index);
+                entry.put("remove", splice.remove);
+                entry.put("items", after.subList(splice.insertFrom, splice.insertFrom + splice.insertCount));
+                described.add(entry);
+            }
+            change.put("splices", described);
+            return change;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.spotifymediaplayer.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client-side rate governor for Spotify Web API calls.
+ *
+ * Every call reserves a token from its account's bucket and from one global bucket
+ * shared by the whole app. When a bucket is empty the call is delayed until a token
+ * frees up instead of being sent and throttled upstream. A 429 from Spotify pauses all
+ * calls for the duration of its Retry-After header, because Spotify limits per app and
+ * not per user. Calls that would have to wait longer than the configured maximum are
+ * rejected. Idempotent GETs then fall back to the last good response for the same
+ * account and endpoint.
+ */
+@Component
+public class RateGovernor {
+    
+    @Autowired
+    private MeterRegistry registry;
+    
+    @Value("${spotify.rate.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${spotify.rate.global.per-second:20}")
+    private double globalPerSecond;
+    
+    @Value("${spotify.rate.global.burst:40}")
+    private double globalBurst;
+    
+    @Value("${spotify.rate.account.per-second:3}")
+    private double accountPerSecond;
+    
+    @Value("${spotify.rate.account.burst:10}")
+    private double accountBurst;
+    
+    /** Longest a call is delayed (parked or queued) before it is rejected */
+    @Value("${spotify.rate.max-wait-ms:2000}")
+    private long maxWaitMs;
+    
+    /** How often a call answered with 429 is re-sent (after the pause) before giving up */
+    @Value("${spotify.rate.max-retries:2}")
+    private int maxRetries;
+    
+    /** Pause applied when a 429 carries no Retry-After header */
+    @Value("${spotify.rate.default-retry-after-seconds:1}")
+    private long defaultRetryAfterSeconds;
+    
+    @Value("${spotify.rate.last-good.max-entries:2000}")
+    private int lastGoodMaxEntries;
+    
+    @Value("${spotify.rate.last-good.max-age-seconds:300}")
+    private long lastGoodMaxAgeSeconds;
+    
+    private TokenBucket globalBucket;
+    private final Map<String, TokenBucket> accountBuckets = new ConcurrentHashMap<>();
+    /** No call is sent before this instant (System.nanoTime) after an upstream 429 */
+    private final AtomicLong pausedUntilNanos = new AtomicLong(System.nanoTime());
+    
+    /** Last successful GET body per account and endpoint, least recently used first; guarded by {@code this} */
+    private final LinkedHashMap<String, LastGood> lastGood = new LinkedHashMap<>(256, 0.75f, true);
+    
+    private Counter delayed;
+    private Counter rejected;
+    private Counter staleServed;
+    private Counter upstreamThrottled;
+    
+    @PostConstruct
+    void start() {
+        globalBucket = new TokenBucket(globalPerSecond, globalBurst);
+        
+        delayed = registry.counter("spotify.rate.delayed");
+        rejected = registry.counter("spotify.rate.rejected");
+        staleServed = registry.counter("spotify.rate.stale.served");
+        upstreamThrottled = registry.counter("spotify.rate.upstream.throttled");
+        Gauge.builder("spotify.rate.global.available", this, governor -> governor.globalBucket.available())
+                .description("Tokens left in the global budget")
+                .register(registry);
+        Gauge.builder("spotify.rate.global.usage", this, governor -> 1 - governor.globalBucket.available() / governor.globalBurst)
+                .description("Share of the global burst budget in use (can exceed 1 while calls are queued)")
+                .register(registry);
+        Gauge.builder("spotify.rate.accounts.limited", this, RateGovernor::limitedAccounts)
+                .description("Accounts whose bucket is currently empty")
+                .register(registry);
+        Gauge.builder("spotify.rate.paused.seconds", this, governor -> Math.max(0, governor.pausedUntilNanos.get() - System.nanoTime()) / 1e9)
+                .description("Remaining Retry-After pause")
+                .register(registry);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+    
+    /**
+     * Reserves a call slot for an account.
+     *
+     * @param accountKey Spotify account id (or a session-scoped fallback key)
+     * @return nanoseconds the caller must wait before sending (0 to send now), or -1 if
+     *         the wait would exceed the maximum; nothing is reserved in that case
+     */
+    public long reserve(String accountKey) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        long pauseNanos = Math.max(0, pausedUntilNanos.get() - now);
+        if (pauseNanos > maxWaitNanos) {
+            rejected.increment();
+            return -1;
+        }
+        
+        TokenBucket account = accountBucket(accountKey);
+        long accountWait = account.reserve(now, maxWaitNanos);
+        if (accountWait < 0) {
+            rejected.increment();
+            return -1;
+        }
+        long globalWait = globalBucket.reserve(now, maxWaitNanos);
+        if (globalWait < 0) {
+            account.refund();
+            rejected.increment();
+            return -1;
+        }
+        
+        long wait = Math.max(pauseNanos, Math.max(accountWait, globalWait));
+        if (wait > 0) {
+            delayed.increment();
+        }
+        return wait;
+    }
+    
+    /**
+     * Records an upstream 429 and pauses all calls for its Retry-After period.
+     *
+     * @param headers response headers of the throttled call
+     */
+    public void onThrottled(HttpHeaders headers) {
+        upstreamThrottled.increment();
+        long retryAfterSeconds = defaultRetryAfterSeconds;
+        String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null) {
+            try {
+                retryAfterSeconds = Math.max(0, Long.parseLong(retryAfter.trim()));
+            } catch (NumberFormatException e) {
+                // HTTP-date form is not used by Spotify; keep the default
+            }
+        }
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(retryAfterSeconds);
+        pausedUntilNanos.accumulateAndGet(until, Math::max);
+    }
+    
+    /**
+     * @return whole seconds a rejected caller should wait before retrying (at least 1)
+     */
+    public long retryAfterSeconds() {
+        long pauseNanos = pausedUntilNanos.get() - System.nanoTime();
+        return Math.max(1, (long) Math.ceil(pauseNanos / 1e9));
+    }
+    
+    /**
+     * Remembers a successful GET response for use while throttled.
+     */
+    public void rememberGood(String accountKey, String endpoint, JsonNode body) {
+        if (!enabled || body == null) {
+            return;
+        }
+        synchronized (this) {
+            lastGood.put(accountKey + ' ' + endpoint, new LastGood(body, System.nanoTime()));
+            Iterator<LastGood> eldest = lastGood.values().iterator();
+            while (lastGood.size() > lastGoodMaxEntries) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+    
+    /**
+     * Returns the last good response for an account and endpoint while throttled.
+     *
+     * @return last good body (shared, read-only), or null if none is recent enough
+     */
+    public JsonNode lastGood(String accountKey, String endpoint) {
+        LastGood entry;
+        synchronized (this) {
+            entry = lastGood.get(accountKey + ' ' + endpoint);
+        }
+        if (entry == null || System.nanoTime() - entry.storedAtNanos > TimeUnit.SECONDS.toNanos(lastGoodMaxAgeSeconds)) {
+            return null;
+        }
+        staleServed.increment();
+        return entry.body;
+    }
+    
+    private TokenBucket accountBucket(String accountKey) {
+        if (accountBuckets.size() > 10_000) {
+            // Drop idle accounts; a full bucket carries no state worth keeping
+            long now = System.nanoTime();
+            accountBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        }
+        return accountBuckets.computeIfAbsent(accountKey, key -> new TokenBucket(accountPerSecond, accountBurst));
+    }
+    
+    private double limitedAccounts() {
+        return accountBuckets.values().stream().filter(bucket -> bucket.available() < 1).count();
+    }
+    
+    /**
+     * Token bucket supporting reservations: a call may take a token that is only
+     * available in the future and is told how long to wait for it.
+     */
+    private static class TokenBucket {
+        
+        private final double tokensPerNano;
+        private final double capacity;
+        /** May go negative while calls wait for reserved tokens; guarded by {@code this} */
+        private double tokens;
+        private long refilledAtNanos;
+        
+        TokenBucket(double perSecond, double burst) {
+            this.tokensPerNano = perSecond / 1e9;
+            this.capacity = burst;
+            this.tokens = burst;
+            this.refilledAtNanos = System.nanoTime();
+        }
+        
+        synchronized long reserve(long now, long maxWaitNanos) {
+            refill(now);
+            long wait = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            tokens -= 1;
+            return wait;
+        }
+        
+        synchronized void refund() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+        
+        synchronized double available() {
+            refill(System.nanoTime());
+            return tokens;
+        }
+        
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+        
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - refilledAtNanos) * tokensPerNano);
+            refilledAtNanos = now;
+        }
+    }
+    
+    private static class LastGood {
+        
+        private final JsonNode body;
+        private final long storedAtNanos;
+        
+        private LastGood(JsonNode body, long storedAtNanos) {
+            this.body = body;
+            this.storedAtNanos = storedAtNanos;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.spotifymediaplayer.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-route whitelists of the Spotify properties this backend passes on.
+ *
+ * Upstream payloads carry far more than the player shows: every track lists its
+ * available markets, external ids and links, albums and artists repeat theirs. The
+ * whitelist of a route is applied while its body is parsed (or streamed, in passthrough
+ * mode), so dropped properties are skipped token by token and never reach the caches,
+ * the type-ahead index or the client. The defaults keep everything the backend itself
+ * reads (progress, track ids and durations, queue uris) plus what the frontend renders.
+ *
+ * Clients can narrow a response further with a fields= parameter, see
+ * {@link #parseClientFields}.
+ */
+@Component
+public class ResponseProjection {
+    
+    /** Endpoint prefix of search requests */
+    private static final String SEARCH_PREFIX = "/search?";
+    
+    /** Default whitelist of /me/player */
+    public static final String DEFAULT_PLAYBACK_FIELDS = "is_playing,progress_ms,timestamp,shuffle_state,repeat_state,currently_playing_type,device(id,name,type,is_active,volume_percent),context(type,uri),item(id,name,uri,type,duration_ms,artists(id,name,uri),album(id,name,images),images)";
+    
+    /** Default whitelist of /search: paging and the slim items of each result type */
+    public static final String DEFAULT_SEARCH_FIELDS = "tracks(items(id,name,uri,duration_ms,artists(id,name,uri),album(id,name,images)),limit,offset,next,previous,total),artists(items(id,name,uri,images),limit,offset,next,previous,total),albums(items(id,name,uri,images,artists(id,name,uri)),limit,offset,next,previous,total),playlists(items(id,name,uri,images,owner(id,display_name)),limit,offset,next,previous,total)";
+    
+    /** Default whitelist of /me/player/queue */
+    public static final String DEFAULT_QUEUE_FIELDS = "currently_playing(id,name,uri,type,duration_ms,artists(id,name,uri),album(id,name,images),images),queue(id,name,uri,type,duration_ms,artists(id,name,uri),album(id,name,images),images)";
+    
+    @Value("${spotify.projection.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${spotify.projection.playback:" + DEFAULT_PLAYBACK_FIELDS + "}")
+    private String playbackFields;
+    
+    @Value("${spotify.projection.search:" + DEFAULT_SEARCH_FIELDS + "}")
+    private String searchFields;
+    
+    @Value("${spotify.projection.queue:" + DEFAULT_QUEUE_FIELDS + "}")
+    private String queueFields;
+    
+    private FieldProjection playback;
+    private FieldProjection search;
+    private FieldProjection queue;
+    
+    /** Parsed client field lists, bounded so arbitrary specs cannot grow it without limit */
+    private final Map<String, FieldProjection> clientFields = new ConcurrentHashMap<>();
+    private static final int MAX_CLIENT_FIELDS = 256;
+    
+    private final AtomicLong projectedBodies = new AtomicLong();
+    private final AtomicLong clientProjections = new AtomicLong();
+    private final AtomicLong invalidClientFields = new AtomicLong();
+    
+    @PostConstruct
+    void parseWhitelists() {
+        playback = parseWhitelist(playbackFields);
+        search = parseWhitelist(searchFields);
+        queue = parseWhitelist(queueFields);
+    }
+    
+    private static FieldProjection parseWhitelist(String spec) {
+        return spec == null || spec.isBlank() ? null : FieldProjection.parse(spec);
+    }
+    
+    /**
+     * Returns the whitelist for an upstream endpoint.
+     *
+     * @param endpoint Spotify API endpoint path, starting with '/'
+     * @return whitelist, or null if the route's bodies are passed on whole
+     */
+    public FieldProjection forEndpoint(String endpoint) {
+        if (!enabled) {
+            return null;
+        }
+        if (SpotifyService.PLAYBACK_ENDPOINT.equals(endpoint)) {
+            return playback;
+        }
+        if (PlayerQueueModel.QUEUE_ENDPOINT.equals(endpoint)) {
+            return queue;
+        }
+        if (endpoint.startsWith(SEARCH_PREFIX)) {
+            return search;
+        }
+        return null;
+    }
+    
+    /**
+     * Wraps a parser of an upstream body in the endpoint's whitelist, if it has one.
+     *
+     * @param parser   parser over the upstream body, not yet advanced
+     * @param endpoint Spotify API endpoint path
+     * @return filtering parser, or the given parser if the route is not projected
+     */
+    public JsonParser filter(JsonParser parser, String endpoint) {
+        FieldProjection projection = forEndpoint(endpoint);
+        if (projection == null) {
+            return parser;
+        }
+        projectedBodies.incrementAndGet();
+        return projection.filter(parser);
+    }
+    
+    /**
+     * Parses a fields= request parameter.
+     *
+     * @param fields client field list, e.g. {@code item(name,artists(name)),progress_ms}
+     * @return projection, or null if no field list was given
+     * @throws IllegalArgumentException if the field list is malformed
+     */
+    public FieldProjection parseClientFields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        clientProjections.incrementAndGet();
+        FieldProjection cached = clientFields.get(fields);
+        if (cached != null) {
+            return cached;
+        }
+        FieldProjection parsed;
+        try {
+            parsed = FieldProjection.parse(fields);
+        } catch (IllegalArgumentException e) {
+            invalidClientFields.incrementAndGet();
+            throw e;
+        }
+        if (clientFields.size() < MAX_CLIENT_FIELDS) {
+            clientFields.putIfAbsent(fields, parsed);
+        }
+        return parsed;
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("playback", playback != null ? playback.toString() : null);
+        stats.put("search", search != null ? search.toString() : null);
+        stats.put("queue", queue != null ? queue.toString() : null);
+        stats.put("projectedBodies", projectedBodies.get());
+        stats.put("clientProjections", clientProjections.get());
+        stats.put("invalidClientFields", invalidClientFields.get());
+        stats.put("cachedClientFields", clientFields.size());
+        return stats;
+    }
+}
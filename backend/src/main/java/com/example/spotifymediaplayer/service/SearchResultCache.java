@@ -0,0 +1,228 @@
+package com.example.spotifymediaplayer.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Shared, size-bounded cache of Spotify search results.
+ *
+ * Results are keyed by the normalized (q, type, limit, market) tuple, so the same
+ * popular query typed by many users within the TTL costs a single upstream call.
+ * Entries are evicted in least-recently-used order once either the entry or the byte
+ * budget is exceeded. Concurrent misses for the same key share one in-flight request.
+ *
+ * Cached nodes are shared between requests and must be treated as read-only.
+ */
+@Component
+public class SearchResultCache {
+    
+    @Value("${spotify.search-cache.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${spotify.search-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+    
+    @Value("${spotify.search-cache.max-entries:2000}")
+    private int maxEntries;
+    
+    /** Budget for the serialized size of all cached results */
+    @Value("${spotify.search-cache.max-bytes:33554432}")
+    private long maxBytes;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    /** Access-ordered map; guarded by {@code this} */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    /** Serialized size of all entries; guarded by {@code this} */
+    private long totalBytes;
+    private final Map<String, CompletableFuture<JsonNode>> inflightLoads = new ConcurrentHashMap<>();
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalescedMisses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    
+    /**
+     * Builds the cache key for a search. Queries differing only in case or whitespace,
+     * and type lists differing only in order, map to the same key.
+     *
+     * @param q      free-text query
+     * @param type   comma-separated item types
+     * @param limit  max results
+     * @param market ISO country code (may be null)
+     * @return normalized key
+     */
+    public static String key(String q, String type, int limit, String market) {
+        return normalizeQuery(q) + '\u0000' + normalizeType(type) + '\u0000' + limit + '\u0000'
+                + (market != null ? market.trim().toUpperCase(Locale.ROOT) : "");
+    }
+    
+    /** Trims, collapses whitespace and lower-cases a search query */
+    public static String normalizeQuery(String q) {
+        return q.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+    
+    /** Lower-cases and sorts a comma-separated type list ("Artist,track" becomes "artist,track") */
+    public static String normalizeType(String type) {
+        return Arrays.stream(type.split(","))
+                .map(t -> t.trim().toLowerCase(Locale.ROOT))
+                .filter(t -> !t.isEmpty())
+                .sorted()
+                .distinct()
+                .collect(Collectors.joining(","));
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Returns the cached result for a key, or loads it. Callers missing on a key that is
+     * already being loaded wait for that load instead of issuing their own request. If the
+     * shared load fails (e.g. the loading session had no token), each waiter falls back
+     * to its own loader so one session's failure never leaks to another.
+     *
+     * @param key    normalized key from {@link #key}
+     * @param loader performs the upstream search; completes with null on failure
+     * @return future with the search result, or null if the load failed; a rate-limit
+     *         error of the shared load is passed on to all waiters
+     */
+    public CompletableFuture<JsonNode> get(String key, Supplier<CompletableFuture<JsonNode>> loader) {
+        JsonNode cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached);
+        }
+        misses.incrementAndGet();
+        
+        CompletableFuture<JsonNode> mine = new CompletableFuture<>();
+        CompletableFuture<JsonNode> inflight = inflightLoads.putIfAbsent(key, mine);
+        if (inflight != null) {
+            coalescedMisses.incrementAndGet();
+            return inflight.thenCompose(result -> result != null ? CompletableFuture.completedFuture(result) : loader.get());
+        }
+        
+        loads.incrementAndGet();
+        loader.get().whenComplete((result, error) -> {
+            if (result != null) {
+                put(key, result);
+            } else {
+                loadFailures.incrementAndGet();
+            }
+            inflightLoads.remove(key, mine);
+            if (error != null) {
+                mine.completeExceptionally(error);
+            } else {
+                mine.complete(result);
+            }
+        });
+        return mine;
+    }
+    
+    private synchronized JsonNode lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAtNanos - System.nanoTime() <= 0) {
+            entries.remove(key);
+            totalBytes -= entry.bytes;
+            expirations.incrementAndGet();
+            return null;
+        }
+        return entry.value;
+    }
+    
+    private void put(String key, JsonNode value) {
+        long bytes;
+        try {
+            bytes = objectMapper.writeValueAsBytes(value).length;
+        } catch (JsonProcessingException e) {
+            return;
+        }
+        if (bytes > maxBytes) {
+            return;
+        }
+        
+        Entry entry = new Entry(value, bytes, System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSeconds));
+        synchronized (this) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                totalBytes -= previous.bytes;
+            }
+            totalBytes += bytes;
+            
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries || totalBytes > maxBytes) {
+                Entry evicted = eldest.next();
+                eldest.remove();
+                totalBytes -= evicted.bytes;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+    
+    /** Removes all cached results */
+    public synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+    
+    /**
+     * @return hit ratio, eviction counters and current memory footprint
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (this) {
+            stats.put("size", entries.size());
+            stats.put("bytes", totalBytes);
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("maxBytes", maxBytes);
+        stats.put("ttlSeconds", ttlSeconds);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRatio", lookups > 0 ? (double) hitCount / lookups : 0.0);
+        stats.put("coalescedMisses", coalescedMisses.get());
+        stats.put("loads", loads.get());
+        stats.put("loadFailures", loadFailures.get());
+        stats.put("evictions", evictions.get());
+        stats.put("expirations", expirations.get());
+        return stats;
+    }
+    
+    private static class Entry {
+        
+        private final JsonNode value;
+        private final long bytes;
+        private final long expiresAtNanos;
+        
+        private Entry(JsonNode value, long bytes, long expiresAtNanos) {
+            this.value = value;
+            this.bytes = bytes;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
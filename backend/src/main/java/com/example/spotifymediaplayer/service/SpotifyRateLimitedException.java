@@ -0,0 +1,20 @@
+package com.example.spotifymediaplayer.service;
+
+/**
+ * Raised when a Spotify call cannot be made within the allowed wait because the upstream
+ * rate limit (or the local budget protecting it) is exhausted, and no last known good
+ * response is available. Controllers map it to 429 with a Retry-After header.
+ */
+public class SpotifyRateLimitedException extends RuntimeException {
+    
+    private final long retryAfterSeconds;
+    
+    public SpotifyRateLimitedException(long retryAfterSeconds) {
+        super("Spotify rate limit reached, retry after " + retryAfterSeconds + "s");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
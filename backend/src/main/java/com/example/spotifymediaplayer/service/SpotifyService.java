@@ -1,22 +1,47 @@
 package com.example.spotifymediaplayer.service;
 
+import com.example.spotifymediaplayer.client.SpotifyHttpClient;
+import com.example.spotifymediaplayer.client.SpotifyHttpResponse;
+import com.example.spotifymediaplayer.client.SpotifyHttpStream;
+import com.example.spotifymediaplayer.config.BackgroundExecutors;
 import com.example.spotifymediaplayer.config.SpotifyConfig;
 import com.example.spotifymediaplayer.dto.SpotifyTokenResponse;
+import com.example.spotifymediaplayer.metrics.SpotifyMetrics;
+import com.example.spotifymediaplayer.entity.TokenInvalidation;
 import com.example.spotifymediaplayer.entity.UserToken;
-import com.example.spotifymediaplayer.repository.UserTokenRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service encapsulating Spotify OAuth and Web API calls.
@@ -24,21 +49,114 @@ import java.util.Optional;
  * Responsibilities:
  * - Build the authorization URL with required scopes
  * - Exchange authorization code for tokens and persist them per session
- * - Auto-refresh access tokens using the stored refresh token
+ * - Auto-refresh access tokens using the stored refresh token, ahead of expiry
+ *   for recently used sessions and single-flight per session otherwise
  * - Make authenticated Web API calls and return parsed JSON
+ *
+ * Token responses are bound with the ObjectMapper directly, so their binding is
+ * registered for native images.
  */
 @Service
+@RegisterReflectionForBinding(SpotifyTokenResponse.class)
 public class SpotifyService {
     
+    /** Spotify endpoint of the current playback state */
+    public static final String PLAYBACK_ENDPOINT = "/me/player";
+    
+    /** Result of {@link #fetchCurrentPlaybackAsync} when nothing is playing (204) */
+    public static final JsonNode NOTHING_PLAYING = MissingNode.getInstance();
+    
+    /** Parts of a {@link #getSnapshotAsync snapshot} and the Spotify endpoint behind each */
+    public static final Map<String, String> SNAPSHOT_PARTS = Map.of(
+            "playback", PLAYBACK_ENDPOINT,
+            "queue", "/me/player/queue",
+            "devices", "/me/player/devices");
+    
     @Autowired
     private SpotifyConfig spotifyConfig;
     
     @Autowired
-    private UserTokenRepository tokenRepository;
+    private TokenWriteBehind tokenStore;
+    
+    @Autowired
+    private AccessTokenCache tokenCache;
+    
+    @Autowired
+    private SpotifyHttpClient httpClient;
+    
+    @Autowired
+    private BackgroundExecutors backgroundExecutors;
+    
+    @Autowired
+    private SearchResultCache searchCache;
+    
+    @Autowired
+    private TypeAheadIndex typeAheadIndex;
+    
+    @Autowired
+    private SpotifyMetrics metrics;
+    
+    @Autowired
+    private RateGovernor rateGovernor;
+    
+    @Autowired
+    private ClusterCoordinator cluster;
+    
+    @Autowired
+    private LegacyTokenMigration legacyTokenMigration;
+    
+    @Autowired
+    private ResponseProjection responseProjection;
+    
+    @Autowired
+    private AlbumArtCache albumArtCache;
+    
+    @Value("${spotify.token-cache.refresh-ahead-minutes:10}")
+    private long refreshAheadMinutes;
+    
+    /** Only the "async" client returns before the upstream round-trip is done */
+    @Value("${spotify.http.mode:pooled}")
+    private String httpMode;
+    
+    /** Reuse the parsed /me/player tree when the upstream body only moved its clock fields */
+    @Value("${spotify.playback.fingerprint.enabled:true}")
+    private boolean playbackFingerprintEnabled;
     
-    private final RestTemplate restTemplate = new RestTemplate();
     private final ObjectMapper objectMapper = new ObjectMapper();
     
+    /** Spotify user id per session, so sessions of the same account can share upstream work */
+    private final Map<String, String> sessionAccounts = new ConcurrentHashMap<>();
+    
+    /** Last parsed /me/player body per rate account, reused while its content is unchanged */
+    private final Map<String, ParsedPlayback> lastPlayback = new ConcurrentHashMap<>();
+    
+    /** Sends async calls the rate governor delayed; must not run them on the timer thread */
+    private Executor governedSendExecutor;
+    
+    /** Runs the extra calls of a snapshot when the HTTP client blocks the calling thread */
+    private Executor snapshotExecutor;
+    
+    @PostConstruct
+    void startBackgroundWork() {
+        governedSendExecutor = backgroundExecutors.isVirtual()
+                ? backgroundExecutors.dispatchExecutor("governed-send")
+                : Executors.newCachedThreadPool(backgroundExecutors.threadFactory("governed-send"));
+        snapshotExecutor = backgroundExecutors.isVirtual()
+                ? backgroundExecutors.dispatchExecutor("snapshot")
+                : Executors.newCachedThreadPool(backgroundExecutors.threadFactory("snapshot"));
+        
+        // Another node logged a session out; drop what this node keeps for it
+        cluster.addListener(invalidation -> {
+            if (TokenInvalidation.KIND_CLEAR.equals(invalidation.getKind())) {
+                lastPlayback.clear();
+                sessionAccounts.clear();
+            } else if (TokenInvalidation.KIND_LOGOUT.equals(invalidation.getKind())) {
+                lastPlayback.remove("session:" + invalidation.getSessionId());
+                sessionAccounts.remove(invalidation.getSessionId());
+            }
+        });
+    }
+    
     /**
      * Builds the Spotify authorization URL using the configured client and redirect.
      * The provided sessionId is used as the OAuth "state" to correlate the callback.
@@ -68,45 +186,30 @@ public class SpotifyService {
      */
     public String exchangeCodeForToken(String code, String sessionId) {
         try {
-            // Prepare request headers with Client Credentials in Basic auth
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-            
-            String auth = spotifyConfig.getClientId() + ":" + spotifyConfig.getClientSecret();
-            String encodedAuth = Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8));
-            headers.set("Authorization", "Basic " + encodedAuth);
-            
             // Prepare request body per Spotify token spec
             MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
             body.add("grant_type", "authorization_code");
             body.add("code", code);
             body.add("redirect_uri", spotifyConfig.getRedirectUri());
             
-            HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(body, headers);
-            
             // Make token exchange request
-            ResponseEntity<SpotifyTokenResponse> response = restTemplate.postForEntity(
-                spotifyConfig.getTokenUrl(), 
-                request, 
-                SpotifyTokenResponse.class
-            );
+            SpotifyTokenResponse tokenResponse = requestToken(body);
             
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                SpotifyTokenResponse tokenResponse = response.getBody();
+            if (tokenResponse != null) {
+                // Persist tokens with expiry
+                LocalDateTime expiresAt = LocalDateTime.now().plusSeconds(tokenResponse.getExpiresIn());
+                UserToken userToken = new UserToken(sessionId, tokenResponse.getAccessToken(), 
+                                                   tokenResponse.getRefreshToken(), expiresAt);
                 
-                // Add explicit null checks to prevent potential null pointer access
-                if (tokenResponse != null && tokenResponse.getAccessToken() != null && tokenResponse.getExpiresIn() != null) {
-                    // Persist tokens with expiry
-                    LocalDateTime expiresAt = LocalDateTime.now().plusSeconds(tokenResponse.getExpiresIn());
-                    UserToken userToken = new UserToken(sessionId, tokenResponse.getAccessToken(), 
-                                                       tokenResponse.getRefreshToken(), expiresAt);
-                    
-                    // Remove existing token for this session then save
-                    tokenRepository.deleteBySessionId(sessionId);
-                    tokenRepository.save(userToken);
-                    
-                    return tokenResponse.getAccessToken();
-                }
+                // Upsert replaces any existing token for this session
+                tokenStore.save(userToken);
+                tokenCache.put(sessionId, AccessTokenCache.CachedToken.of(userToken));
+                cluster.tokenChanged(sessionId);
+                // The token may belong to another account than the session had before
+                sessionAccounts.remove(sessionId);
+                resolveAccountId(sessionId);
+                
+                return tokenResponse.getAccessToken();
             }
             
         } catch (Exception e) {
@@ -119,72 +222,148 @@ public class SpotifyService {
     
     /**
      * Returns a valid access token for the given session.
-     * Refreshes the token if the stored one expires within the next 5 minutes.
+     * Served from the in-memory cache when possible; refreshes the token if the cached
+     * one expires within the next 5 minutes. A token loaded from the database also
+     * resolves the session's account, so its calls draw on the account's rate budget.
      *
      * @param sessionId current session id
      * @return valid access token or null if unavailable
      */
     public String getValidAccessToken(String sessionId) {
-        Optional<UserToken> tokenOpt = tokenRepository.findBySessionId(sessionId);
+        long started = System.nanoTime();
+        String source = "cache";
+        AccessTokenCache.CachedToken token = tokenCache.get(sessionId);
         
-        if (tokenOpt.isPresent()) {
-            UserToken userToken = tokenOpt.get();
-            
-            // Check if token is still valid with a small buffer to avoid race conditions
-            if (userToken.getExpiresAt().isAfter(LocalDateTime.now().plusMinutes(5))) {
-                return userToken.getAccessToken();
-            } else {
-                // Token is expired or near expiry, try to refresh
-                return refreshAccessToken(userToken);
+        if (token == null) {
+            Optional<UserToken> tokenOpt = tokenStore.find(sessionId);
+            if (tokenOpt.isEmpty()) {
+                metrics.recordTokenLookup("none", started);
+                return null;
+            }
+            token = AccessTokenCache.CachedToken.of(tokenOpt.get());
+            tokenCache.put(sessionId, token);
+            source = "database";
+            if (!sessionAccounts.containsKey(sessionId)) {
+                // Finds the token in the cache now, so this does not come back here
+                resolveAccountId(sessionId);
             }
         }
         
-        return null;
+        // Check if token is still valid with a small buffer to avoid race conditions
+        if (token.getExpiresAt().isAfter(LocalDateTime.now().plusMinutes(5))) {
+            metrics.recordTokenLookup(source, started);
+            return token.getAccessToken();
+        }
+        
+        // Token is expired or near expiry; concurrent callers share a single refresh
+        token = tokenCache.refresh(sessionId, token, this::refreshAccessToken);
+        metrics.recordTokenLookup(token != null ? "refreshed" : "none", started);
+        return token != null ? token.getAccessToken() : null;
+    }
+    
+    /**
+     * Refreshes a session's token ahead of expiry, off the request path. Shares the
+     * refresh with concurrent request-path callers, like {@link #getValidAccessToken}.
+     *
+     * @param sessionId session whose token should be refreshed
+     * @param seen      cached token the refresh is meant to replace
+     * @return refreshed token or null if the refresh failed
+     */
+    public AccessTokenCache.CachedToken refreshTokenAhead(String sessionId, AccessTokenCache.CachedToken seen) {
+        return SpotifyMetrics.callAs("scheduler:token-refresh",
+                () -> tokenCache.refresh(sessionId, seen, this::refreshAccessToken));
     }
     
     /**
      * Refreshes the access token using the stored refresh token.
-     * Updates the persisted token and returns the new access token.
+     * The persisted record is always written: Spotify may hand back the same access
+     * token with a new expiry, and the store must not keep the old one.
      *
-     * @param userToken persisted token record for current session
-     * @return new access token or null on failure
+     * @param sessionId session whose token should be refreshed
+     * @return refreshed token snapshot or null on failure
      */
-    private String refreshAccessToken(UserToken userToken) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+    private AccessTokenCache.CachedToken refreshAccessToken(String sessionId) {
+        long started = System.nanoTime();
+        AccessTokenCache.CachedToken token = cluster.isEnabled() ? refreshUnderLease(sessionId) : requestRefreshedToken(sessionId);
+        metrics.recordTokenRefresh(token != null, started);
+        return token;
+    }
+    
+    /**
+     * Cluster mode: refreshes only while holding the session's refresh lease, so one node
+     * calls Spotify. The lease holder first checks whether another node refreshed just
+     * before; a node that finds the lease taken waits for the new token to appear in
+     * the shared store instead.
+     *
+     * @param sessionId session whose token should be refreshed
+     * @return fresh token, the still unexpired old one if no fresh one appeared within
+     *         the lease time, or null
+     */
+    private AccessTokenCache.CachedToken refreshUnderLease(String sessionId) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(cluster.getLeaseTtlMs());
+        while (true) {
+            if (cluster.tryAcquireRefreshLease(sessionId)) {
+                try {
+                    AccessTokenCache.CachedToken stored = storedTokenValidUntil(sessionId, LocalDateTime.now().plusMinutes(refreshAheadMinutes));
+                    if (stored != null) {
+                        return stored;
+                    }
+                    AccessTokenCache.CachedToken token = requestRefreshedToken(sessionId);
+                    if (token != null) {
+                        cluster.tokenChanged(sessionId);
+                    }
+                    return token;
+                } finally {
+                    cluster.releaseRefreshLease(sessionId);
+                }
+            }
             
-            String auth = spotifyConfig.getClientId() + ":" + spotifyConfig.getClientSecret();
-            String encodedAuth = Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8));
-            headers.set("Authorization", "Basic " + encodedAuth);
+            try {
+                Thread.sleep(cluster.getLeasePollMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return storedTokenValidUntil(sessionId, LocalDateTime.now());
+            }
+            AccessTokenCache.CachedToken stored = storedTokenValidUntil(sessionId, LocalDateTime.now().plusMinutes(5));
+            if (stored != null) {
+                return stored;
+            }
+            if (System.nanoTime() > deadline) {
+                return storedTokenValidUntil(sessionId, LocalDateTime.now());
+            }
+        }
+    }
+    
+    private AccessTokenCache.CachedToken storedTokenValidUntil(String sessionId, LocalDateTime validUntil) {
+        return tokenStore.find(sessionId)
+                .filter(token -> token.getExpiresAt() != null && token.getExpiresAt().isAfter(validUntil))
+                .map(AccessTokenCache.CachedToken::of)
+                .orElse(null);
+    }
+    
+    private AccessTokenCache.CachedToken requestRefreshedToken(String sessionId) {
+        try {
+            Optional<UserToken> tokenOpt = tokenStore.find(sessionId);
+            if (tokenOpt.isEmpty()) {
+                return null;
+            }
+            UserToken userToken = tokenOpt.get();
             
             MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
             body.add("grant_type", "refresh_token");
             body.add("refresh_token", userToken.getRefreshToken());
             
-            HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(body, headers);
-            
-            ResponseEntity<SpotifyTokenResponse> response = restTemplate.postForEntity(
-                spotifyConfig.getTokenUrl(), 
-                request, 
-                SpotifyTokenResponse.class
-            );
+            SpotifyTokenResponse tokenResponse = requestToken(body);
             
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                SpotifyTokenResponse tokenResponse = response.getBody();
-                
-                // Add explicit null checks to prevent potential null pointer access
-                if (tokenResponse != null && tokenResponse.getAccessToken() != null && tokenResponse.getExpiresIn() != null) {
-                    // Update token in database
-                    userToken.setAccessToken(tokenResponse.getAccessToken());
-                    userToken.setExpiresAt(LocalDateTime.now().plusSeconds(tokenResponse.getExpiresIn()));
-                    if (tokenResponse.getRefreshToken() != null) {
-                        userToken.setRefreshToken(tokenResponse.getRefreshToken());
-                    }
-                    tokenRepository.save(userToken);
-                    
-                    return tokenResponse.getAccessToken();
+            if (tokenResponse != null) {
+                userToken.setAccessToken(tokenResponse.getAccessToken());
+                userToken.setExpiresAt(LocalDateTime.now().plusSeconds(tokenResponse.getExpiresIn()));
+                if (tokenResponse.getRefreshToken() != null) {
+                    userToken.setRefreshToken(tokenResponse.getRefreshToken());
                 }
+                tokenStore.save(userToken);
+                
+                return AccessTokenCache.CachedToken.of(userToken);
             }
             
         } catch (Exception e) {
@@ -194,15 +373,64 @@ public class SpotifyService {
         return null;
     }
     
+    /**
+     * Posts a form to the Spotify token endpoint using client credentials in Basic auth.
+     *
+     * @param form form parameters per Spotify token spec
+     * @return parsed token response, or null unless the call returned 200 with an
+     *         access token and expiry
+     */
+    private SpotifyTokenResponse requestToken(MultiValueMap<String, String> form) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        
+        String auth = spotifyConfig.getClientId() + ":" + spotifyConfig.getClientSecret();
+        String encodedAuth = Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8));
+        headers.set("Authorization", "Basic " + encodedAuth);
+        
+        StringBuilder encodedForm = new StringBuilder();
+        form.forEach((name, values) -> values.forEach(value -> {
+            if (encodedForm.length() > 0) {
+                encodedForm.append('&');
+            }
+            encodedForm.append(URLEncoder.encode(name, StandardCharsets.UTF_8))
+                       .append('=')
+                       .append(URLEncoder.encode(value != null ? value : "", StandardCharsets.UTF_8));
+        }));
+        
+        SpotifyHttpResponse response = httpClient.execute(
+            HttpMethod.POST,
+            spotifyConfig.getTokenUrl(),
+            headers,
+            encodedForm.toString().getBytes(StandardCharsets.UTF_8)
+        );
+        
+        if (response.getStatusCode() == HttpStatus.OK.value() && response.hasBody()) {
+            SpotifyTokenResponse tokenResponse = objectMapper.readValue(response.getBody(), SpotifyTokenResponse.class);
+            
+            // Add explicit null checks to prevent potential null pointer access
+            if (tokenResponse != null && tokenResponse.getAccessToken() != null && tokenResponse.getExpiresIn() != null) {
+                return tokenResponse;
+            }
+        }
+        return null;
+    }
+    
     /**
      * Makes an authenticated request to the Spotify Web API.
      * If there is no valid access token for the session, returns null.
      *
+     * Calls pass through the {@link RateGovernor}: when the account or app budget is
+     * exhausted, or Spotify answered 429, the calling thread is parked until the call
+     * may be sent. If that would take too long, idempotent GETs return the last good
+     * response instead.
+     *
      * @param sessionId session id used to look up tokens
      * @param endpoint  Spotify API endpoint path, starting with '/'
      * @param method    HTTP method to use
      * @param body      request body (may be null)
      * @return parsed JSON body on success; null otherwise
+     * @throws SpotifyRateLimitedException if throttled and no last good response exists
      */
     public JsonNode makeSpotifyApiCall(String sessionId, String endpoint, HttpMethod method, Object body) {
         String accessToken = getValidAccessToken(sessionId);
@@ -210,29 +438,512 @@ public class SpotifyService {
             return null;
         }
         
+        String accountKey = rateAccountKey(sessionId);
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Bearer " + accessToken);
-            headers.setContentType(MediaType.APPLICATION_JSON);
+            SpotifyHttpResponse response = sendGoverned(
+                accountKey,
+                method,
+                spotifyConfig.getApiBaseUrl() + endpoint,
+                apiHeaders(accessToken),
+                body != null ? objectMapper.writeValueAsBytes(body) : null
+            );
             
-            HttpEntity<Object> request = new HttpEntity<>(body, headers);
+            JsonNode result = parseApiResponse(response, endpoint, accountKey);
+            if (method == HttpMethod.GET) {
+                rateGovernor.rememberGood(accountKey, endpoint, result);
+            }
+            return result;
             
-            ResponseEntity<String> response = restTemplate.exchange(
-                spotifyConfig.getApiBaseUrl() + endpoint,
+        } catch (SpotifyRateLimitedException e) {
+            return lastGoodOrThrow(accountKey, endpoint, method, e);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Sends a player command (play, pause, skip, queue) and reports the upstream status.
+     * Unlike {@link #makeSpotifyApiCall}, callers can tell a 204 success from a failure.
+     *
+     * @param sessionId session whose token is used
+     * @param endpoint  Spotify API endpoint path, starting with '/'
+     * @param method    HTTP method to use
+     * @return upstream HTTP status, 401 if the session has no valid token, or 0 if the
+     *         call failed without a response
+     * @throws SpotifyRateLimitedException if throttled beyond the allowed wait
+     */
+    public int sendPlayerCommand(String sessionId, String endpoint, HttpMethod method) {
+        String accessToken = getValidAccessToken(sessionId);
+        if (accessToken == null) {
+            return HttpStatus.UNAUTHORIZED.value();
+        }
+        
+        try {
+            SpotifyHttpResponse response = sendGoverned(
+                rateAccountKey(sessionId),
                 method,
-                request,
-                String.class
+                spotifyConfig.getApiBaseUrl() + endpoint,
+                apiHeaders(accessToken),
+                null
             );
+            return response.getStatusCode();
+            
+        } catch (SpotifyRateLimitedException e) {
+            throw e;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        
+        return 0;
+    }
+    
+    /**
+     * Asynchronous variant of {@link #makeSpotifyApiCall}. In the "async" HTTP mode the
+     * upstream round-trip does not occupy the calling thread; in the other modes the
+     * returned future is already complete. Calls delayed by the {@link RateGovernor}
+     * are queued on a timer instead of parking the caller.
+     *
+     * @return future completed with the parsed JSON body on success, or null otherwise;
+     *         completed exceptionally only with {@link SpotifyRateLimitedException}
+     */
+    public CompletableFuture<JsonNode> makeSpotifyApiCallAsync(String sessionId, String endpoint, HttpMethod method, Object body) {
+        String accessToken = getValidAccessToken(sessionId);
+        if (accessToken == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return callApiAsync(sessionId, accessToken, endpoint, method, body);
+    }
+    
+    /**
+     * Sends a Web API call with an access token the caller already resolved.
+     */
+    private CompletableFuture<JsonNode> callApiAsync(String sessionId, String accessToken, String endpoint, HttpMethod method, Object body) {
+        return callApiAsync(sessionId, accessToken, endpoint, method, body, null);
+    }
+    
+    /**
+     * @param noContent result of a 204 response
+     */
+    private CompletableFuture<JsonNode> callApiAsync(String sessionId, String accessToken, String endpoint, HttpMethod method, Object body,
+                                                     JsonNode noContent) {
+        String accountKey = rateAccountKey(sessionId);
+        try {
+            return sendGovernedAsync(
+                    SpotifyMetrics.currentRoute(),
+                    accountKey,
+                    method,
+                    spotifyConfig.getApiBaseUrl() + endpoint,
+                    apiHeaders(accessToken),
+                    body != null ? objectMapper.writeValueAsBytes(body) : null,
+                    rateGovernor.getMaxRetries())
+                .thenApply(response -> {
+                    if (response.getStatusCode() == HttpStatus.NO_CONTENT.value()) {
+                        return noContent;
+                    }
+                    JsonNode result = parseApiResponse(response, endpoint, accountKey);
+                    if (method == HttpMethod.GET) {
+                        rateGovernor.rememberGood(accountKey, endpoint, result);
+                    }
+                    return result;
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof SpotifyRateLimitedException) {
+                        return lastGoodOrThrow(accountKey, endpoint, method, (SpotifyRateLimitedException) cause);
+                    }
+                    e.printStackTrace();
+                    return null;
+                });
+        } catch (Exception e) {
+            e.printStackTrace();
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+    
+    /**
+     * Sends a request once the rate governor allows it, parking the calling thread while
+     * the account or app budget is exhausted. A 429 pauses further calls for its
+     * Retry-After period and is retried up to the configured number of times.
+     */
+    private SpotifyHttpResponse sendGoverned(String accountKey, HttpMethod method, String url,
+                                             HttpHeaders headers, byte[] body) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            parkForRateLimit(accountKey);
+            SpotifyHttpResponse response = httpClient.execute(method, url, headers, body);
+            if (response.getStatusCode() != HttpStatus.TOO_MANY_REQUESTS.value()) {
+                return response;
+            }
+            rateGovernor.onThrottled(response.getHeaders());
+            if (attempt >= rateGovernor.getMaxRetries()) {
+                throw new SpotifyRateLimitedException(rateGovernor.retryAfterSeconds());
+            }
+        }
+    }
+    
+    /**
+     * Non-blocking counterpart of {@link #sendGoverned}: delayed calls are sent from a
+     * timer, tagged with the route of the request that issued them.
+     */
+    private CompletableFuture<SpotifyHttpResponse> sendGovernedAsync(String route, String accountKey, HttpMethod method, String url,
+                                                                     HttpHeaders headers, byte[] body, int retriesLeft) {
+        long waitNanos = rateGovernor.reserve(accountKey);
+        if (waitNanos < 0) {
+            return CompletableFuture.failedFuture(new SpotifyRateLimitedException(rateGovernor.retryAfterSeconds()));
+        }
+        
+        CompletableFuture<SpotifyHttpResponse> sent;
+        if (waitNanos == 0) {
+            sent = httpClient.executeAsync(method, url, headers, body);
+        } else {
+            Executor delayed = CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS, governedSendExecutor);
+            sent = CompletableFuture.supplyAsync(
+                    () -> SpotifyMetrics.callAs(route, () -> httpClient.executeAsync(method, url, headers, body)), delayed)
+                .thenCompose(future -> future);
+        }
+        
+        return sent.thenCompose(response -> {
+            if (response.getStatusCode() != HttpStatus.TOO_MANY_REQUESTS.value()) {
+                return CompletableFuture.completedFuture(response);
+            }
+            rateGovernor.onThrottled(response.getHeaders());
+            if (retriesLeft <= 0) {
+                return CompletableFuture.failedFuture(new SpotifyRateLimitedException(rateGovernor.retryAfterSeconds()));
+            }
+            return sendGovernedAsync(route, accountKey, method, url, headers, body, retriesLeft - 1);
+        });
+    }
+    
+    private void parkForRateLimit(String accountKey) throws InterruptedException {
+        long waitNanos = rateGovernor.reserve(accountKey);
+        if (waitNanos < 0) {
+            throw new SpotifyRateLimitedException(rateGovernor.retryAfterSeconds());
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+    
+    /**
+     * Serves the last good response of an idempotent GET while throttled, or rethrows.
+     */
+    private JsonNode lastGoodOrThrow(String accountKey, String endpoint, HttpMethod method, SpotifyRateLimitedException e) {
+        JsonNode lastGood = method == HttpMethod.GET ? rateGovernor.lastGood(accountKey, endpoint) : null;
+        if (lastGood == null) {
+            throw e;
+        }
+        return lastGood;
+    }
+    
+    /**
+     * Rate budgets are per Spotify account. The account id is resolved as soon as a
+     * session's token is obtained or loaded from the database, so the "session:" key is
+     * a fallback for the /me call that resolves it and for sessions whose /me call
+     * failed; those get a budget of their own until a later resolve succeeds.
+     */
+    private String rateAccountKey(String sessionId) {
+        String accountId = sessionAccounts.get(sessionId);
+        return accountId != null ? accountId : "session:" + sessionId;
+    }
+    
+    /**
+     * Runs a Spotify search. Prefix queries the local {@link TypeAheadIndex} can fill are
+     * answered without an upstream call; everything else goes through the shared
+     * {@link SearchResultCache} when enabled. The session must still hold a valid token,
+     * even for locally answered queries.
+     *
+     * @param sessionId session id used to look up tokens
+     * @param q         free-text query
+     * @param type      comma-separated item types
+     * @param limit     max results
+     * @param market    ISO country code (may be null)
+     * @return future with the search results, or null if unauthorized or the call failed;
+     *         never completed exceptionally
+     */
+    public CompletableFuture<JsonNode> search(String sessionId, String q, String type, int limit, String market) {
+        if (getValidAccessToken(sessionId) == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        // Availability differs per market, so market-specific searches always go upstream
+        if (market == null || market.isBlank()) {
+            JsonNode local = typeAheadIndex.complete(q, type, limit);
+            if (local != null) {
+                return CompletableFuture.completedFuture(local);
+            }
+        }
+        
+        String endpoint = searchEndpoint(q, type, limit, market);
+        if (!searchCache.isEnabled()) {
+            return makeSpotifyApiCallAsync(sessionId, endpoint, HttpMethod.GET, null).thenApply(this::indexForTypeAhead);
+        }
+        return searchCache.get(SearchResultCache.key(q, type, limit, market),
+                () -> makeSpotifyApiCallAsync(sessionId, endpoint, HttpMethod.GET, null).thenApply(this::indexForTypeAhead));
+    }
+    
+    /**
+     * Fetches the current playback state and feeds its track into the type-ahead index.
+     *
+     * @param sessionId session id used to look up tokens
+     * @return future with the playback JSON, {@link #NOTHING_PLAYING} if nothing is
+     *         playing, or null if unauthorized or the call failed
+     */
+    public CompletableFuture<JsonNode> getCurrentPlaybackAsync(String sessionId) {
+        String accessToken = getValidAccessToken(sessionId);
+        if (accessToken == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return fetchCurrentPlaybackAsync(sessionId, accessToken);
+    }
+    
+    /**
+     * Fetches the current playback state with a token the caller already resolved,
+     * telling an idle player apart from a failed call. Used by the {@link PlaybackClock}.
+     *
+     * @param sessionId   session id the call is made for
+     * @param accessToken valid access token of the session
+     * @return future with the playback JSON, {@link #NOTHING_PLAYING} if Spotify answered
+     *         204, or null if the call failed; completed exceptionally only with
+     *         {@link SpotifyRateLimitedException}
+     */
+    public CompletableFuture<JsonNode> fetchCurrentPlaybackAsync(String sessionId, String accessToken) {
+        return callApiAsync(sessionId, accessToken, PLAYBACK_ENDPOINT, HttpMethod.GET, null, NOTHING_PLAYING)
+                .thenApply(this::indexForTypeAhead);
+    }
+    
+    /**
+     * Fetches several read-only parts of the player state for one poll tick. The access
+     * token is resolved once and the upstream calls run in parallel, so the tick costs
+     * the slowest call instead of the sum of all of them. With a blocking HTTP client
+     * every call but the last is started on a snapshot thread.
+     *
+     * @param sessionId session id used to look up tokens
+     * @param parts     parts to fetch: {@link #SNAPSHOT_PARTS} keys
+     * @return future with one entry per requested part (null when Spotify had nothing for
+     *         it, e.g. no active device), or null if unauthorized; completed exceptionally
+     *         only with {@link SpotifyRateLimitedException}
+     */
+    public CompletableFuture<Map<String, JsonNode>> getSnapshotAsync(String sessionId, Set<String> parts) {
+        String accessToken = getValidAccessToken(sessionId);
+        if (accessToken == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        boolean blockingClient = !"async".equals(httpMode);
+        String route = SpotifyMetrics.currentRoute();
+        Map<String, CompletableFuture<JsonNode>> calls = new LinkedHashMap<>();
+        for (String part : parts) {
+            String endpoint = SNAPSHOT_PARTS.get(part);
+            // The last call runs on the request thread once the others are on their way
+            CompletableFuture<JsonNode> call = blockingClient && calls.size() < parts.size() - 1
+                    ? CompletableFuture.supplyAsync(() -> SpotifyMetrics.callAs(route,
+                            () -> callApiAsync(sessionId, accessToken, endpoint, HttpMethod.GET, null)), snapshotExecutor)
+                        .thenCompose(future -> future)
+                    : callApiAsync(sessionId, accessToken, endpoint, HttpMethod.GET, null);
+            calls.put(part, "playback".equals(part) ? call.thenApply(this::indexForTypeAhead) : call);
+        }
+        
+        return CompletableFuture.allOf(calls.values().toArray(new CompletableFuture[0]))
+            .thenApply(done -> {
+                Map<String, JsonNode> snapshot = new LinkedHashMap<>();
+                calls.forEach((part, call) -> snapshot.put(part, call.join()));
+                return snapshot;
+            });
+    }
+    
+    private JsonNode indexForTypeAhead(JsonNode response) {
+        typeAheadIndex.ingest(response);
+        return response;
+    }
+    
+    /**
+     * Builds the /search endpoint for a normalized query, so equivalent queries hit the
+     * same cache entry and return the same upstream results.
+     */
+    public String searchEndpoint(String q, String type, int limit, String market) {
+        String endpoint = "/search?q=" + URLEncoder.encode(SearchResultCache.normalizeQuery(q), StandardCharsets.UTF_8).replace("+", "%20")
+                + "&type=" + SearchResultCache.normalizeType(type)
+                + "&limit=" + limit;
+        if (market != null && !market.isBlank()) {
+            endpoint += "&market=" + URLEncoder.encode(market.trim(), StandardCharsets.UTF_8);
+        }
+        return endpoint;
+    }
+    
+    /**
+     * Streams a read-only Web API response straight to the servlet response without
+     * buffering it as a String or parsing it into a tree. When stripFields is non-empty,
+     * or the route has a {@link ResponseProjection} whitelist, the body is piped through
+     * a streaming Jackson filter that drops the other properties; a client field list
+     * narrows the body further. The filter also points image URLs at the
+     * {@link AlbumArtCache} while that is enabled.
+     *
+     * Nothing is written unless the upstream call succeeds, so callers can still send
+     * their own error response when this returns false.
+     *
+     * @param sessionId      session id used to look up tokens
+     * @param endpoint       Spotify API endpoint path, starting with '/'
+     * @param stripFields    property names to drop at any depth (may be empty)
+     * @param fields         client field list applied on top of the route's whitelist (may be null)
+     * @param servletResponse response to write status, content type and body to
+     * @return true if the body was streamed; false if there was no valid token or the
+     *         upstream call failed
+     * @throws SpotifyRateLimitedException if throttled beyond the allowed wait
+     */
+    public boolean streamSpotifyApiCall(String sessionId, String endpoint, Set<String> stripFields,
+                                        FieldProjection fields, HttpServletResponse servletResponse) {
+        String accessToken = getValidAccessToken(sessionId);
+        if (accessToken == null) {
+            return false;
+        }
+        
+        try (SpotifyHttpStream upstream = openGovernedStream(
+                rateAccountKey(sessionId),
+                spotifyConfig.getApiBaseUrl() + endpoint,
+                apiHeaders(accessToken))) {
+            
+            if (!upstream.isSuccessful() || upstream.getStatusCode() == HttpStatus.NO_CONTENT.value()) {
+                return false;
+            }
+            
+            servletResponse.setStatus(upstream.getStatusCode());
+            servletResponse.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            servletResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
             
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                return objectMapper.readTree(response.getBody());
+            OutputStream out = servletResponse.getOutputStream();
+            if (stripFields.isEmpty() && fields == null && responseProjection.forEndpoint(endpoint) == null
+                    && !albumArtCache.isEnabled()) {
+                long contentLength = upstream.getHeaders().getContentLength();
+                if (contentLength >= 0) {
+                    servletResponse.setContentLengthLong(contentLength);
+                }
+                upstream.getBody().transferTo(out);
+            } else {
+                JsonParser projected = responseProjection.filter(objectMapper.getFactory().createParser(upstream.getBody()), endpoint);
+                try (JsonParser parser = fields != null ? fields.filter(projected) : projected;
+                     JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                    JsonStreamFilter.copyWithout(parser, generator, stripFields,
+                            albumArtCache.isEnabled() ? albumArtCache::rewrite : null);
+                }
             }
+            out.flush();
+            return true;
             
+        } catch (SpotifyRateLimitedException e) {
+            throw e;
         } catch (Exception e) {
             e.printStackTrace();
         }
         
-        return null;
+        return false;
+    }
+    
+    /**
+     * Streaming counterpart of {@link #sendGoverned} for passthrough GETs.
+     */
+    private SpotifyHttpStream openGovernedStream(String accountKey, String url, HttpHeaders headers) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            parkForRateLimit(accountKey);
+            SpotifyHttpStream upstream = httpClient.executeStreaming(HttpMethod.GET, url, headers, null);
+            if (upstream.getStatusCode() != HttpStatus.TOO_MANY_REQUESTS.value()) {
+                return upstream;
+            }
+            upstream.close();
+            rateGovernor.onThrottled(upstream.getHeaders());
+            if (attempt >= rateGovernor.getMaxRetries()) {
+                throw new SpotifyRateLimitedException(rateGovernor.retryAfterSeconds());
+            }
+        }
+    }
+    
+    private HttpHeaders apiHeaders(String accessToken) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", "Bearer " + accessToken);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return headers;
+    }
+    
+    /**
+     * Parses an upstream response, skipping the parse for /me/player bodies that match
+     * the account's previous one apart from progress_ms and timestamp.
+     */
+    private JsonNode parseApiResponse(SpotifyHttpResponse response, String endpoint, String accountKey) {
+        if (!playbackFingerprintEnabled || !PLAYBACK_ENDPOINT.equals(endpoint)
+                || !response.isSuccessful() || !response.hasBody()) {
+            return parseApiResponse(response, endpoint);
+        }
+        
+        PlaybackFingerprint.BodyFingerprint fingerprint = PlaybackFingerprint.ofBody(response.getBody());
+        ParsedPlayback previous = lastPlayback.get(accountKey);
+        if (previous != null && fingerprint.sameContent(previous.fingerprint)) {
+            ObjectNode patched = fingerprint.patch(previous.tree);
+            if (patched != null) {
+                metrics.recordParseSkipped(endpoint);
+                return patched;
+            }
+        }
+        
+        JsonNode parsed = parseApiResponse(response, endpoint);
+        if (parsed instanceof ObjectNode) {
+            lastPlayback.put(accountKey, new ParsedPlayback(fingerprint, (ObjectNode) parsed));
+        }
+        return parsed;
+    }
+    
+    /**
+     * Parses an upstream body, keeping only the route's whitelisted properties, and
+     * points its image URLs at the {@link AlbumArtCache}.
+     */
+    private JsonNode parseApiResponse(SpotifyHttpResponse response, String endpoint) {
+        if (!response.isSuccessful() || !response.hasBody()) {
+            return null;
+        }
+        long started = System.nanoTime();
+        try (JsonParser parser = responseProjection.filter(objectMapper.getFactory().createParser(response.getBody()), endpoint)) {
+            JsonNode tree = objectMapper.readTree(parser);
+            albumArtCache.rewriteImages(tree);
+            return tree;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            metrics.recordJsonParse(endpoint, started);
+        }
+    }
+    
+    /**
+     * Resolves the Spotify user id behind the given session.
+     * The id is looked up once via /me and remembered for the lifetime of the session.
+     *
+     * @param sessionId current session id
+     * @return Spotify user id, or null if the session has no valid token
+     */
+    public String resolveAccountId(String sessionId) {
+        String accountId = sessionAccounts.get(sessionId);
+        if (accountId != null) {
+            return accountId;
+        }
+        
+        JsonNode me = makeSpotifyApiCall(sessionId, "/me", HttpMethod.GET, null);
+        if (me == null || !me.hasNonNull("id")) {
+            return null;
+        }
+        
+        accountId = me.get("id").asText();
+        sessionAccounts.put(sessionId, accountId);
+        return accountId;
+    }
+    
+    /**
+     * Returns the Spotify user id for the session if it has already been resolved.
+     * Never triggers an upstream call.
+     *
+     * @param sessionId current session id
+     * @return cached Spotify user id or null
+     */
+    public String getCachedAccountId(String sessionId) {
+        return sessionAccounts.get(sessionId);
     }
     
     /**
@@ -241,11 +952,15 @@ public class SpotifyService {
      * @param sessionId current session id
      */
     public void logout(String sessionId) {
+        lastPlayback.remove("session:" + sessionId);
+        sessionAccounts.remove(sessionId);
+        tokenCache.evict(sessionId);
         try {
-            tokenRepository.deleteBySessionId(sessionId);
+            tokenStore.delete(sessionId);
         } catch (Exception e) {
             e.printStackTrace();
         }
+        cluster.sessionEnded(sessionId);
     }
     
     /**
@@ -253,10 +968,63 @@ public class SpotifyService {
      * Not intended for production use.
      */
     public void clearAllTokens() {
+        lastPlayback.clear();
+        sessionAccounts.clear();
+        tokenCache.clear();
         try {
-            tokenRepository.deleteAll();
+            tokenStore.deleteAll();
         } catch (Exception e) {
             e.printStackTrace();
         }
+        cluster.allSessionsEnded();
+    }
+    
+    /**
+     * @return access-token cache counters (hits, misses, refreshes, evictions)
+     */
+    public Map<String, Object> getTokenCacheStats() {
+        return tokenCache.getStats();
+    }
+    
+    /**
+     * @return search cache hit ratio, evictions and memory footprint
+     */
+    public Map<String, Object> getSearchCacheStats() {
+        return searchCache.getStats();
+    }
+    
+    /**
+     * @return type-ahead index size, local hit counters and lookup latency
+     */
+    public Map<String, Object> getTypeAheadStats() {
+        return typeAheadIndex.getStats();
+    }
+    
+    /**
+     * @return token write-behind queue depth and flush counters, and the outcome of the
+     *         legacy table migration
+     */
+    public Map<String, Object> getTokenStoreStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(tokenStore.getStats());
+        stats.put("legacyMigration", legacyTokenMigration.getStats());
+        return stats;
+    }
+    
+    /**
+     * @return cluster node id, lease and invalidation counters
+     */
+    public Map<String, Object> getClusterStats() {
+        return cluster.getStats();
+    }
+    
+    private static class ParsedPlayback {
+        
+        private final PlaybackFingerprint.BodyFingerprint fingerprint;
+        private final ObjectNode tree;
+        
+        private ParsedPlayback(PlaybackFingerprint.BodyFingerprint fingerprint, ObjectNode tree) {
+            this.fingerprint = fingerprint;
+            this.tree = tree;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,203 @@
+package com.example.spotifymediaplayer.service;
+
+import com.example.spotifymediaplayer.config.BackgroundExecutors;
+import com.example.spotifymediaplayer.metrics.SpotifyMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes token records of sessions that will never come back.
+ *
+ * - Session end: when the servlet container destroys an HTTP session (timeout or
+ *   invalidation), its token record and in-memory state are dropped right away, the
+ *   same way as on logout.
+ * - Scheduled sweep: catches what the listener cannot see (sessions kept by Spring
+ *   Session in cluster mode, rows left by a crash). A token is refreshed whenever its
+ *   session uses it close to expiry, so a row whose access token expired more than one
+ *   session timeout ago belongs to a session that has timed out. Such rows are deleted
+ *   oldest first, in batches of batch-size, at most max-batches per run, using the
+ *   expires_at index. Idle entries of the access-token cache are dropped as well.
+ *
+ * In cluster mode one node at a time runs the sweep, guarded by a task lease.
+ */
+@Component
+public class TokenReaper {
+    
+    private static final String TASK = "token-reaper";
+    
+    @Autowired
+    private TokenWriteBehind tokenStore;
+    
+    @Autowired
+    private AccessTokenCache tokenCache;
+    
+    @Autowired
+    private SpotifyService spotifyService;
+    
+    @Autowired
+    private ClusterCoordinator cluster;
+    
+    @Autowired
+    private BackgroundExecutors backgroundExecutors;
+    
+    @Autowired
+    private MeterRegistry registry;
+    
+    @Value("${spotify.token-reaper.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${spotify.token-reaper.interval-ms:300000}")
+    private long intervalMs;
+    
+    @Value("${spotify.token-reaper.batch-size:1000}")
+    private int batchSize;
+    
+    @Value("${spotify.token-reaper.max-batches:50}")
+    private int maxBatches;
+    
+    /** How long after expiry a row is kept; defaults to the HTTP session timeout */
+    @Value("${spotify.token-reaper.grace:${server.servlet.session.timeout:30m}}")
+    private Duration grace;
+    
+    private ScheduledExecutorService scheduler;
+    
+    private Counter sweptRows;
+    private Counter sessionRows;
+    private Counter cacheEvictions;
+    private Timer sweepTimer;
+    private Timer sessionTimer;
+    
+    private final AtomicLong sweeps = new AtomicLong();
+    private final AtomicLong skippedSweeps = new AtomicLong();
+    private final AtomicLong sessionsEnded = new AtomicLong();
+    private volatile long lastSweepRows;
+    private volatile long lastSweepMillis;
+    
+    @PostConstruct
+    void start() {
+        sweptRows = Counter.builder("spotify.token.reaper.rows").tag("trigger", "sweep")
+                .description("Token records deleted by the scheduled sweep").register(registry);
+        sessionRows = Counter.builder("spotify.token.reaper.rows").tag("trigger", "session-destroyed")
+                .description("Token records deleted when their HTTP session ended").register(registry);
+        cacheEvictions = Counter.builder("spotify.token.reaper.cache.evictions")
+                .description("Idle access-token cache entries dropped by the sweep").register(registry);
+        sweepTimer = Timer.builder("spotify.token.reaper.duration").tag("trigger", "sweep")
+                .description("Time spent in scheduled sweeps").register(registry);
+        sessionTimer = Timer.builder("spotify.token.reaper.duration").tag("trigger", "session-destroyed")
+                .description("Time spent cleaning up ended sessions").register(registry);
+        
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(backgroundExecutors.threadFactory("token-reaper"));
+        scheduler.scheduleWithFixedDelay(this::sweepQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+    
+    /**
+     * Drops everything kept for an HTTP session that has ended.
+     *
+     * @param sessionId id of the destroyed session
+     */
+    public void sessionDestroyed(String sessionId) {
+        if (!enabled) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            sessionsEnded.incrementAndGet();
+            // Most sessions never log in; only those with a token have anything to drop
+            if (tokenStore.find(sessionId).isPresent()) {
+                // Same cleanup as logout: in-memory state, token record, other nodes
+                spotifyService.logout(sessionId);
+                sessionRows.increment();
+            }
+        } catch (Exception e) {
+            // The sweep removes the record later
+            e.printStackTrace();
+        } finally {
+            sessionTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    private void sweepQuietly() {
+        try {
+            SpotifyMetrics.runAs("scheduler:" + TASK, this::sweep);
+        } catch (Exception e) {
+            // Keep the schedule alive; the next run picks up where this one stopped
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Deletes token records that expired more than the grace period ago, in bounded
+     * batches, and drops idle cache entries.
+     *
+     * @return number of deleted records
+     */
+    public long sweep() {
+        if (!cluster.tryAcquireTaskLease(TASK, Duration.ofMillis(intervalMs * 2))) {
+            skippedSweeps.incrementAndGet();
+            return 0;
+        }
+        long started = System.nanoTime();
+        LocalDateTime cutoff = LocalDateTime.now().minus(grace);
+        long deleted = 0;
+        try {
+            int batches = 0;
+            int batch;
+            do {
+                batch = tokenStore.purgeExpired(cutoff, batchSize);
+                deleted += batch;
+                sweptRows.increment(batch);
+            } while (batch == batchSize && ++batches < maxBatches && !Thread.currentThread().isInterrupted());
+            cacheEvictions.increment(tokenCache.evictIdle(cutoff));
+        } finally {
+            long elapsed = System.nanoTime() - started;
+            sweepTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            sweeps.incrementAndGet();
+            lastSweepRows = deleted;
+            lastSweepMillis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+        }
+        return deleted;
+    }
+    
+    /**
+     * @return sweep and session-end counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("graceMinutes", grace.toMinutes());
+        stats.put("sweeps", sweeps.get());
+        stats.put("skippedSweeps", skippedSweeps.get());
+        stats.put("sweptRows", (long) sweptRows.count());
+        stats.put("lastSweepRows", lastSweepRows);
+        stats.put("lastSweepMillis", lastSweepMillis);
+        stats.put("sessionsEnded", sessionsEnded.get());
+        stats.put("sessionRows", (long) sessionRows.count());
+        stats.put("cacheEvictions", (long) cacheEvictions.count());
+        return stats;
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.spotifymediaplayer.service;
+
+import com.example.spotifymediaplayer.config.BackgroundExecutors;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes access tokens ahead of expiry so request threads do not have to.
+ *
+ * Every token put into the {@link AccessTokenCache} (exchange, load from the store,
+ * refresh) is scheduled in an expiry-ordered {@link DelayQueue} for refresh-ahead-minutes
+ * before it expires, minus a random jitter so tokens issued together are not refreshed
+ * together. A dispatcher thread takes entries as they come due and hands them to a fixed
+ * pool of workers; when all workers are busy it waits, so a burst never runs more than
+ * that many refreshes at once. Entries replaced by a later put are skipped when they come
+ * due. Sessions evicted from the cache or idle for longer than active-window-minutes are
+ * dropped; their next request loads and schedules them again.
+ *
+ * The request path keeps its inline refresh for tokens under 5 minutes from expiry, as a
+ * fallback when a scheduled refresh failed or ran late.
+ */
+@Component
+public class TokenRefreshScheduler {
+    
+    /** Remaining lifetime below which the request path refreshes inline */
+    private static final long INLINE_REFRESH_MINUTES = 5;
+    
+    @Autowired
+    private AccessTokenCache tokenCache;
+    
+    @Autowired
+    private SpotifyService spotifyService;
+    
+    @Autowired
+    private BackgroundExecutors backgroundExecutors;
+    
+    @Autowired
+    private MeterRegistry registry;
+    
+    @Value("${spotify.token-cache.refresh-ahead-minutes:10}")
+    private long refreshAheadMinutes;
+    
+    @Value("${spotify.token-cache.active-window-minutes:30}")
+    private long activeWindowMinutes;
+    
+    /** Refreshes are spread over this many seconds before the refresh-ahead point */
+    @Value("${spotify.token-refresh.jitter-seconds:120}")
+    private long jitterSeconds;
+    
+    @Value("${spotify.token-refresh.workers:4}")
+    private int workerCount;
+    
+    /** Delay before a failed refresh is tried again, while the token is still valid */
+    @Value("${spotify.token-refresh.retry-seconds:30}")
+    private long retrySeconds;
+    
+    private final DelayQueue<ScheduledRefresh> queue = new DelayQueue<>();
+    /** Current entry per session; older entries still in the queue are stale */
+    private final Map<String, ScheduledRefresh> scheduled = new ConcurrentHashMap<>();
+    
+    private Thread dispatcher;
+    private ExecutorService workers;
+    private Semaphore idleWorkers;
+    
+    private Counter refreshed;
+    private Counter failed;
+    private Counter late;
+    private Counter skippedIdle;
+    private Counter skippedEvicted;
+    
+    @PostConstruct
+    void start() {
+        refreshed = Counter.builder("spotify.token.refresh.proactive").tag("outcome", "refreshed")
+                .description("Tokens refreshed ahead of expiry").register(registry);
+        failed = Counter.builder("spotify.token.refresh.proactive").tag("outcome", "failed")
+                .description("Scheduled refreshes that failed").register(registry);
+        late = Counter.builder("spotify.token.refresh.proactive.late")
+                .description("Scheduled refreshes that started inside the inline refresh window").register(registry);
+        skippedIdle = Counter.builder("spotify.token.refresh.proactive").tag("outcome", "idle")
+                .description("Scheduled refreshes dropped because the session was idle").register(registry);
+        skippedEvicted = Counter.builder("spotify.token.refresh.proactive").tag("outcome", "evicted")
+                .description("Scheduled refreshes dropped because the session left the cache").register(registry);
+        Gauge.builder("spotify.token.refresh.scheduled", scheduled, Map::size)
+                .description("Sessions with a scheduled refresh").register(registry);
+        
+        idleWorkers = new Semaphore(workerCount);
+        workers = Executors.newFixedThreadPool(workerCount, backgroundExecutors.threadFactory("token-refresh"));
+        dispatcher = backgroundExecutors.threadFactory("token-refresh-dispatcher").newThread(this::dispatch);
+        dispatcher.start();
+        
+        tokenCache.addPutListener(this::schedule);
+    }
+    
+    @PreDestroy
+    void stop() {
+        dispatcher.interrupt();
+        workers.shutdownNow();
+    }
+    
+    /**
+     * Schedules the next refresh of a session from the expiry of its current token.
+     * Replaces any earlier schedule for the session.
+     */
+    void schedule(String sessionId, AccessTokenCache.CachedToken token) {
+        long jitterMillis = jitterSeconds > 0 ? ThreadLocalRandom.current().nextLong(jitterSeconds * 1000) : 0;
+        LocalDateTime due = token.getExpiresAt().minusMinutes(refreshAheadMinutes).minus(Duration.ofMillis(jitterMillis));
+        enqueue(new ScheduledRefresh(sessionId, due));
+    }
+    
+    private void enqueue(ScheduledRefresh entry) {
+        scheduled.put(entry.sessionId, entry);
+        queue.add(entry);
+    }
+    
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                ScheduledRefresh entry = queue.take();
+                if (scheduled.get(entry.sessionId) != entry) {
+                    continue;
+                }
+                idleWorkers.acquire();
+                try {
+                    workers.execute(() -> {
+                        try {
+                            refresh(entry);
+                        } finally {
+                            idleWorkers.release();
+                        }
+                    });
+                } catch (Exception e) {
+                    // Shutting down
+                    idleWorkers.release();
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+    
+    private void refresh(ScheduledRefresh entry) {
+        try {
+            AccessTokenCache.CachedToken current = tokenCache.peek(entry.sessionId);
+            LocalDateTime now = LocalDateTime.now();
+            if (current == null) {
+                scheduled.remove(entry.sessionId, entry);
+                skippedEvicted.increment();
+                return;
+            }
+            if (current.getLastAccess().isBefore(now.minusMinutes(activeWindowMinutes))) {
+                scheduled.remove(entry.sessionId, entry);
+                skippedIdle.increment();
+                return;
+            }
+            if (current.getExpiresAt().isBefore(now.plusMinutes(INLINE_REFRESH_MINUTES))) {
+                late.increment();
+            }
+            
+            // A successful refresh puts the new token, which schedules the next refresh
+            if (spotifyService.refreshTokenAhead(entry.sessionId, current) != null) {
+                refreshed.increment();
+                return;
+            }
+            failed.increment();
+            LocalDateTime retryAt = now.plusSeconds(retrySeconds);
+            if (current.getExpiresAt().isAfter(retryAt) && scheduled.get(entry.sessionId) == entry) {
+                enqueue(new ScheduledRefresh(entry.sessionId, retryAt));
+            } else {
+                scheduled.remove(entry.sessionId, entry);
+            }
+        } catch (Exception e) {
+            scheduled.remove(entry.sessionId, entry);
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * @return scheduled sessions, queue length and refresh outcome counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("scheduledSessions", scheduled.size());
+        stats.put("queueLength", queue.size());
+        stats.put("busyWorkers", workerCount - idleWorkers.availablePermits());
+        stats.put("workers", workerCount);
+        stats.put("refreshed", (long) refreshed.count());
+        stats.put("failed", (long) failed.count());
+        stats.put("late", (long) late.count());
+        stats.put("skippedIdle", (long) skippedIdle.count());
+        stats.put("skippedEvicted", (long) skippedEvicted.count());
+        return stats;
+    }
+    
+    /** Queue entry: a session and when its refresh is due */
+    private static class ScheduledRefresh implements Delayed {
+        
+        private final String sessionId;
+        private final long dueNanos;
+        
+        private ScheduledRefresh(String sessionId, LocalDateTime due) {
+            this.sessionId = sessionId;
+            this.dueNanos = System.nanoTime() + Duration.between(LocalDateTime.now(), due).toNanos();
+        }
+        
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueNanos, ((ScheduledRefresh) other).dueNanos);
+        }
+    }
+}
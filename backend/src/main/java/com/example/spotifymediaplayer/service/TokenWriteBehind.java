@@ -0,0 +1,347 @@
+package com.example.spotifymediaplayer.service;
+
+import com.example.spotifymediaplayer.config.BackgroundExecutors;
+import com.example.spotifymediaplayer.entity.UserToken;
+import com.example.spotifymediaplayer.repository.UserTokenRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind persistence stage for {@link UserToken} records.
+ *
+ * Token writes are queued per session instead of running as their own transaction on the
+ * request thread. Repeated writes for the same session before a flush collapse into the
+ * latest one. A background flusher writes the queue in JDBC batches, either on a short
+ * interval or as soon as the size threshold is reached. Inserts and updates use a
+ * single upsert statement (MERGE on H2, ON CONFLICT on PostgreSQL), so there is no
+ * delete+insert pair.
+ *
+ * Reads go through {@link #find} so a session always sees its own queued writes. On
+ * shutdown the queue is drained before the data source closes. Only a hard crash can
+ * lose writes, and at most one flush interval's worth.
+ */
+@Component
+public class TokenWriteBehind {
+    
+    private static final String MERGE_SQL =
+            "MERGE INTO session_tokens t "
+            + "USING (VALUES (CAST(? AS VARBINARY(" + UserToken.KEY_LENGTH + ")), "
+            + "CAST(? AS VARCHAR(" + UserToken.TOKEN_LENGTH + ")), CAST(? AS VARCHAR(" + UserToken.TOKEN_LENGTH + ")), "
+            + "CAST(? AS TIMESTAMP))) "
+            + "s(session_key, access_token, refresh_token, expires_at) "
+            + "ON t.session_key = s.session_key "
+            + "WHEN MATCHED THEN UPDATE SET access_token = s.access_token, refresh_token = s.refresh_token, "
+            + "expires_at = s.expires_at "
+            + "WHEN NOT MATCHED THEN INSERT (session_key, access_token, refresh_token, expires_at) "
+            + "VALUES (s.session_key, s.access_token, s.refresh_token, s.expires_at)";
+    
+    private static final String ON_CONFLICT_SQL =
+            "INSERT INTO session_tokens (session_key, access_token, refresh_token, expires_at) "
+            + "VALUES (?, ?, ?, ?) "
+            + "ON CONFLICT (session_key) DO UPDATE SET access_token = EXCLUDED.access_token, "
+            + "refresh_token = EXCLUDED.refresh_token, expires_at = EXCLUDED.expires_at";
+    
+    private static final String DELETE_SQL = "DELETE FROM session_tokens WHERE session_key = ?";
+    
+    private static final String EXPIRED_KEYS_SQL =
+            "SELECT session_key FROM session_tokens WHERE expires_at < ? ORDER BY expires_at LIMIT ?";
+    
+    private static final String DELETE_EXPIRED_SQL = "DELETE FROM session_tokens WHERE session_key = ? AND expires_at < ?";
+    
+    @Autowired
+    private UserTokenRepository tokenRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Autowired
+    private BackgroundExecutors backgroundExecutors;
+    
+    /** When disabled every write is flushed on the calling thread (write-through) */
+    @Value("${spotify.token-store.write-behind.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${spotify.token-store.write-behind.flush-interval-ms:200}")
+    private long flushIntervalMs;
+    
+    @Value("${spotify.token-store.write-behind.batch-size:500}")
+    private int batchSize;
+    
+    /** Other nodes read the table directly, so in cluster mode writes go through at once */
+    @Value("${spotify.cluster.enabled:false}")
+    private boolean clustered;
+    
+    /** Latest queued write per session; a null token marks a delete */
+    private final Map<String, PendingWrite> pending = new ConcurrentHashMap<>();
+    /** Writes taken by the running flush; still visible to readers until committed */
+    private final Map<String, PendingWrite> flushing = new ConcurrentHashMap<>();
+    /** Serializes flushes so writes for a session reach the database in order */
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    
+    private String upsertSql;
+    private ScheduledExecutorService flusher;
+    
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private volatile long lastFlushMillis;
+    
+    @PostConstruct
+    void start() {
+        String product = jdbcTemplate.execute((Connection connection) -> connection.getMetaData().getDatabaseProductName());
+        upsertSql = "PostgreSQL".equalsIgnoreCase(product) ? ON_CONFLICT_SQL : MERGE_SQL;
+        
+        flusher = Executors.newSingleThreadScheduledExecutor(backgroundExecutors.threadFactory("token-write-behind"));
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Drains the queue before the data source goes away. Retries a few times so a
+     * transient database error during shutdown does not drop tokens.
+     */
+    @PreDestroy
+    void drain() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (int attempt = 0; attempt < 3 && !pending.isEmpty(); attempt++) {
+            flushQuietly();
+        }
+        if (!pending.isEmpty()) {
+            System.err.println("Token write-behind: " + pending.size() + " writes could not be flushed on shutdown");
+        }
+    }
+    
+    /**
+     * Queues an insert or update of the session's token record.
+     *
+     * @param token token state to persist; copied, so the caller may keep mutating it
+     */
+    public void save(UserToken token) {
+        enqueue(token.getSessionId(), new PendingWrite(copy(token)));
+    }
+    
+    /**
+     * Queues removal of the session's token record.
+     *
+     * @param sessionId session whose token should be deleted
+     */
+    public void delete(String sessionId) {
+        enqueue(sessionId, new PendingWrite(null));
+    }
+    
+    /**
+     * Drops all queued writes and deletes every token record right away.
+     */
+    public void deleteAll() {
+        synchronized (flushLock) {
+            pending.clear();
+            tokenRepository.deleteAllInBatch();
+        }
+    }
+    
+    /**
+     * Looks up a session's token, preferring a queued write over the stored record.
+     *
+     * @param sessionId session id
+     * @return token record (a copy that is safe to modify), or empty if none exists or a
+     *         delete is queued
+     */
+    public Optional<UserToken> find(String sessionId) {
+        PendingWrite write = pending.get(sessionId);
+        if (write == null) {
+            write = flushing.get(sessionId);
+        }
+        if (write != null) {
+            return write.token != null ? Optional.of(copy(write.token)) : Optional.empty();
+        }
+        return tokenRepository.findBySessionId(sessionId);
+    }
+    
+    private void enqueue(String sessionId, PendingWrite write) {
+        enqueued.incrementAndGet();
+        if (pending.put(sessionId, write) != null) {
+            coalesced.incrementAndGet();
+        }
+        
+        if (!enabled || clustered) {
+            flushQuietly();
+        } else if (pending.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (Exception e) {
+                // Shutting down; drain() takes care of the queue
+                flushRequested.set(false);
+            }
+        }
+    }
+    
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            // Keep the flusher alive; failed writes were re-queued
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Writes all queued changes in one transaction, using JDBC batches of at most
+     * batch-size rows. Writes that fail are put back unless a newer write for the same
+     * session was queued in the meantime.
+     */
+    void flush() {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+            if (pending.isEmpty()) {
+                return;
+            }
+            
+            Map<String, PendingWrite> drained = new LinkedHashMap<>();
+            for (Map.Entry<String, PendingWrite> entry : pending.entrySet()) {
+                flushing.put(entry.getKey(), entry.getValue());
+                if (pending.remove(entry.getKey(), entry.getValue())) {
+                    drained.put(entry.getKey(), entry.getValue());
+                }
+            }
+            
+            List<Object[]> upserts = new ArrayList<>();
+            List<Object[]> deletes = new ArrayList<>();
+            for (Map.Entry<String, PendingWrite> entry : drained.entrySet()) {
+                UserToken token = entry.getValue().token;
+                if (token == null) {
+                    deletes.add(new Object[] {UserToken.keyOf(entry.getKey())});
+                } else {
+                    upserts.add(upsertRow(token));
+                }
+            }
+            
+            long started = System.nanoTime();
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    batchUpdate(DELETE_SQL, deletes);
+                    batchUpdate(upsertSql, upserts);
+                });
+                flushedRows.addAndGet(drained.size());
+                lastFlushMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            } catch (RuntimeException e) {
+                flushFailures.incrementAndGet();
+                drained.forEach(pending::putIfAbsent);
+                throw e;
+            } finally {
+                flushing.clear();
+            }
+        }
+    }
+    
+    /**
+     * Writes token records right away in one transaction, bypassing the queue. Used for
+     * bulk loads such as the legacy table migration; a queued write for the same session
+     * still wins on its next flush.
+     *
+     * @param tokens records to upsert
+     */
+    public void saveAllNow(List<UserToken> tokens) {
+        List<Object[]> upserts = new ArrayList<>(tokens.size());
+        for (UserToken token : tokens) {
+            upserts.add(upsertRow(token));
+        }
+        transactionTemplate.executeWithoutResult(status -> batchUpdate(upsertSql, upserts));
+    }
+    
+    private static Object[] upsertRow(UserToken token) {
+        return new Object[] {
+            token.getSessionKey(),
+            token.getAccessToken(),
+            token.getRefreshToken(),
+            Timestamp.valueOf(token.getExpiresAt())
+        };
+    }
+    
+    /**
+     * Deletes up to limit records whose access token expired before the cutoff, oldest
+     * first. A record refreshed between the scan and the delete is kept.
+     *
+     * @param expiredBefore cutoff on expires_at
+     * @param limit         maximum number of records to delete
+     * @return number of deleted records
+     */
+    public int purgeExpired(LocalDateTime expiredBefore, int limit) {
+        Timestamp cutoff = Timestamp.valueOf(expiredBefore);
+        List<Object[]> rows = jdbcTemplate.query(EXPIRED_KEYS_SQL,
+                (row, rowNum) -> new Object[] {row.getBytes(1), cutoff}, cutoff, limit);
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        int deleted = 0;
+        for (int count : jdbcTemplate.batchUpdate(DELETE_EXPIRED_SQL, rows)) {
+            deleted += Math.max(count, 0);
+        }
+        return deleted;
+    }
+    
+    private void batchUpdate(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += batchSize) {
+            jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(rows.size(), from + batchSize)));
+            batches.incrementAndGet();
+        }
+    }
+    
+    private static UserToken copy(UserToken token) {
+        return new UserToken(token.getSessionId(), token.getAccessToken(), token.getRefreshToken(), token.getExpiresAt());
+    }
+    
+    /**
+     * @return queue depth, coalescing and flush counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled && !clustered);
+        stats.put("pending", pending.size());
+        stats.put("enqueued", enqueued.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("flushedRows", flushedRows.get());
+        stats.put("batches", batches.get());
+        stats.put("flushFailures", flushFailures.get());
+        stats.put("lastFlushMillis", lastFlushMillis);
+        return stats;
+    }
+    
+    private static class PendingWrite {
+        
+        private final UserToken token;
+        
+        private PendingWrite(UserToken token) {
+            this.token = token;
+        }
+    }
+}
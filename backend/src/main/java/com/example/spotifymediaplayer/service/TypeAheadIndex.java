@@ -0,0 +1,473 @@
+package com.example.spotifymediaplayer.service;
+
+import com.example.spotifymediaplayer.config.BackgroundExecutors;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory prefix index over tracks and artists the backend has already seen in
+ * search results, playback state and queues.
+ *
+ * Type-ahead queries are answered locally when the index alone can fill the requested
+ * number of results, so each keystroke does not cost a Spotify round-trip. Lookups run
+ * against an immutable snapshot: all index keys (names, the word suffixes of names,
+ * and artist names for tracks) are sorted and packed into one char array, and a prefix
+ * query is a binary search followed by a short forward scan. Ingestion only marks the
+ * index dirty; a background thread rebuilds the snapshot at a fixed interval.
+ */
+@Component
+public class TypeAheadIndex {
+    
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    
+    /** Match quality of an index key, best first */
+    private static final byte RANK_NAME = 0;
+    private static final byte RANK_NAME_WORD = 1;
+    private static final byte RANK_ARTIST = 2;
+    
+    /** Upper bound on keys scanned per lookup, so very short prefixes stay cheap */
+    private static final int MAX_SCAN = 4096;
+    
+    @Autowired
+    private BackgroundExecutors backgroundExecutors;
+    
+    @Value("${spotify.typeahead.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${spotify.typeahead.max-items:50000}")
+    private int maxItems;
+    
+    @Value("${spotify.typeahead.rebuild-interval-ms:1000}")
+    private long rebuildIntervalMs;
+    
+    private final JsonNodeFactory nodes = JsonNodeFactory.instance;
+    
+    /** Items keyed by kind and Spotify id, least recently seen first; guarded by {@code this} */
+    private final LinkedHashMap<String, Item> items = new LinkedHashMap<>(1024, 0.75f, true);
+    private volatile boolean dirty;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    
+    private ScheduledExecutorService indexer;
+    
+    private final AtomicLong ingested = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong servedLocally = new AtomicLong();
+    private final AtomicLong lookupNanos = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private volatile long lastRebuildMicros;
+    
+    @PostConstruct
+    void start() {
+        indexer = Executors.newSingleThreadScheduledExecutor(backgroundExecutors.threadFactory("typeahead-indexer"));
+        indexer.scheduleWithFixedDelay(this::rebuildIfDirty, rebuildIntervalMs, rebuildIntervalMs, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    void stop() {
+        indexer.shutdownNow();
+    }
+    
+    /**
+     * Normalizes text for prefix matching: strips accents, lower-cases and collapses
+     * whitespace, so "Beyoncé" is found by "beyonce".
+     */
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String stripped = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        return WHITESPACE.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+    
+    /**
+     * Adds the tracks and artists found in a Web API response to the index.
+     * Understands search results, playback state and queue responses; anything else
+     * is ignored. The given node is not retained or modified.
+     *
+     * @param response parsed Spotify response (may be null)
+     */
+    public void ingest(JsonNode response) {
+        if (!enabled || response == null) {
+            return;
+        }
+        
+        response.path("tracks").path("items").forEach(this::addTrack);
+        response.path("artists").path("items").forEach(this::addArtist);
+        addTrack(response.path("item"));
+        addTrack(response.path("currently_playing"));
+        response.path("queue").forEach(this::addTrack);
+    }
+    
+    private void addTrack(JsonNode track) {
+        String id = track.path("id").asText("");
+        String name = track.path("name").asText("");
+        if (id.isEmpty() || name.isEmpty() || !track.path("artists").isArray()) {
+            // Not a track (missing, or a podcast episode)
+            return;
+        }
+        
+        ObjectNode slim = nodes.objectNode();
+        slim.put("id", id);
+        slim.put("name", name);
+        copyFields(track, slim, "uri", "duration_ms");
+        ArrayNode artists = slim.putArray("artists");
+        List<String> artistNames = new ArrayList<>();
+        for (JsonNode artist : track.path("artists")) {
+            ObjectNode slimArtist = slimArtist(artist);
+            artists.add(slimArtist);
+            artistNames.add(artist.path("name").asText(""));
+            if (slimArtist.hasNonNull("id")) {
+                remember(new Item(false, slimArtist, slimArtist.path("name").asText(""), List.of()), false);
+            }
+        }
+        JsonNode album = track.path("album");
+        if (album.isObject()) {
+            ObjectNode slimAlbum = slim.putObject("album");
+            copyFields(album, slimAlbum, "id", "name", "images");
+        }
+        
+        remember(new Item(true, slim, name, artistNames), true);
+    }
+    
+    private void addArtist(JsonNode artist) {
+        if (artist.path("id").asText("").isEmpty() || artist.path("name").asText("").isEmpty()) {
+            return;
+        }
+        ObjectNode slim = slimArtist(artist);
+        copyFields(artist, slim, "images");
+        remember(new Item(false, slim, artist.path("name").asText(), List.of()), true);
+    }
+    
+    private ObjectNode slimArtist(JsonNode artist) {
+        ObjectNode slim = nodes.objectNode();
+        copyFields(artist, slim, "id", "name", "uri");
+        return slim;
+    }
+    
+    /** Copies the fields that are present in the source; missing ones are left out */
+    private static void copyFields(JsonNode source, ObjectNode target, String... fields) {
+        for (String field : fields) {
+            JsonNode value = source.get(field);
+            if (value != null) {
+                target.set(field, value);
+            }
+        }
+    }
+    
+    /**
+     * Stores an item, counting repeat sightings. A simplified artist taken from a track
+     * does not replace a full artist object that is already indexed.
+     */
+    private void remember(Item item, boolean replace) {
+        String key = (item.track ? "track:" : "artist:") + item.node.path("id").asText();
+        synchronized (this) {
+            Item existing = items.get(key);
+            if (existing != null) {
+                item.seen = existing.seen + 1;
+                if (!replace) {
+                    existing.seen = item.seen;
+                    return;
+                }
+            }
+            items.put(key, item);
+            
+            Iterator<Item> eldest = items.values().iterator();
+            while (items.size() > maxItems) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        ingested.incrementAndGet();
+        dirty = true;
+    }
+    
+    /**
+     * Looks up a track seen in an earlier response.
+     *
+     * @param uri Spotify track URI ("spotify:track:{id}")
+     * @return slimmed track (id, name, uri, duration_ms, artists, album), or null if the
+     *         track has not been seen or has been evicted
+     */
+    public JsonNode findTrack(String uri) {
+        if (uri == null || !uri.startsWith("spotify:track:")) {
+            return null;
+        }
+        Item item;
+        synchronized (this) {
+            item = items.get("track:" + uri.substring("spotify:track:".length()));
+        }
+        return item != null ? item.node : null;
+    }
+    
+    /**
+     * Answers a search from the local index if it can fill the whole result.
+     *
+     * @param q     free-text query (treated as a prefix)
+     * @param type  comma-separated item types; only "track" and "artist" are indexed
+     * @param limit number of results wanted per type
+     * @return search response shaped like Spotify's ({"tracks": {"items": [...]}}),
+     *         or null if the upstream search is needed
+     */
+    public JsonNode complete(String q, String type, int limit) {
+        if (!enabled) {
+            return null;
+        }
+        String prefix = normalize(q);
+        String[] types = SearchResultCache.normalizeType(type).split(",");
+        if (prefix.isEmpty() || limit <= 0) {
+            return null;
+        }
+        for (String t : types) {
+            if (!t.equals("track") && !t.equals("artist")) {
+                return null;
+            }
+        }
+        
+        long started = System.nanoTime();
+        lookups.incrementAndGet();
+        try {
+            Snapshot snap = snapshot;
+            Map<Integer, Byte> matches = snap.match(prefix);
+            
+            ObjectNode result = nodes.objectNode();
+            for (String t : types) {
+                boolean track = t.equals("track");
+                List<Map.Entry<Integer, Byte>> candidates = new ArrayList<>();
+                for (Map.Entry<Integer, Byte> match : matches.entrySet()) {
+                    if (snap.items[match.getKey()].track == track) {
+                        candidates.add(match);
+                    }
+                }
+                if (candidates.size() < limit) {
+                    return null;
+                }
+                
+                candidates.sort(Comparator.<Map.Entry<Integer, Byte>>comparingInt(Map.Entry::getValue)
+                        .thenComparing(e -> -snap.seen[e.getKey()])
+                        .thenComparing(e -> snap.items[e.getKey()].name));
+                
+                ObjectNode page = result.putObject(track ? "tracks" : "artists");
+                ArrayNode pageItems = page.putArray("items");
+                for (int i = 0; i < limit; i++) {
+                    pageItems.add(snap.items[candidates.get(i).getKey()].node);
+                }
+                page.put("limit", limit);
+                page.put("offset", 0);
+                page.put("total", candidates.size());
+            }
+            
+            servedLocally.incrementAndGet();
+            return result;
+        } finally {
+            lookupNanos.addAndGet(System.nanoTime() - started);
+        }
+    }
+    
+    private void rebuildIfDirty() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        
+        try {
+            long started = System.nanoTime();
+            Item[] current;
+            synchronized (this) {
+                current = items.values().toArray(new Item[0]);
+            }
+            snapshot = Snapshot.build(current);
+            rebuilds.incrementAndGet();
+            lastRebuildMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * @return index size, lookup counters and average lookup latency
+     */
+    public Map<String, Object> getStats() {
+        Snapshot snap = snapshot;
+        long lookupCount = lookups.get();
+        
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("items", snap.items.length);
+        stats.put("keys", snap.keyItem.length);
+        stats.put("keyChars", snap.chars.length);
+        stats.put("ingested", ingested.get());
+        stats.put("lookups", lookupCount);
+        stats.put("servedLocally", servedLocally.get());
+        stats.put("avgLookupMicros", lookupCount > 0 ? lookupNanos.get() / 1000.0 / lookupCount : 0.0);
+        stats.put("rebuilds", rebuilds.get());
+        stats.put("lastRebuildMicros", lastRebuildMicros);
+        return stats;
+    }
+    
+    /** Indexed track or artist; the node is shared with responses and never modified */
+    private static class Item {
+        
+        private final boolean track;
+        private final ObjectNode node;
+        private final String name;
+        private final List<String> artistNames;
+        private volatile int seen = 1;
+        
+        private Item(boolean track, ObjectNode node, String name, List<String> artistNames) {
+            this.track = track;
+            this.node = node;
+            this.name = name;
+            this.artistNames = artistNames;
+        }
+    }
+    
+    /**
+     * Immutable sorted key array. Key i is chars[starts[i] .. starts[i + 1]) and points
+     * at items[keyItem[i]] with match quality keyRank[i]. seen[j] is items[j]'s sighting
+     * count frozen at build time, so a sort never reads a count remember() is changing.
+     */
+    private static class Snapshot {
+        
+        static final Snapshot EMPTY = new Snapshot(new Item[0], new int[0], new char[0], new int[] {0}, new int[0], new byte[0]);
+        
+        private final Item[] items;
+        private final int[] seen;
+        private final char[] chars;
+        private final int[] starts;
+        private final int[] keyItem;
+        private final byte[] keyRank;
+        
+        private Snapshot(Item[] items, int[] seen, char[] chars, int[] starts, int[] keyItem, byte[] keyRank) {
+            this.items = items;
+            this.seen = seen;
+            this.chars = chars;
+            this.starts = starts;
+            this.keyItem = keyItem;
+            this.keyRank = keyRank;
+        }
+        
+        static Snapshot build(Item[] items) {
+            List<String> keys = new ArrayList<>();
+            List<int[]> refs = new ArrayList<>();
+            int[] seen = new int[items.length];
+            for (int i = 0; i < items.length; i++) {
+                seen[i] = items[i].seen;
+                String name = normalize(items[i].name);
+                addKey(keys, refs, name, i, RANK_NAME);
+                for (int space = name.indexOf(' '); space >= 0; space = name.indexOf(' ', space + 1)) {
+                    addKey(keys, refs, name.substring(space + 1), i, RANK_NAME_WORD);
+                }
+                for (String artistName : items[i].artistNames) {
+                    addKey(keys, refs, normalize(artistName), i, RANK_ARTIST);
+                }
+            }
+            
+            Integer[] order = new Integer[keys.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(keys::get));
+            
+            int totalChars = keys.stream().mapToInt(String::length).sum();
+            char[] chars = new char[totalChars];
+            int[] starts = new int[order.length + 1];
+            int[] keyItem = new int[order.length];
+            byte[] keyRank = new byte[order.length];
+            int offset = 0;
+            for (int i = 0; i < order.length; i++) {
+                String key = keys.get(order[i]);
+                key.getChars(0, key.length(), chars, offset);
+                starts[i] = offset;
+                offset += key.length();
+                keyItem[i] = refs.get(order[i])[0];
+                keyRank[i] = (byte) refs.get(order[i])[1];
+            }
+            starts[order.length] = offset;
+            return new Snapshot(items, seen, chars, starts, keyItem, keyRank);
+        }
+        
+        private static void addKey(List<String> keys, List<int[]> refs, String key, int item, byte rank) {
+            if (!key.isEmpty()) {
+                keys.add(key);
+                refs.add(new int[] {item, rank});
+            }
+        }
+        
+        /**
+         * Finds all items with a key starting with the prefix.
+         *
+         * @return best match rank per item index
+         */
+        Map<Integer, Byte> match(String prefix) {
+            Map<Integer, Byte> best = new HashMap<>();
+            int scanned = 0;
+            for (int i = lowerBound(prefix); i < keyItem.length && startsWith(i, prefix) && scanned < MAX_SCAN; i++, scanned++) {
+                best.merge(keyItem[i], keyRank[i], (a, b) -> a <= b ? a : b);
+            }
+            return best;
+        }
+        
+        /** Index of the first key not less than the prefix */
+        private int lowerBound(String prefix) {
+            int lo = 0;
+            int hi = keyItem.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(mid, prefix) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+        
+        private int compare(int key, String other) {
+            int start = starts[key];
+            int length = starts[key + 1] - start;
+            int common = Math.min(length, other.length());
+            for (int i = 0; i < common; i++) {
+                int diff = chars[start + i] - other.charAt(i);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return length - other.length();
+        }
+        
+        private boolean startsWith(int key, String prefix) {
+            int start = starts[key];
+            if (starts[key + 1] - start < prefix.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (chars[start + i] != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.spotifymediaplayer.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FieldProjectionTest {
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    private static void assertRejected(String spec, String message) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> FieldProjection.parse(spec));
+        assertEquals(message, e.getMessage(), spec);
+    }
+    
+    @Test
+    void dottedAndGroupedPathsAreEquivalent() {
+        String grouped = "item(name,artists(name)),is_playing";
+        assertEquals(grouped, FieldProjection.parse("item.name,item.artists.name,is_playing").toString());
+        assertEquals(grouped, FieldProjection.parse(grouped).toString());
+        assertEquals(grouped, FieldProjection.parse("item(name,artists.name),is_playing").toString());
+    }
+    
+    @Test
+    void whitespaceIsIgnored() {
+        assertEquals("item(name,uri)", FieldProjection.parse(" item ( name ,\n uri ) ").toString());
+    }
+    
+    @Test
+    void wholePropertyWinsOverItsPaths() {
+        assertEquals("item", FieldProjection.parse("item,item.name").toString());
+        assertEquals("item", FieldProjection.parse("item.name,item").toString());
+        assertEquals("item,device(id)", FieldProjection.parse("item,item(name,uri),device.id").toString());
+    }
+    
+    @Test
+    void emptySpecsAreRejected() {
+        assertRejected(null, "Empty field list");
+        assertRejected("", "Empty field list");
+        assertRejected(" \t", "Empty field list");
+    }
+    
+    @Test
+    void missingNamesAreReportedWithTheirPosition() {
+        assertRejected(",a", "Missing property name at position 0 in fields");
+        assertRejected("a,,b", "Missing property name at position 2 in fields");
+        assertRejected("a,", "Missing property name at position 2 in fields");
+        assertRejected("a.", "Missing property name at position 2 in fields");
+        assertRejected("a..b", "Missing property name at position 2 in fields");
+        assertRejected("a()", "Missing property name at position 2 in fields");
+        assertRejected("(a)", "Missing property name at position 0 in fields");
+    }
+    
+    @Test
+    void unbalancedParenthesesAreRejected() {
+        assertRejected("a(b", "Missing ')' in fields");
+        assertRejected("a(b(c)", "Missing ')' in fields");
+        assertRejected("a)", "Unexpected ')' at position 1 in fields");
+        assertRejected("a(b))", "Unexpected ')' at position 4 in fields");
+    }
+    
+    @Test
+    void trailingTextAfterAGroupIsRejected() {
+        assertRejected("a(b)c", "Unexpected 'c' at position 4 in fields");
+        assertRejected("a(b).c", "Unexpected '.' at position 4 in fields");
+    }
+    
+    @Test
+    void applyKeepsPathsThroughArraysAndNulls() throws Exception {
+        FieldProjection projection = FieldProjection.parse("tracks.items(name),device");
+        String body = "{\"tracks\":{\"items\":[{\"name\":\"a\",\"uri\":\"u1\"},{\"name\":\"b\",\"uri\":\"u2\"}],\"total\":2},"
+                + "\"device\":null,\"context\":{}}";
+        
+        assertEquals(objectMapper.readTree("{\"tracks\":{\"items\":[{\"name\":\"a\"},{\"name\":\"b\"}]},\"device\":null}"),
+                projection.apply(objectMapper.readTree(body)));
+    }
+}
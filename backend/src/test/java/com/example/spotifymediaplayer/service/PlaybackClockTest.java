@@ -0,0 +1,76 @@
+package com.example.spotifymediaplayer.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PlaybackClockTest {
+    
+    private SpotifyService spotifyService;
+    private PlaybackClock clock;
+    
+    @BeforeEach
+    void setUp() {
+        spotifyService = mock(SpotifyService.class);
+        PlaybackPollAdvisor pollAdvisor = mock(PlaybackPollAdvisor.class);
+        when(pollAdvisor.getIdleIntervalMs()).thenReturn(15000L);
+        
+        clock = new PlaybackClock();
+        ReflectionTestUtils.setField(clock, "spotifyService", spotifyService);
+        ReflectionTestUtils.setField(clock, "pollAdvisor", pollAdvisor);
+        ReflectionTestUtils.setField(clock, "registry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(clock, "enabled", true);
+        ReflectionTestUtils.setField(clock, "driftBoundMs", 1000L);
+        ReflectionTestUtils.setField(clock, "minDriftRate", 0.25);
+        ReflectionTestUtils.setField(clock, "maxAccounts", 10);
+        clock.registerMeters();
+    }
+    
+    @Test
+    void idleAccountReadsAsNothingPlaying() {
+        when(spotifyService.resolveAccountId("s1")).thenReturn("account");
+        when(spotifyService.getValidAccessToken("s1")).thenReturn("token");
+        when(spotifyService.fetchCurrentPlaybackAsync("s1", "token"))
+                .thenReturn(CompletableFuture.completedFuture(SpotifyService.NOTHING_PLAYING));
+        
+        assertSame(SpotifyService.NOTHING_PLAYING, clock.getCurrentPlaybackAsync("s1").join());
+        // Served from the clock for the idle interval, still as idle
+        assertSame(SpotifyService.NOTHING_PLAYING, clock.getCurrentPlaybackAsync("s1").join());
+        verify(spotifyService, times(1)).fetchCurrentPlaybackAsync("s1", "token");
+    }
+    
+    @Test
+    void sessionWithoutTokenReadsAsUnauthorized() {
+        when(spotifyService.resolveAccountId("s1")).thenReturn("account");
+        when(spotifyService.getValidAccessToken("s1")).thenReturn(null);
+        
+        assertNull(clock.getCurrentPlaybackAsync("s1").join());
+    }
+    
+    @Test
+    void waiterOfAnotherSessionsFetchKeepsItsOwnAnswer() {
+        CompletableFuture<JsonNode> upstream = new CompletableFuture<>();
+        when(spotifyService.resolveAccountId("s1")).thenReturn("account");
+        when(spotifyService.resolveAccountId("s2")).thenReturn("account");
+        when(spotifyService.getValidAccessToken("s1")).thenReturn("token");
+        when(spotifyService.fetchCurrentPlaybackAsync("s1", "token")).thenReturn(upstream);
+        
+        CompletableFuture<JsonNode> first = clock.getCurrentPlaybackAsync("s1");
+        CompletableFuture<JsonNode> waiter = clock.getCurrentPlaybackAsync("s2");
+        upstream.complete(SpotifyService.NOTHING_PLAYING);
+        
+        assertSame(SpotifyService.NOTHING_PLAYING, first.join());
+        assertSame(SpotifyService.NOTHING_PLAYING, waiter.join());
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.spotifymediaplayer.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlaybackFingerprintTest {
+    
+    private static final String PLAYING = "{\"timestamp\":1700000000000,\"progress_ms\":%d,\"is_playing\":true,"
+            + "\"item\":{\"id\":\"%s\",\"name\":\"Song\",\"duration_ms\":200000,\"progress_ms\":1}}";
+    
+    /** Raw /me/player body as Spotify sends it, with the volatile fields at the top level only */
+    private static final String BODY = "{\"timestamp\":%d,\"progress_ms\":%d,\"is_playing\":true,"
+            + "\"item\":{\"id\":\"%s\",\"duration_ms\":200000}}";
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    private ObjectNode state(long progressMs, String itemId) throws Exception {
+        return (ObjectNode) objectMapper.readTree(String.format(PLAYING, progressMs, itemId));
+    }
+    
+    @Test
+    void etagIgnoresProgressAndTimestamp() throws Exception {
+        ObjectNode before = state(1000, "a");
+        ObjectNode after = state(61000, "a");
+        after.put("timestamp", 1700000060000L);
+        
+        assertEquals(PlaybackFingerprint.etag(before), PlaybackFingerprint.etag(after));
+    }
+    
+    @Test
+    void etagIgnoresMissingOrNullProgress() throws Exception {
+        ObjectNode missing = state(1000, "a");
+        missing.remove("progress_ms");
+        ObjectNode nulled = state(1000, "a");
+        nulled.putNull("progress_ms");
+        
+        assertEquals(PlaybackFingerprint.etag(state(0, "a")), PlaybackFingerprint.etag(missing));
+        assertEquals(PlaybackFingerprint.etag(state(0, "a")), PlaybackFingerprint.etag(nulled));
+    }
+    
+    @Test
+    void etagChangesWithContent() throws Exception {
+        String etag = PlaybackFingerprint.etag(state(1000, "a"));
+        ObjectNode paused = state(1000, "a");
+        paused.put("is_playing", false);
+        
+        assertNotEquals(etag, PlaybackFingerprint.etag(state(1000, "b")));
+        assertNotEquals(etag, PlaybackFingerprint.etag(paused));
+    }
+    
+    @Test
+    void nestedProgressIsContent() throws Exception {
+        // Only top-level progress_ms is derived by clients
+        ObjectNode moved = state(1000, "a");
+        ((ObjectNode) moved.get("item")).put("progress_ms", 2);
+        
+        assertNotEquals(PlaybackFingerprint.etag(state(1000, "a")), PlaybackFingerprint.etag(moved));
+    }
+    
+    @Test
+    void etagIsWeak() throws Exception {
+        String etag = PlaybackFingerprint.etag(state(1000, "a"));
+        
+        assertTrue(etag.startsWith("W/\"") && etag.endsWith("\""));
+    }
+    
+    @Test
+    void matchesUsesWeakComparison() throws Exception {
+        String etag = PlaybackFingerprint.etag(state(1000, "a"));
+        String strong = etag.substring(2);
+        
+        assertTrue(PlaybackFingerprint.matches(etag, etag));
+        assertTrue(PlaybackFingerprint.matches(strong, etag));
+        assertTrue(PlaybackFingerprint.matches("W/\"0\", " + etag, etag));
+        assertTrue(PlaybackFingerprint.matches("*", etag));
+        assertFalse(PlaybackFingerprint.matches("W/\"0\"", etag));
+        assertFalse(PlaybackFingerprint.matches(null, etag));
+    }
+    
+    @Test
+    void bodyFingerprintIgnoresProgressAndPatchesIt() throws Exception {
+        byte[] first = String.format(BODY, 1700000000000L, 1000, "a").getBytes(StandardCharsets.UTF_8);
+        byte[] second = String.format(BODY, 1700000002000L, 3000, "a").getBytes(StandardCharsets.UTF_8);
+        PlaybackFingerprint.BodyFingerprint before = PlaybackFingerprint.ofBody(first);
+        PlaybackFingerprint.BodyFingerprint after = PlaybackFingerprint.ofBody(second);
+        
+        assertTrue(after.sameContent(before));
+        JsonNode patched = after.patch((ObjectNode) objectMapper.readTree(first));
+        // Patched values are long nodes where the parser made ints, so compare what is sent
+        assertEquals(new String(second, StandardCharsets.UTF_8), objectMapper.writeValueAsString(patched));
+    }
+    
+    @Test
+    void bodyFingerprintSeesOtherChanges() {
+        PlaybackFingerprint.BodyFingerprint a = PlaybackFingerprint.ofBody(String.format(BODY, 1L, 1000, "a").getBytes(StandardCharsets.UTF_8));
+        PlaybackFingerprint.BodyFingerprint b = PlaybackFingerprint.ofBody(String.format(BODY, 1L, 1000, "b").getBytes(StandardCharsets.UTF_8));
+        
+        assertFalse(a.sameContent(b));
+    }
+    
+    @Test
+    void nestedProgressKeyIsNotPatchable() {
+        // A second progress_ms may not be the top-level one, so the parse cannot be skipped
+        byte[] body = String.format(PLAYING, 1000, "a").getBytes(StandardCharsets.UTF_8);
+        
+        assertFalse(PlaybackFingerprint.ofBody(body).sameContent(PlaybackFingerprint.ofBody(body)));
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.spotifymediaplayer.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlayerQueueModelTest {
+    
+    /** Applies the splices the way clients do: in order, each against the result of the previous one */
+    private static List<String> apply(List<String> before, List<String> after, List<PlayerQueueModel.Splice> splices) {
+        List<String> result = new ArrayList<>(before);
+        for (PlayerQueueModel.Splice splice : splices) {
+            result.subList(splice.index, splice.index + splice.remove).clear();
+            result.addAll(splice.index, after.subList(splice.insertFrom, splice.insertFrom + splice.insertCount));
+        }
+        return result;
+    }
+    
+    private static void assertRoundTrip(List<String> before, List<String> after) {
+        assertEquals(after, apply(before, after, PlayerQueueModel.diff(before, after)), () -> before + " -> " + after);
+    }
+    
+    @Test
+    void unchangedQueueHasNoSplices() {
+        assertTrue(PlayerQueueModel.diff(List.of("a", "b", "c"), List.of("a", "b", "c")).isEmpty());
+        assertTrue(PlayerQueueModel.diff(List.of(), List.of()).isEmpty());
+    }
+    
+    @Test
+    void advanceIsOneHeadRemoval() {
+        List<String> before = List.of("a", "b", "c", "d");
+        List<String> after = List.of("c", "d");
+        List<PlayerQueueModel.Splice> splices = PlayerQueueModel.diff(before, after);
+        
+        assertEquals(1, splices.size());
+        assertEquals(0, splices.get(0).index);
+        assertEquals(2, splices.get(0).remove);
+        assertEquals(0, splices.get(0).insertCount);
+        assertRoundTrip(before, after);
+    }
+    
+    @Test
+    void advanceWithNewTailKeepsTheMiddle() {
+        List<String> before = List.of("a", "b", "c", "d");
+        List<String> after = List.of("b", "c", "d", "e");
+        List<PlayerQueueModel.Splice> splices = PlayerQueueModel.diff(before, after);
+        
+        assertEquals(2, splices.size());
+        assertEquals(1, splices.get(1).insertCount);
+        assertRoundTrip(before, after);
+    }
+    
+    @Test
+    void editsRoundTrip() {
+        assertRoundTrip(List.of("a", "b", "c"), List.of("a", "x", "b", "c"));
+        assertRoundTrip(List.of("a", "b", "c"), List.of("a", "c"));
+        assertRoundTrip(List.of("a", "b", "c"), List.of("a", "b", "c", "d"));
+        assertRoundTrip(List.of("a", "b", "c"), List.of("x", "y"));
+        assertRoundTrip(List.of(), List.of("a", "b"));
+        assertRoundTrip(List.of("a", "b"), List.of());
+        assertRoundTrip(List.of("a", "a", "b"), List.of("a", "b", "b"));
+    }
+    
+    @Test
+    void advanceBeyondTheSearchWindowRoundTrips() {
+        assertRoundTrip(List.of("a", "b", "c", "d", "e", "f", "g", "h"), List.of("g", "h"));
+    }
+    
+    @Test
+    void randomQueuesRoundTrip() {
+        Random random = new Random(42);
+        for (int run = 0; run < 5000; run++) {
+            List<String> before = randomQueue(random);
+            List<String> after = random.nextBoolean() ? mutate(random, before) : randomQueue(random);
+            assertRoundTrip(before, after);
+        }
+    }
+    
+    /** Small alphabet, so duplicates and partial overlaps are common */
+    private static List<String> randomQueue(Random random) {
+        List<String> queue = new ArrayList<>();
+        int size = random.nextInt(12);
+        for (int i = 0; i < size; i++) {
+            queue.add(String.valueOf((char) ('a' + random.nextInt(6))));
+        }
+        return queue;
+    }
+    
+    private static List<String> mutate(Random random, List<String> before) {
+        List<String> after = new ArrayList<>(before.subList(Math.min(before.size(), random.nextInt(8)), before.size()));
+        if (!after.isEmpty() && random.nextBoolean()) {
+            after.add(random.nextInt(after.size()), "x");
+        }
+        if (random.nextBoolean()) {
+            after.add("z");
+        }
+        return after;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.spotifymediaplayer.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class SearchResultCacheTest {
+    
+    @Test
+    void queryIsTrimmedCollapsedAndLowerCased() {
+        assertEquals("daft punk", SearchResultCache.normalizeQuery("  Daft \t  PUNK\n"));
+        assertEquals("ü2", SearchResultCache.normalizeQuery("Ü2"));
+    }
+    
+    @Test
+    void typeListIsLowerCasedSortedAndDeduplicated() {
+        assertEquals("artist,track", SearchResultCache.normalizeType("Track, artist"));
+        assertEquals("artist,track", SearchResultCache.normalizeType("track,ARTIST,track,,"));
+        assertEquals("track", SearchResultCache.normalizeType(" track "));
+    }
+    
+    @Test
+    void equivalentSearchesShareAKey() {
+        String key = SearchResultCache.key("daft punk", "artist,track", 10, "SE");
+        assertEquals(key, SearchResultCache.key("  Daft   Punk ", "track,Artist", 10, " se "));
+    }
+    
+    @Test
+    void missingAndBlankMarketShareAKey() {
+        assertEquals(SearchResultCache.key("abba", "track", 5, null), SearchResultCache.key("abba", "track", 5, ""));
+    }
+    
+    @Test
+    void differentSearchesGetDifferentKeys() {
+        String key = SearchResultCache.key("abba", "track", 5, null);
+        assertNotEquals(key, SearchResultCache.key("abba", "artist", 5, null));
+        assertNotEquals(key, SearchResultCache.key("abba", "track", 10, null));
+        assertNotEquals(key, SearchResultCache.key("abba", "track", 5, "SE"));
+    }
+    
+    @Test
+    void fieldsCannotRunIntoEachOther() {
+        // A separator inside the query must not make two searches collide
+        assertNotEquals(SearchResultCache.key("a,track", "artist", 1, null), SearchResultCache.key("a", "track,artist", 1, null));
+    }
+}